@@ -0,0 +1,90 @@
+package com.secres;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The fixed datasets the benchmarks read, loaded once per fork through {@link Model} and installed with
+ * {@link Main#setModels(Model, Model)} so that charts find them like in the application.
+ * A benchmark only loads the datasets it takes as parameters. The country data can be replaced by a synthetic
+ * dataset of any size with <code>-p syntheticRegions=2430</code>.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public class BenchmarkData {
+
+	/** Runs the loads of every dataset */
+	private static final LoadScheduler SCHEDULER = new LoadScheduler(LoadScheduler.THREADS);
+
+	/**
+	 * Writes a synthetic dataset with the default settings of {@link DatasetGenerator} to a temporary file.
+	 * @param schema  the layout
+	 * @param regions  the number of regions
+	 * @return the path of the file, deleted when the fork exits
+	 * @throws IOException  if the file cannot be written
+	 */
+	static String synthetic(DatasetGenerator.Schema schema, int regions) throws IOException {
+		Path file = Files.createTempFile("secres-" + regions + "-", "-" + schema.fileName);
+		file.toFile().deleteOnExit();
+		new DatasetGenerator(schema, regions, schema.fromYear, schema.toYear, 0.04, 1, 1).write(file);
+		return file.toString();
+	}
+
+	/**
+	 * The Global data.
+	 */
+	@State(Scope.Benchmark)
+	public static class Global {
+
+		@Param({"/GlobalTemperatures.csv"})
+		public String globalPath;
+
+		ColumnStore store;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			Model model = new Model(globalPath, SCHEDULER);
+			store = model.getStoreFuture().join();
+			Main.setModels(model, Main.getCountryModel());
+		}
+
+	}
+
+	/**
+	 * The Country data with its {@link CountryAggregates}.
+	 */
+	@State(Scope.Benchmark)
+	public static class Country {
+
+		@Param({"/GlobalLandTemperaturesByCountry.csv"})
+		public String countryPath;
+		/** Countries of a synthetic dataset read instead of <code>countryPath</code>, 0 for none */
+		@Param({"0"})
+		public int syntheticRegions;
+
+		ColumnStore store;
+		CountryAggregates aggregates;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			String path = syntheticRegions > 0 ? synthetic(DatasetGenerator.Schema.COUNTRY, syntheticRegions) : countryPath;
+			Model model = new Model(path, SCHEDULER);
+			store = model.getStoreFuture().join();
+			aggregates = model.getAggregatesFuture().join();
+			if(aggregates == null) {
+				throw new IllegalStateException(path + " has no country temperatures");
+			}
+			Main.setModels(Main.getGlobalModel(), model);
+		}
+
+	}
+
+}
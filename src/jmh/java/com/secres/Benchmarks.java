@@ -0,0 +1,30 @@
+package com.secres;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks, the main class of the benchmark JAR built with <code>mvn -Pjmh package</code>.
+ * <P>
+ * Takes the usual JMH options, e.g. a benchmark regex, <code>-p path=...</code> or <code>-rf json</code>, and always
+ * adds the GC profiler so that every result comes with its allocation rate next to the throughput and latency.
+ * Datasets are found like in the application, so <code>-Dsecres.data.dir</code> before <code>-jar</code> selects
+ * the directory with the country dataset.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if(options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers() || options.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.secres;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the data of each chart, the {@link AbstractGraph#prepareModel()} step of <code>updateModel()</code>,
+ * and aggregating the country data those charts read. Installing the data needs the chart's Swing components and
+ * is left out.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dsecres.cache=false"})
+public class ChartModelBenchmark {
+
+	private BasicLineChart basicLineChart;
+	private AverageYearTempChart avgChart;
+	private SeasonsChart seasonsChart;
+	private ThermometerAvgChart thermoChart;
+	private AvgTempBarCountry barChart;
+	private AvgTempBarCountryChange barChartChange;
+	private EconomyAvgLineChart economyChart;
+
+	@Setup
+	public void setup() {
+		basicLineChart = new BasicLineChart();
+		avgChart = new AverageYearTempChart();
+		seasonsChart = new SeasonsChart();
+		thermoChart = new ThermometerAvgChart();
+		barChart = new AvgTempBarCountry();
+		barChartChange = new AvgTempBarCountryChange();
+		economyChart = new EconomyAvgLineChart();
+	}
+
+	@Benchmark
+	public Runnable basicLine(BenchmarkData.Global data) {
+		return basicLineChart.prepareModel();
+	}
+
+	@Benchmark
+	public Runnable averageYear(BenchmarkData.Global data) {
+		return avgChart.prepareModel();
+	}
+
+	@Benchmark
+	public Runnable seasons(BenchmarkData.Global data) {
+		return seasonsChart.prepareModel();
+	}
+
+	@Benchmark
+	public Runnable thermometer(BenchmarkData.Global data) {
+		return thermoChart.prepareModel();
+	}
+
+	@Benchmark
+	public CountryAggregates aggregate(BenchmarkData.Country data) {
+		return CountryAggregates.build(data.store, null);
+	}
+
+	@Benchmark
+	public Runnable bar(BenchmarkData.Country data) {
+		return barChart.prepareModel();
+	}
+
+	@Benchmark
+	public Runnable barChange(BenchmarkData.Country data) {
+		return barChartChange.prepareModel();
+	}
+
+	@Benchmark
+	public Runnable economy(BenchmarkData.Country data) {
+		return economyChart.prepareModel();
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.secres;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a dataset into a {@link ColumnStore} with each loader of {@link Model}: the memory-mapped
+ * {@link CsvScanner}, OpenCSV, and a {@link SnapshotCache} snapshot. The CSV bytes are in memory, so disk speed is
+ * not measured.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dsecres.cache=false"})
+public class IngestBenchmark {
+
+	/** Dataset, looked up like in {@link Model#open(String)} */
+	@Param({"/GlobalTemperatures.csv"})
+	public String path;
+	/** Countries of a synthetic country dataset read instead of <code>path</code>, 0 for none */
+	@Param({"0"})
+	public int syntheticRegions;
+
+	private ByteBuffer data;
+	private byte[] bytes;
+	private ByteBuffer snapshot;
+
+	@Setup
+	public void setup() throws IOException {
+		data = Model.open(syntheticRegions > 0 ? BenchmarkData.synthetic(DatasetGenerator.Schema.COUNTRY, syntheticRegions) : path);
+		bytes = new byte[data.limit()];
+		data.duplicate().get(bytes);
+		ColumnStore store = CsvScanner.scan(data, ForkJoinPool.commonPool(), null);
+		if(ColumnStore.COMPRESS) {
+			store = store.compress();
+		}
+		snapshot = ByteBuffer.allocate((int) store.encodedSize()).order(ByteOrder.LITTLE_ENDIAN);
+		store.writeTo(snapshot);
+		snapshot.flip();
+	}
+
+	@Benchmark
+	public ColumnStore mapped() throws IOException {
+		return CsvScanner.scan(data, ForkJoinPool.commonPool(), null);
+	}
+
+	@Benchmark
+	public ColumnStore stream() throws IOException {
+		return Model.readStream(new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public ColumnStore snapshot() {
+		return ColumnStore.readFrom(snapshot.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.secres;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jfree.data.statistics.Regression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The yearly averages of {@link AverageYearTempChart} and the regressions fitted to them.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dsecres.cache=false"})
+public class RegressionBenchmark {
+
+	private ArrayXYDataset averages;
+
+	@Setup
+	public void setup(BenchmarkData.Global data) {
+		averages = AverageYearTempChart.averagesByYear(data.store);
+	}
+
+	@Benchmark
+	public ArrayXYDataset averagesByYear(BenchmarkData.Global data) {
+		return AverageYearTempChart.averagesByYear(data.store);
+	}
+
+	@Benchmark
+	public double[] linear() {
+		return Regression.getOLSRegression(averages, 0);
+	}
+
+	@Benchmark
+	public double[] power() {
+		return Regression.getPowerRegression(averages, 0);
+	}
+
+}
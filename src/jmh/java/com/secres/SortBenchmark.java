@@ -0,0 +1,109 @@
+package com.secres;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ranking countries, with the map sorting helpers of {@link AvgTempBarCountry} against {@link Ranking}, and sorting
+ * and filtering the country table with a {@link ColumnIndex}.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dsecres.cache=false"})
+public class SortBenchmark {
+
+	/** Column of the country table to sort */
+	@Param({"1"})
+	public int column;
+
+	/** All-time average per country name */
+	private Map<String, Double> averagesByName;
+	/** All-time average per country id, NaN without measurements */
+	private double[] averages;
+	/** Index with every sort permutation built */
+	private ColumnIndex index;
+	private ColumnRowSorter.Filter filter;
+
+	@Setup
+	public void setup(BenchmarkData.Country data) {
+		CountryAggregates aggregates = data.aggregates;
+		averages = new double[aggregates.getCountryCount()];
+		averagesByName = new HashMap<>();
+		for(int i = 0; i < averages.length; i++) {
+			averages[i] = aggregates.getAll(i).mean();
+			if(!Double.isNaN(averages[i])) {
+				averagesByName.put(aggregates.getCountry(i), averages[i]);
+			}
+		}
+		index = new ColumnIndex(data.store);
+		for(int i = 0; i < data.store.getColumnCount(); i++) {
+			index.sortPermutation(i);
+		}
+		// The rows of one country over half a century
+		int country = data.store.indexOf("Country");
+		filter = new ColumnRowSorter.Filter(country, data.store.getInt(0, country), 0, ColumnStore.packDate(1900, 1), ColumnStore.packDate(1950, 12), -1, 0, 0);
+	}
+
+	@Benchmark
+	public Map<String, Double> sortByValue() {
+		return AvgTempBarCountry.sortByValue(averagesByName);
+	}
+
+	@Benchmark
+	public Map<String, Double> sortByValueDescending() {
+		return AvgTempBarCountry.sortByValueDescending(averagesByName);
+	}
+
+	@Benchmark
+	public Ranking rankingTop() {
+		return Ranking.top(averages, averages.length);
+	}
+
+	@Benchmark
+	public Ranking rankingBottom() {
+		return Ranking.bottom(averages, averages.length);
+	}
+
+	/** The first sort of a column, which builds its permutation */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int[] sortPermutation(BenchmarkData.Country data) {
+		return new ColumnIndex(data.store).sortPermutation(column);
+	}
+
+	/** A later sort of a column, descending */
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int[] sortCached() {
+		return ColumnRowSorter.order(index, new RowSorter.SortKey(column, SortOrder.DESCENDING), ColumnRowSorter.Filter.NONE);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public int[] filterSorted() {
+		return ColumnRowSorter.order(index, new RowSorter.SortKey(column, SortOrder.ASCENDING), filter);
+	}
+
+}
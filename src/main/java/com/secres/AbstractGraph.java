@@ -7,18 +7,62 @@ import org.jfree.data.general.Dataset;
 
 /**
  * An abstract class that is the superclass of every chart class.
+ * <P>
+ * Chart data is built in two steps so that the expensive one stays off the Event Dispatch Thread:
+ * {@link #prepareModel()} builds datasets and fits regressions on any thread, and the <code>Runnable</code> it returns
+ * installs them on the EDT with a cheap swap. {@link #updateModel()} runs both steps on the calling thread.
+ * Both steps are timed in {@link Metrics}.
+ * <P>
+ * Inputs a user changes on the EDT, like spinners, are copied into fields on the EDT for {@link #prepareModel()} to
+ * read, and {@link #getGeneration()} tells a prefetched model apart from a newer one installed by {@link #updateModel()}.
  * 
  * @author Pranav Amarnath
  *
  */
 public abstract class AbstractGraph {
 	
+	/** Number of {@link #updateModel()} calls, only used on the EDT */
+	private int generation;
+	
 	JPanel updateView() {
 		return null;
 	}
 	
+	/**
+	 * Builds the data of the chart. Only reads the models, never the chart or other Swing components.
+	 * @return the step installing the data into the chart, to run on the EDT
+	 */
+	Runnable prepareModel() {
+		return () -> {};
+	}
+	
+	/**
+	 * Runs {@link #prepareModel()}, recording the time of both steps in the chart's {@link Metrics} timers.
+	 * @return the step installing the data into the chart, to run on the EDT
+	 */
+	final Runnable prepareModelTimed() {
+		String name = getClass().getSimpleName();
+		Metrics.Timer prepare = Metrics.timer("chart.prepare/" + name);
+		Metrics.Timer install = Metrics.timer("chart.install/" + name);
+		long start = prepare.start();
+		Runnable model = prepareModel();
+		prepare.stop(start);
+		return () -> {
+			long installStart = install.start();
+			model.run();
+			install.stop(installStart);
+		};
+	}
+	
+	/** Builds the data of the chart and installs it, on the EDT */
 	void updateModel() {
-		
+		generation++;
+		prepareModelTimed().run();
+	}
+	
+	/** @return the number of {@link #updateModel()} calls so far, on the EDT */
+	int getGeneration() {
+		return generation;
 	}
 	
 	public Dataset getDataset() {
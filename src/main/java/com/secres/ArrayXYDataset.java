@@ -0,0 +1,233 @@
+package com.secres;
+
+import java.util.Arrays;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractIntervalXYDataset;
+
+/**
+ * An immutable {@link org.jfree.data.xy.IntervalXYDataset} that wraps primitive arrays.
+ * <P>
+ * Unlike <code>XYSeries</code>, <code>TimeSeries</code> or <code>YIntervalSeries</code>, no object is created per data
+ * point: each series is a <code>double[]</code> of x values, y values and optionally lower and upper y bounds, read
+ * by the renderers through the primitive <code>get...Value</code> methods. The arrays are owned by the dataset and must
+ * not be changed after construction. To change a chart, build a new dataset and set it on the plot.
+ * <P>
+ * A series whose x values are sorted reports {@link DomainOrder#ASCENDING}, which lets JFreeChart binary search the
+ * visible items instead of scanning them all.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public final class ArrayXYDataset extends AbstractIntervalXYDataset {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Series keys */
+	private final Comparable<?>[] keys;
+	/** X values per series */
+	private final double[][] x;
+	/** Y values per series */
+	private final double[][] y;
+	/** Lower y bounds per series, the y values when a series has no interval */
+	private final double[][] yLow;
+	/** Upper y bounds per series, the y values when a series has no interval */
+	private final double[][] yHigh;
+	/** Whether every series has ascending x values */
+	private final boolean ascending;
+
+	/** Creates a dataset without series */
+	ArrayXYDataset() {
+		this(new Comparable<?>[0], new double[0][], new double[0][], new double[0][], new double[0][]);
+	}
+
+	private ArrayXYDataset(Comparable<?>[] keys, double[][] x, double[][] y, double[][] yLow, double[][] yHigh) {
+		this.keys = keys;
+		this.x = x;
+		this.y = y;
+		this.yLow = yLow;
+		this.yHigh = yHigh;
+		boolean ascending = true;
+		for(double[] values : x) {
+			for(int i = 1; i < values.length && ascending; i++) {
+				ascending = values[i - 1] <= values[i];
+			}
+		}
+		this.ascending = ascending;
+	}
+
+	/**
+	 * @param key  the series key
+	 * @param x  the x values
+	 * @param y  the y values
+	 * @return a dataset with one series
+	 */
+	static ArrayXYDataset of(Comparable<?> key, double[] x, double[] y) {
+		return new ArrayXYDataset().withSeries(key, x, y);
+	}
+
+	/**
+	 * @param key  the series key
+	 * @param x  the x values
+	 * @param y  the y values
+	 * @return a copy of this dataset with one more series
+	 */
+	ArrayXYDataset withSeries(Comparable<?> key, double[] x, double[] y) {
+		return withSeries(key, x, y, y, y);
+	}
+
+	/**
+	 * @param key  the series key
+	 * @param x  the x values
+	 * @param y  the y values
+	 * @param yLow  the lower y bounds
+	 * @param yHigh  the upper y bounds
+	 * @return a copy of this dataset with one more series
+	 */
+	ArrayXYDataset withSeries(Comparable<?> key, double[] x, double[] y, double[] yLow, double[] yHigh) {
+		if(x.length != y.length || y.length != yLow.length || y.length != yHigh.length) {
+			throw new IllegalArgumentException("Series " + key + " has arrays of different lengths");
+		}
+		int n = keys.length;
+		Comparable<?>[] keys = Arrays.copyOf(this.keys, n + 1);
+		double[][] xs = Arrays.copyOf(this.x, n + 1);
+		double[][] ys = Arrays.copyOf(this.y, n + 1);
+		double[][] lows = Arrays.copyOf(this.yLow, n + 1);
+		double[][] highs = Arrays.copyOf(this.yHigh, n + 1);
+		keys[n] = key;
+		xs[n] = x;
+		ys[n] = y;
+		lows[n] = yLow;
+		highs[n] = yHigh;
+		return new ArrayXYDataset(keys, xs, ys, lows, highs);
+	}
+
+	/**
+	 * Finds the first item of an ascending series at or after an x value.
+	 * @param series  the series
+	 * @param value  the x value
+	 * @return the item index, the item count if every x value is smaller
+	 */
+	int indexOf(int series, double value) {
+		double[] values = x[series];
+		int low = 0;
+		int high = values.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(values[mid] < value) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param items  per series, the indices of the items to keep
+	 * @return a dataset with the same series keys and only the given items
+	 */
+	ArrayXYDataset select(int[][] items) {
+		double[][] xs = new double[keys.length][];
+		double[][] ys = new double[keys.length][];
+		double[][] lows = new double[keys.length][];
+		double[][] highs = new double[keys.length][];
+		for(int series = 0; series < keys.length; series++) {
+			int[] kept = items[series];
+			xs[series] = new double[kept.length];
+			ys[series] = new double[kept.length];
+			lows[series] = yLow[series] == y[series] ? ys[series] : new double[kept.length];
+			highs[series] = yHigh[series] == y[series] ? ys[series] : new double[kept.length];
+			for(int i = 0; i < kept.length; i++) {
+				xs[series][i] = x[series][kept[i]];
+				ys[series][i] = y[series][kept[i]];
+				lows[series][i] = yLow[series][kept[i]];
+				highs[series][i] = yHigh[series][kept[i]];
+			}
+		}
+		return new ArrayXYDataset(keys, xs, ys, lows, highs);
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return keys.length;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Comparable getSeriesKey(int series) {
+		return keys[series];
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return ascending ? DomainOrder.ASCENDING : DomainOrder.NONE;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return x[series].length;
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return x[series][item];
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return x[series][item];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return y[series][item];
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return y[series][item];
+	}
+
+	@Override
+	public double getStartXValue(int series, int item) {
+		return x[series][item];
+	}
+
+	@Override
+	public Number getStartX(int series, int item) {
+		return x[series][item];
+	}
+
+	@Override
+	public double getEndXValue(int series, int item) {
+		return x[series][item];
+	}
+
+	@Override
+	public Number getEndX(int series, int item) {
+		return x[series][item];
+	}
+
+	@Override
+	public double getStartYValue(int series, int item) {
+		return yLow[series][item];
+	}
+
+	@Override
+	public Number getStartY(int series, int item) {
+		return yLow[series][item];
+	}
+
+	@Override
+	public double getEndYValue(int series, int item) {
+		return yHigh[series][item];
+	}
+
+	@Override
+	public Number getEndY(int series, int item) {
+		return yHigh[series][item];
+	}
+
+}
@@ -30,25 +30,26 @@ import org.jfree.data.general.DatasetUtils;
 import org.jfree.data.statistics.Regression;
 import org.jfree.data.time.Year;
 import org.jfree.data.xy.XYDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
-import org.jfree.data.xy.YIntervalSeries;
-import org.jfree.data.xy.YIntervalSeriesCollection;
 
 /**
  * The Charts for Average Yearly Temperature - line & scatter.
+ * <P>
+ * The line chart reads a {@link TimePyramid} through {@link LevelOfDetail}: zoomed out it shows yearly or decadal
+ * averages, and zooming in switches it to the monthly values with their uncertainty.
  * 
  * @author Pranav Amarnath
  *
  */
 public class AverageYearTempChart extends AbstractGraph {
 
-	private YIntervalSeriesCollection datasetLineChartByYear = new YIntervalSeriesCollection();
-	private XYSeriesCollection datasetScatterPlotByYear = new XYSeriesCollection();
+	private ArrayXYDataset datasetLineChartByYear = new ArrayXYDataset();
+	private ArrayXYDataset datasetScatterPlotByYear = new ArrayXYDataset();
 	private JFreeChart chart1;
 	private JFreeChart chart2;
 	private ChartPanel panel1;
 	private ChartPanel panel2;
+	/** Switches the line chart between the levels of its pyramid */
+	private LevelOfDetail levelOfDetail;
 	
 	/**
  * Average line chart
@@ -88,6 +89,7 @@ JPanel updateViewLine() {
     
 	panel1 = new ChartPanel(chart1);
 	panel1.setMouseWheelEnabled(true);
+	levelOfDetail = LevelOfDetail.install(panel1, 0);
 	mainPanel.add(panel1);
 	
 	JCheckBox showUncertainty = new JCheckBox("Show Uncertainty");
@@ -131,7 +133,7 @@ JPanel updateViewLine() {
  * @return the <code>ChartPanel</code>
  */
 JPanel updateViewScatter() {
-	datasetScatterPlotByYear = new XYSeriesCollection();
+	datasetScatterPlotByYear = new ArrayXYDataset();
 
 	chart2 = ChartFactory.createScatterPlot("Average Land Temperature 1750-2015", "Year", "Average Temperature \u00B0C", datasetScatterPlotByYear, PlotOrientation.VERTICAL, true, true, false);
 	chart2.setNotify(false);
@@ -187,86 +189,92 @@ JPanel updateViewScatter() {
 	return mainPanel;
 }
 
-/** Updates the average line and scatter charts */
-void updateModel() {
-	// Start Scatter Plot
-	YIntervalSeries series1 = new YIntervalSeries("Average Temperature per year");
-	XYSeries series2 = new XYSeries("Average Temperature per year"); // Init series
-	YIntervalSeries uncertaintyPos = new YIntervalSeries("Average Temperature per year"); // Init series
-	YIntervalSeries uncertaintyNeg = new YIntervalSeries("Average Temperature per year"); // Init series
-	// End Scatter Plot
+/**
+ * Averages the monthly temperatures of each year
+ * @param store  the global dataset
+ * @return one series with the year as x value and its average temperature as y value
+ */
+static ArrayXYDataset averagesByYear(ColumnStore store) {
 	double average = 0;
-	double averageUncertainty = 0;
 	int count = 0;
-	XYPlot plot = chart2.getXYPlot();
-
-	for(int i = 0; i < View.getGlobalTable().getModel().getRowCount(); i+=12) {
-		for(int j = 0; j < 12; j++) {
-			if((String)View.getGlobalTable().getModel().getValueAt(i+j, 1) != null && !((String)View.getGlobalTable().getModel().getValueAt(i+j, 1)).trim().isEmpty()) {
+	int years = (store.getRowCount() + 11) / 12;
+	double[] yearValues = new double[years];
+	double[] averages = new double[years];
+	for(int i = 0, n = 0; i < store.getRowCount(); i+=12, n++) {
+		for(int j = 0; j < 12 && i+j < store.getRowCount(); j++) {
+			if(!store.isNull(i+j, 1)) {
 				count++;
-				average = average + Double.parseDouble((String)View.getGlobalTable().getModel().getValueAt(i+j, 1));
-				averageUncertainty = averageUncertainty + Double.parseDouble((String)View.getGlobalTable().getModel().getValueAt(i+j, 2));
+				average = average + store.getDouble(i+j, 1);
 			}
 		}
 		average = average/count;
-		averageUncertainty = averageUncertainty/count;
-		// I do the substring(0, 4) because each year will be 1750-01-01, 1751-01-01 etc. -> to shorten to 1750, 1751 etc.
-		series1.add((new Year(Integer.parseInt(((String)View.getGlobalTable().getModel().getValueAt(i, 0)).substring(0, 4)))).getFirstMillisecond(), average, average - averageUncertainty, average + averageUncertainty);
-		// Start Scatter Plot
-		series2.add(Integer.parseInt(((String)View.getGlobalTable().getModel().getValueAt(i, 0)).substring(0, 4)), average); // add elements
-		// End Scatter Plot
-		uncertaintyPos.add((new Year(Integer.parseInt(((String)View.getGlobalTable().getModel().getValueAt(i, 0)).substring(0, 4)))).getFirstMillisecond(), average + averageUncertainty, average + averageUncertainty, average + averageUncertainty);
-		uncertaintyNeg.add((new Year(Integer.parseInt(((String)View.getGlobalTable().getModel().getValueAt(i, 0)).substring(0, 4)))).getFirstMillisecond(), average - averageUncertainty, average - averageUncertainty, average - averageUncertainty);
+		int year = store.getYear(i, 0);
+		yearValues[n] = year;
+		averages[n] = average;
 		average = 0;
 		count = 0;
 	}
+	return ArrayXYDataset.of("Average Temperature per year", yearValues, averages);
+}
 
-	// Start Scatter Plot
-	((YIntervalSeriesCollection) datasetLineChartByYear).addSeries(series1); // add series to dataset
-	((YIntervalSeriesCollection) datasetLineChartByYear).addSeries(uncertaintyPos); // add series to dataset
-	((YIntervalSeriesCollection) datasetLineChartByYear).addSeries(uncertaintyNeg); // add series to dataset
-	((XYSeriesCollection) datasetScatterPlotByYear).addSeries(series2); // add series to dataset
+/** Builds the data and regressions of the average line and scatter charts */
+@Override
+Runnable prepareModel() {
+	ColumnStore store = Main.getGlobalModel().getStore();
 
+	// The uncertainty bounds are drawn as lines of their own
+	TimePyramid pyramid = new TimePyramid("Average Temperature", store, 0, 1, 2, true);
 
-	XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, false);
+	// Start Scatter Plot
+	ArrayXYDataset scatter = averagesByYear(store);
 	
 	// Begin trend display
 	/** Reference: @see https://stackoverflow.com/a/61398612/13772184 */		
-	double[] coefficients = Regression.getOLSRegression(datasetScatterPlotByYear, 0);
+	double[] coefficients = Regression.getOLSRegression(scatter, 0);
 	Function2D line = new LineFunction2D(coefficients[0], coefficients[1]); // coefficient, exponent
 	//System.out.println(coefficients[0] + " " + coefficients[1]);
     XYDataset linearRegression = DatasetUtils.sampleFunction2D(line, 1750, 2015, 2, "Fitted Linear Regression");
-
-    plot.setRenderer(1, renderer);
-	renderer.setSeriesStroke(0, new BasicStroke(1.5f));
-	renderer.setSeriesPaint(0, Color.BLACK);
-	renderer.setSeriesVisibleInLegend(0, false, true);
-	plot.setDataset(1, linearRegression);
 	// End trend display
 	
 	// Begin trend display
-	double[] coefficients1 = Regression.getPowerRegression(datasetScatterPlotByYear, 0);
+	double[] coefficients1 = Regression.getPowerRegression(scatter, 0);
 	Function2D curve = new PowerFunction2D(coefficients1[0], coefficients1[1]); // coefficient, exponent
 	//System.out.println(coefficients1[0] + " " + coefficients1[1]);
     XYDataset powerRegression = DatasetUtils.sampleFunction2D(curve, 1750, 2015, 2650, "Fitted Power Regression");
-    
-    plot.setRenderer(2, renderer);
-    renderer.setSeriesStroke(1, new BasicStroke(1.5f));
-	renderer.setSeriesPaint(1, Color.BLACK);
-	renderer.setSeriesVisibleInLegend(1, false, true);
-    plot.setDataset(2, powerRegression);
 	// End trend displays
-	
 	// End Scatter Plot
+
+	return () -> {
+		datasetLineChartByYear = pyramid.getLevel(TimePyramid.Resolution.YEAR);
+		levelOfDetail.setPyramid(pyramid);
+		
+		XYPlot plot = chart2.getXYPlot();
+		datasetScatterPlotByYear = scatter;
+		plot.setDataset(datasetScatterPlotByYear);
+		
+		XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, false);
+		plot.setRenderer(1, renderer);
+		renderer.setSeriesStroke(0, new BasicStroke(1.5f));
+		renderer.setSeriesPaint(0, Color.BLACK);
+		renderer.setSeriesVisibleInLegend(0, false, true);
+		plot.setDataset(1, linearRegression);
+		
+		plot.setRenderer(2, renderer);
+		renderer.setSeriesStroke(1, new BasicStroke(1.5f));
+		renderer.setSeriesPaint(1, Color.BLACK);
+		renderer.setSeriesVisibleInLegend(1, false, true);
+		plot.setDataset(2, powerRegression);
+		
 		chart1.setNotify(true);
 		chart2.setNotify(true);
-	}
+	};
+}
 	
-	public YIntervalSeriesCollection getDatasetLine() {
+	public ArrayXYDataset getDatasetLine() {
 		return datasetLineChartByYear;
 	}
 	
-	public XYSeriesCollection getDatasetScatter() {
+	public ArrayXYDataset getDatasetScatter() {
 		return datasetScatterPlotByYear;
 	}
 	
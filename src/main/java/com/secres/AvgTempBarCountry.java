@@ -3,11 +3,8 @@ package com.secres;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -40,8 +37,11 @@ import org.jfree.data.category.SlidingCategoryDataset;
 public class AvgTempBarCountry extends AbstractGraph {
 
 	DefaultCategoryDataset dataset;
+	/** Window of 10 countries over <code>dataset</code> shown by the plot */
+	SlidingCategoryDataset slidingDataset;
 	JFreeChart chart;
 	ChartPanel panel;
+	JScrollBar scroller;
 	
 	/**
 	 * Average temperature per country bar chart with scroll bar
@@ -50,12 +50,12 @@ public class AvgTempBarCountry extends AbstractGraph {
 	@Override
 	JPanel updateView() {
 		final int NUM_COUNTRIES = 242;
-		JScrollBar scroller = new JScrollBar(SwingConstants.HORIZONTAL, 0, 10, 0, NUM_COUNTRIES);
+		scroller = new JScrollBar(SwingConstants.HORIZONTAL, 0, 10, 0, NUM_COUNTRIES);
 		
 		dataset = new DefaultCategoryDataset();
-		SlidingCategoryDataset dataset = new SlidingCategoryDataset(this.dataset, 0, 10);
+		slidingDataset = new SlidingCategoryDataset(dataset, 0, 10);
 		
-		chart = ChartFactory.createBarChart("Countries with Highest Overall Temperatures", "Country", "Average Temperature \u00B0C", dataset, PlotOrientation.VERTICAL, true, true, false);
+		chart = ChartFactory.createBarChart("Countries with Highest Overall Temperatures", "Country", "Average Temperature \u00B0C", slidingDataset, PlotOrientation.VERTICAL, true, true, false);
 		chart.setNotify(false);
 		/** Reference: @see https://stackoverflow.com/a/61398612/13772184 */
 		CategoryPlot plot = chart.getCategoryPlot();
@@ -78,7 +78,7 @@ public class AvgTempBarCountry extends AbstractGraph {
 		mainPanel.add(scrollPanel, BorderLayout.SOUTH);
 		
 		scroller.getModel().addChangeListener(e -> {
-			dataset.setFirstCategoryIndex(scroller.getValue());
+			slidingDataset.setFirstCategoryIndex(scroller.getValue());
 			scroller.repaint(); // removes scroll bar paint artifacts
 		});
 		
@@ -97,50 +97,37 @@ public class AvgTempBarCountry extends AbstractGraph {
 		return mainPanel;
 	}
 	
-	/** Adds data to the average temperature by country bar chart */
+	/** Builds the data of the average temperature by country bar chart */
 	@Override
-	void updateModel() {
-		Map<String, List<Double>> entries = new LinkedHashMap<>();
+	Runnable prepareModel() {
+		CountryAggregates aggregates = Main.getCountryAggregates();
 		final int NUM_COUNTRIES = 242; // see line 318 (subject to change)
 
-		// Iterates over whole data 1 time
-		for(int i = 0; i < View.getCountryTable().getModel().getRowCount(); i++) {
-			if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-				if(entries.containsKey((String)View.getCountryTable().getModel().getValueAt(i, 3))) {
-					List<Double> list = entries.get((String)View.getCountryTable().getModel().getValueAt(i, 3));
-					list.set(0, list.get(0) + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1)));
-					list.set(1, list.get(1) + 1.0);
-					entries.put((String)View.getCountryTable().getModel().getValueAt(i, 3), list);
-				}
-				else {
-					List<Double> list = new ArrayList<>();
-					list.add(0, Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1)));
-					list.add(1, 1.0);
-					entries.put((String)View.getCountryTable().getModel().getValueAt(i, 3), list);
-				}
-			}
-		}
-		// Calculate averages and place into HashMap
-		Map<String, Double> mapAvg = new HashMap<>();
-		for(int i = 0; i < entries.size(); i++) {
-			String country = (String)entries.keySet().toArray()[i];
-			// Check if the Country is in the List to avoid NullPointerException
-			if(entries.containsKey(country)) {
-				mapAvg.put(country, (entries.get(country).get(0)/entries.get(country).get(1)));
-			}
+		// All-time averages indexed by country id, NaN for countries without any measurement
+		double[] averages = new double[aggregates.getCountryCount()];
+		for(int i = 0; i < averages.length; i++) {
+			averages[i] = aggregates.getAll(i).mean();
 		}
-		final Map<String, Double> entriesAvgSorted = sortByValueDescending(mapAvg);
+		Ranking ranking = Ranking.top(averages, NUM_COUNTRIES);
 		
-		for(int i = 0; i < NUM_COUNTRIES; i++) { // for sortByValueDescending()
-			if(((String)entriesAvgSorted.keySet().toArray()[i]).length() > 10) {
-				dataset.addValue(entriesAvgSorted.get((String)entriesAvgSorted.keySet().toArray()[i]), "Average temperature", ((String)entriesAvgSorted.keySet().toArray()[i]).substring(0, 9) + "...");
+		DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+		for(int i = 0; i < ranking.size(); i++) {
+			String country = aggregates.getCountry(ranking.getId(i));
+			if(country.length() > 10) {
+				dataset.addValue(ranking.getValue(i), "Average temperature", country.substring(0, 9) + "...");
 			}
-			else {	
-				dataset.addValue(entriesAvgSorted.get((String)entriesAvgSorted.keySet().toArray()[i]), "Average temperature", (String)entriesAvgSorted.keySet().toArray()[i]);
+			else {
+				dataset.addValue(ranking.getValue(i), "Average temperature", country);
 			}
 		}
-		chart.setNotify(true);
-		panel.restoreAutoBounds(); // Auto-ranges axes
+		return () -> {
+			this.dataset = dataset;
+			slidingDataset = new SlidingCategoryDataset(dataset, scroller.getValue(), 10);
+			chart.getCategoryPlot().setDataset(slidingDataset);
+			scroller.setMaximum(ranking.size());
+			chart.setNotify(true);
+			panel.restoreAutoBounds(); // Auto-ranges axes
+		};
 	}
 	
 	/** Reference: @see https://stackoverflow.com/a/23846961/13772184 */
@@ -2,19 +2,20 @@ package com.secres;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.FlowLayout;
 import java.awt.Font;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.swing.BorderFactory;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingConstants;
 
 import org.jfree.chart.ChartFactory;
@@ -34,6 +35,10 @@ import org.jfree.data.category.SlidingCategoryDataset;
 
 /**
  * A class containing the Average Change in Temperature for Countries Chart sorted.
+ * <P>
+ * The two compared periods default to the years 1912 and 2012 and can be changed to any years or ranges of years
+ * with the spinners below the charts. Both charts are recomputed from {@link CountryAggregates#getYears(int, int, int)},
+ * so a new comparison only touches two aggregates per country, never the rows of the dataset.
  * 
  * @author Pranav Amarnath
  *
@@ -41,9 +46,25 @@ import org.jfree.data.category.SlidingCategoryDataset;
 public class AvgTempBarCountryChange extends AbstractGraph {
 
 	DefaultCategoryDataset datasetGreatest, datasetLeast;
+	/** Windows of 10 countries over the datasets shown by the plots */
+	SlidingCategoryDataset slidingGreatest, slidingLeast;
 	JFreeChart chartGreatest, chartLeast;
 	ChartPanel panelGreatest;
 	ChartPanel panelLeast;
+	JScrollBar scrollerGreatest, scrollerLeast;
+	/** Compared periods, shared by the spinners of both charts */
+	final SpinnerNumberModel firstFrom = new SpinnerNumberModel(1912, 1, 9999, 1), firstTo = new SpinnerNumberModel(1912, 1, 9999, 1);
+	final SpinnerNumberModel secondFrom = new SpinnerNumberModel(2012, 1, 9999, 1), secondTo = new SpinnerNumberModel(2012, 1, 9999, 1);
+	/** Years of the spinners, copied on the EDT and read by {@link #prepareModel()} */
+	private volatile int[] years = {1912, 1912, 2012, 2012};
+	
+	AvgTempBarCountryChange() {
+		// Keep each range ordered, then recompute
+		firstFrom.addChangeListener(e -> order(firstFrom, firstTo, true));
+		firstTo.addChangeListener(e -> order(firstFrom, firstTo, false));
+		secondFrom.addChangeListener(e -> order(secondFrom, secondTo, true));
+		secondTo.addChangeListener(e -> order(secondFrom, secondTo, false));
+	}
 	
 	/**
 	 * Double bar chart organized by greatest difference in temperature from 1912-2012
@@ -51,26 +72,26 @@ public class AvgTempBarCountryChange extends AbstractGraph {
 	 */
 	JPanel updateViewGreatest() {
 		final int NUM_COUNTRIES = 240;
-		JScrollBar scroller = new JScrollBar(SwingConstants.VERTICAL, 0, 10, 0, NUM_COUNTRIES);
+		scrollerGreatest = new JScrollBar(SwingConstants.VERTICAL, 0, 10, 0, NUM_COUNTRIES);
 		
 		datasetGreatest = new DefaultCategoryDataset();
-		SlidingCategoryDataset dataset = new SlidingCategoryDataset(datasetGreatest, 0, 10);
+		slidingGreatest = new SlidingCategoryDataset(datasetGreatest, 0, 10);
 		
 		JPanel scrollPanel = new JPanel(new BorderLayout());
-		//scroller.putClientProperty("JScrollBar.showButtons", true);
-		scrollPanel.add(scroller);
+		//scrollerGreatest.putClientProperty("JScrollBar.showButtons", true);
+		scrollPanel.add(scrollerGreatest);
 		scrollPanel.setBorder(BorderFactory.createEmptyBorder(60, 2, 60, 2));
 		scrollPanel.setBackground(Color.WHITE);
 		
 		JPanel mainPanel = new JPanel(new BorderLayout());
 		mainPanel.add(scrollPanel, BorderLayout.EAST);
 		
-		scroller.getModel().addChangeListener(e -> {
-			dataset.setFirstCategoryIndex(scroller.getValue());
-			scroller.repaint(); // removes scroll bar paint artifacts
+		scrollerGreatest.getModel().addChangeListener(e -> {
+			slidingGreatest.setFirstCategoryIndex(scrollerGreatest.getValue());
+			scrollerGreatest.repaint(); // removes scroll bar paint artifacts
 		});
 
-		chartGreatest = ChartFactory.createBarChart("Countries with Highest Net Change In Temperature (1912-2012)", "Country", "Average Temperature \u00B0C", dataset, PlotOrientation.HORIZONTAL, true, true, false);
+		chartGreatest = ChartFactory.createBarChart("Countries with Highest Net Change In Temperature (1912-2012)", "Country", "Average Temperature \u00B0C", slidingGreatest, PlotOrientation.HORIZONTAL, true, true, false);
 		chartGreatest.setNotify(false);
 		/** Reference: @see https://stackoverflow.com/a/61398612/13772184 */
 		CategoryPlot plot = chartGreatest.getCategoryPlot();
@@ -97,6 +118,7 @@ public class AvgTempBarCountryChange extends AbstractGraph {
 		panelGreatest = new ChartPanel(chartGreatest);
 		panelGreatest.setMouseWheelEnabled(true);
 		mainPanel.add(panelGreatest);
+		mainPanel.add(createPeriodPanel(), BorderLayout.SOUTH);
 
 		return mainPanel;
 	}
@@ -107,26 +129,26 @@ public class AvgTempBarCountryChange extends AbstractGraph {
 	 */
 	JPanel updateViewLeast() {
 		final int NUM_COUNTRIES = 240;
-		JScrollBar scroller = new JScrollBar(SwingConstants.VERTICAL, 0, 10, 0, NUM_COUNTRIES);
+		scrollerLeast = new JScrollBar(SwingConstants.VERTICAL, 0, 10, 0, NUM_COUNTRIES);
 		
 		datasetLeast = new DefaultCategoryDataset();
-		SlidingCategoryDataset dataset = new SlidingCategoryDataset(datasetLeast, 0, 10);
+		slidingLeast = new SlidingCategoryDataset(datasetLeast, 0, 10);
 		
 		JPanel scrollPanel = new JPanel(new BorderLayout());
-		//scroller.putClientProperty("JScrollBar.showButtons", true);
-		scrollPanel.add(scroller);
+		//scrollerLeast.putClientProperty("JScrollBar.showButtons", true);
+		scrollPanel.add(scrollerLeast);
 		scrollPanel.setBorder(BorderFactory.createEmptyBorder(60, 2, 60, 2));
 		scrollPanel.setBackground(Color.WHITE);
 		
 		JPanel mainPanel = new JPanel(new BorderLayout());
 		mainPanel.add(scrollPanel, BorderLayout.EAST);
 		
-		scroller.getModel().addChangeListener(e -> {
-			dataset.setFirstCategoryIndex(scroller.getValue());
-			scroller.repaint(); // removes scroll bar paint artifacts
+		scrollerLeast.getModel().addChangeListener(e -> {
+			slidingLeast.setFirstCategoryIndex(scrollerLeast.getValue());
+			scrollerLeast.repaint(); // removes scroll bar paint artifacts
 		});
 
-		chartLeast = ChartFactory.createBarChart("Countries with Least Net Change In Temperature (1912-2012)", "Country", "Average Temperature \u00B0C", dataset, PlotOrientation.HORIZONTAL, true, true, false);
+		chartLeast = ChartFactory.createBarChart("Countries with Least Net Change In Temperature (1912-2012)", "Country", "Average Temperature \u00B0C", slidingLeast, PlotOrientation.HORIZONTAL, true, true, false);
 		chartLeast.setNotify(false);
 		/** Reference: @see https://stackoverflow.com/a/61398612/13772184 */
 		CategoryPlot plot = chartLeast.getCategoryPlot();
@@ -154,125 +176,122 @@ public class AvgTempBarCountryChange extends AbstractGraph {
 		panelLeast = new ChartPanel(chartLeast);
 		panelLeast.setMouseWheelEnabled(true);
 		mainPanel.add(panelLeast);
+		mainPanel.add(createPeriodPanel(), BorderLayout.SOUTH);
 
 		return mainPanel;
 	}
 	
-	/** Adds data to both of the double bar charts by country organized by difference */
-	@Override
-	void updateModel() {
-		final int NUM_COUNTRIES = 240;
-		
-		Map<String, List<Double>> entriesAvg = new LinkedHashMap<>(); // 1912
-		Map<String, List<Double>> entriesAvgSecond = new LinkedHashMap<>(); // 2012
-		Map<String, Double> entriesAvgSorted = new LinkedHashMap<>(); // 1912 sorted by Greatest to Least
-		Map<String, Double> entriesAvgSecondSorted = new LinkedHashMap<>(); // 2012 sorted by Greatest to Least
-		Map<String, Double> entriesDifferences = new LinkedHashMap<>(); // Differences 1912-2012 per country sorted by Greatest to Least
-		Map<String, Double> entriesAvgLeast = new LinkedHashMap<>(); // 1912 sorted by Least to Greatest
-		Map<String, Double> entriesAvgSecondLeast = new LinkedHashMap<>(); // 2012 sorted by Least to Greatest
-		Map<String, Double> entriesDifferencesLeast = new LinkedHashMap<>(); // Differences 1912-2012 per country sorted by Least to Greatest
-		
-		for(int i = 0; i < View.getCountryTable().getModel().getRowCount(); i++) {
-			if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-				if((((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)).equals("1912")) {
-					if(entriesAvg.containsKey((String)View.getCountryTable().getModel().getValueAt(i, 3))) {
-						List<Double> list = entriesAvg.get((String)View.getCountryTable().getModel().getValueAt(i, 3));
-						list.set(0, list.get(0) + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1)));
-						list.set(1, list.get(1) + 1.0);
-						entriesAvg.put((String)View.getCountryTable().getModel().getValueAt(i, 3), list);
-					}
-					else {
-						List<Double> list = new ArrayList<>();
-						list.add(0, Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1)));
-						list.add(1, 1.0);
-						entriesAvg.put((String)View.getCountryTable().getModel().getValueAt(i, 3), list);
-					}
-				}
-				else if((((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)).equals("2012")) {
-					if(entriesAvgSecond.containsKey((String)View.getCountryTable().getModel().getValueAt(i, 3))) {
-						List<Double> list = entriesAvgSecond.get((String)View.getCountryTable().getModel().getValueAt(i, 3));
-						list.set(0, list.get(0) + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1)));
-						list.set(1, list.get(1) + 1.0);
-						entriesAvgSecond.put((String)View.getCountryTable().getModel().getValueAt(i, 3), list);
-					}
-					else {
-						List<Double> list = new ArrayList<>();
-						list.add(0, Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1)));
-						list.add(1, 1.0);
-						entriesAvgSecond.put((String)View.getCountryTable().getModel().getValueAt(i, 3), list);
-					}
-				}
-			}
-		}
-		
-		// Calculate averages and place into HashMap
-		Map<String, Double> mapAvg = new HashMap<>();
-		for(int i = 0; i < entriesAvg.size(); i++) {
-			String country = (String)entriesAvg.keySet().toArray()[i];
-			// Check if the Country is in the List to avoid NullPointerException
-			if(entriesAvg.containsKey(country)) {
-				// Some extra checks
-				if((entriesAvg.get(country).get(0))/(entriesAvg.get(country).get(1)) < 100) {
-					mapAvg.put(country, (entriesAvg.get(country).get(0))/(entriesAvg.get(country).get(1)));
-				}
+	/**
+	 * Creates the spinners choosing the compared periods
+	 * @return the <code>JPanel</code>
+	 */
+	private JPanel createPeriodPanel() {
+		JPanel periodPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+		periodPanel.add(new JLabel("Compare"));
+		periodPanel.add(createYearSpinner(firstFrom));
+		periodPanel.add(new JLabel("-"));
+		periodPanel.add(createYearSpinner(firstTo));
+		periodPanel.add(new JLabel("with"));
+		periodPanel.add(createYearSpinner(secondFrom));
+		periodPanel.add(new JLabel("-"));
+		periodPanel.add(createYearSpinner(secondTo));
+		return periodPanel;
+	}
+	
+	private static JSpinner createYearSpinner(SpinnerNumberModel model) {
+		JSpinner spinner = new JSpinner(model);
+		spinner.setEditor(new JSpinner.NumberEditor(spinner, "#"));
+		return spinner;
+	}
+	
+	/** Moves the other end of a range along when the range would be inverted, and recomputes the charts */
+	private void order(SpinnerNumberModel from, SpinnerNumberModel to, boolean fromChanged) {
+		if(from.getNumber().intValue() > to.getNumber().intValue()) {
+			if(fromChanged) {
+				to.setValue(from.getValue()); // fires order() again
 			}
-		}
-		
-		// Repeat for 2012
-		Map<String, Double> mapAvgSecond = new HashMap<>();
-		for(int i = 0; i < entriesAvgSecond.size(); i++) {
-			String country = (String)entriesAvgSecond.keySet().toArray()[i];
-			// Check if the Country is in the List to avoid NullPointerException
-			if(entriesAvgSecond.containsKey(country)) {
-				// Some extra checks
-				if((entriesAvgSecond.get(country).get(0))/(entriesAvgSecond.get(country).get(1)) < 100) {
-					mapAvgSecond.put(country, (entriesAvgSecond.get(country).get(0))/(entriesAvgSecond.get(country).get(1)));
-				}
+			else {
+				from.setValue(to.getValue());
 			}
+			return;
 		}
-		
-		// Subtract to get change in temperature
-		for(int i = 0; i < mapAvg.size(); i++) {
-			if((mapAvg.get((String)mapAvg.keySet().toArray()[i])) < 100) {
-				entriesDifferences.put((String)mapAvg.keySet().toArray()[i], mapAvgSecond.get((String)mapAvg.keySet().toArray()[i]) - mapAvg.get((String)mapAvg.keySet().toArray()[i]));
-			}
+		years = new int[] {firstFrom.getNumber().intValue(), firstTo.getNumber().intValue(), secondFrom.getNumber().intValue(), secondTo.getNumber().intValue()};
+		if(Main.getCountryAggregates() != null) {
+			updateModel();
 		}
-		entriesDifferencesLeast = entriesDifferences;
-		entriesAvgLeast = mapAvg;
-		entriesAvgSecondLeast = mapAvgSecond;
-		
-		entriesAvgSorted = sortByValueDescending(mapAvg);
-		entriesAvgSecondSorted = sortByValueDescending(mapAvgSecond);
-		entriesDifferences = sortByValueDescending(entriesDifferences);
+	}
+	
+	/** Builds the data of both of the double bar charts by country organized by difference */
+	@Override
+	Runnable prepareModel() {
+		final int NUM_COUNTRIES = 240;
 		
-		entriesAvgLeast = sortByValue(entriesAvgLeast);
-		entriesAvgSecondLeast = sortByValue(entriesAvgSecondLeast);
-		entriesDifferencesLeast = sortByValue(entriesDifferencesLeast);
+		CountryAggregates aggregates = Main.getCountryAggregates();
+		int[] years = this.years;
+		int firstFromYear = years[0], firstToYear = years[1];
+		int secondFromYear = years[2], secondToYear = years[3];
+		String first = period(firstFromYear, firstToYear);
+		String second = period(secondFromYear, secondToYear);
 		
-		for(int i = 0; i < NUM_COUNTRIES; i++) {
-			if(((String)entriesDifferences.keySet().toArray()[i]).length() > 10) {
-				datasetGreatest.addValue(entriesAvgSorted.get((String)entriesDifferences.keySet().toArray()[i]), "1912", ((String)entriesDifferences.keySet().toArray()[i]).substring(0, 9) + "...");
-				datasetGreatest.addValue(entriesAvgSecondSorted.get((String)entriesDifferences.keySet().toArray()[i]), "2012", ((String)entriesDifferences.keySet().toArray()[i]).substring(0, 9) + "...");
+		// Averages of both periods and their differences indexed by country id, NaN where a country is skipped
+		double[] averages = new double[aggregates.getCountryCount()];
+		double[] averagesSecond = new double[averages.length];
+		double[] differences = new double[averages.length];
+		for(int i = 0; i < averages.length; i++) {
+			averages[i] = aggregates.getYears(i, firstFromYear, firstToYear).mean();
+			averagesSecond[i] = aggregates.getYears(i, secondFromYear, secondToYear).mean();
+			// Skip countries without measurements in both periods (mean is NaN), and some extra checks
+			if(averages[i] < 100 && averagesSecond[i] < 100) {
+				differences[i] = averagesSecond[i] - averages[i];
 			}
 			else {
-				datasetGreatest.addValue(entriesAvgSorted.get((String)entriesDifferences.keySet().toArray()[i]), "1912", (String)entriesDifferences.keySet().toArray()[i]);
-				datasetGreatest.addValue(entriesAvgSecondSorted.get((String)entriesDifferences.keySet().toArray()[i]), "2012", (String)entriesDifferences.keySet().toArray()[i]);
+				differences[i] = Double.NaN;
 			}
 		}
-		for(int i = 0; i < NUM_COUNTRIES; i++) {
-			if(((String)entriesDifferencesLeast.keySet().toArray()[i]).length() > 10) {
-				datasetLeast.addValue(entriesAvgLeast.get((String)entriesDifferencesLeast.keySet().toArray()[i]), "1912", ((String)entriesDifferencesLeast.keySet().toArray()[i]).substring(0, 9) + "...");
-				datasetLeast.addValue(entriesAvgSecondLeast.get((String)entriesDifferencesLeast.keySet().toArray()[i]), "2012", ((String)entriesDifferencesLeast.keySet().toArray()[i]).substring(0, 9) + "...");
-			}
-			else {
-				datasetLeast.addValue(entriesAvgLeast.get((String)entriesDifferencesLeast.keySet().toArray()[i]), "1912", (String)entriesDifferencesLeast.keySet().toArray()[i]);
-				datasetLeast.addValue(entriesAvgSecondLeast.get((String)entriesDifferencesLeast.keySet().toArray()[i]), "2012", (String)entriesDifferencesLeast.keySet().toArray()[i]);
+		Ranking greatest = Ranking.top(differences, NUM_COUNTRIES);
+		Ranking least = Ranking.bottom(differences, NUM_COUNTRIES);
+		
+		DefaultCategoryDataset rankedGreatest = new DefaultCategoryDataset();
+		DefaultCategoryDataset rankedLeast = new DefaultCategoryDataset();
+		addRanking(rankedGreatest, greatest, averages, averagesSecond, first, second, aggregates);
+		addRanking(rankedLeast, least, averages, averagesSecond, first, second, aggregates);
+		
+		return () -> {
+			chartGreatest.setNotify(false);
+			chartLeast.setNotify(false);
+			datasetGreatest = rankedGreatest;
+			datasetLeast = rankedLeast;
+			slidingGreatest = new SlidingCategoryDataset(datasetGreatest, scrollerGreatest.getValue(), 10);
+			slidingLeast = new SlidingCategoryDataset(datasetLeast, scrollerLeast.getValue(), 10);
+			chartGreatest.getCategoryPlot().setDataset(slidingGreatest);
+			chartLeast.getCategoryPlot().setDataset(slidingLeast);
+			chartGreatest.setTitle("Countries with Highest Net Change In Temperature (" + first + " to " + second + ")");
+			chartLeast.setTitle("Countries with Least Net Change In Temperature (" + first + " to " + second + ")");
+			scrollerGreatest.setMaximum(greatest.size());
+			scrollerLeast.setMaximum(least.size());
+			chartGreatest.setNotify(true);
+			chartLeast.setNotify(true);
+			panelGreatest.restoreAutoBounds(); // Auto-ranges axes
+			panelLeast.restoreAutoBounds(); // Auto-ranges axes
+		};
+	}
+	
+	/** @return the label of a period, e.g. <code>1912</code> or <code>1900-1910</code> */
+	private static String period(int fromYear, int toYear) {
+		return fromYear == toYear ? Integer.toString(fromYear) : fromYear + "-" + toYear;
+	}
+	
+	/** Adds the averages of both periods of every ranked country, in rank order */
+	private static void addRanking(DefaultCategoryDataset dataset, Ranking ranking, double[] averages, double[] averagesSecond, String first, String second, CountryAggregates aggregates) {
+		for(int i = 0; i < ranking.size(); i++) {
+			int id = ranking.getId(i);
+			String country = aggregates.getCountry(id);
+			if(country.length() > 10) {
+				country = country.substring(0, 9) + "...";
 			}
+			dataset.addValue(averages[id], first, country);
+			dataset.addValue(averagesSecond[id], second.equals(first) ? second + " " : second, country);
 		}
-		chartGreatest.setNotify(true);
-		chartLeast.setNotify(true);
-		panelGreatest.restoreAutoBounds(); // Auto-ranges axes
-		panelLeast.restoreAutoBounds(); // Auto-ranges axes
 	}
 	
 	/** 
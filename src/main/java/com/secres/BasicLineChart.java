@@ -11,21 +11,23 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.labels.StandardXYToolTipGenerator;
 import org.jfree.chart.plot.XYPlot;
-import org.jfree.data.time.Month;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 
 /**
  * A class containing raw data points from the global dataset in a chart.
+ * <P>
+ * The plot shows a {@link LevelOfDetail} sample of the points in the visible range, about one per pixel. The points are
+ * read from a {@link TimePyramid}, so zoomed out the chart shows yearly or decadal averages and zoomed in the months.
  * 
  * @author Pranav Amarnath
  *
  */
 public class BasicLineChart extends AbstractGraph {
 
-	private TimeSeriesCollection dataset;
+	private ArrayXYDataset dataset;
 	private JFreeChart chart;
 	private ChartPanel panel;
+	/** Picks the level of the pyramid and downsamples it to the visible range and panel width */
+	private LevelOfDetail levelOfDetail;
 	
 	/**
 	 * Basic line chart
@@ -33,7 +35,7 @@ public class BasicLineChart extends AbstractGraph {
 	 */
 	@Override
 	JPanel updateView() {
-		dataset = new TimeSeriesCollection();
+		dataset = new ArrayXYDataset();
 
 		chart = ChartFactory.createTimeSeriesChart("Land Temperature 1750-2015", "Date", "Temperature", dataset, true, true, false);
 		chart.setNotify(false);
@@ -49,29 +51,28 @@ public class BasicLineChart extends AbstractGraph {
 
         panel = new ChartPanel(chart);
         panel.setMouseWheelEnabled(true);
+        levelOfDetail = LevelOfDetail.install(panel, 0);
 
 		return panel;
 	}
 	
-	/** Adds data to basic line chart */
+	/** Builds the data of basic line chart */
 	@Override
-	void updateModel() {
-		TimeSeries basicLine = new TimeSeries("Temperature over time");
-		for(int i = 0; i < View.getGlobalTable().getModel().getRowCount(); i++) {
-			if(!(((String)View.getGlobalTable().getModel().getValueAt(i, 1)).equals(""))) {
-				basicLine.add(new Month(Integer.parseInt(((String)View.getGlobalTable().getModel().getValueAt(i, 0)).substring(5, 7)), Integer.parseInt(((String)View.getGlobalTable().getModel().getValueAt(i, 0)).substring(0, 4))), Double.parseDouble((String)View.getGlobalTable().getModel().getValueAt(i, 1)));
-			}
-		}
-		dataset.addSeries(basicLine);
-		chart.setNotify(true);
+	Runnable prepareModel() {
+		TimePyramid pyramid = new TimePyramid("Temperature over time", Main.getGlobalModel().getStore(), 0, 1, -1, false);
+		return () -> {
+			dataset = pyramid.getLevel(TimePyramid.Resolution.MONTH);
+			levelOfDetail.setPyramid(pyramid);
+			chart.setNotify(true);
+		};
 	}
 	
 	/**
-	 * Returns the dataset
-	 * @return TimeSeriesCollection
+	 * Returns the monthly dataset; the plot shows a sample of the level that fits the visible range
+	 * @return ArrayXYDataset
 	 */
 	@Override
-	public TimeSeriesCollection getDataset() {
+	public ArrayXYDataset getDataset() {
 		return dataset;
 	}
 	
@@ -0,0 +1,251 @@
+package com.secres;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The city dataset, <code>GlobalLandTemperaturesByCity.csv</code>, read out of core.
+ * <P>
+ * The CSV is too large for a {@link ColumnStore}, so it is read into a {@link SegmentStore} whose columns stay in
+ * memory-mapped segment files. Two {@link CountryAggregates} rollups are then built by streaming over the segments,
+ * so the country charts can show them in place of the country dataset:
+ * <ul>
+ * <li>countries - a monthly cube with one measurement per country and month, the mean of its cities, so each
+ * country counts like in the country dataset whatever its number of cities</li>
+ * <li>cities - a yearly cube with one region per city, named like <code>Barcelona (Spain)</code> since some city names
+ * occur in several countries</li>
+ * </ul>
+ * The heap holds the dictionaries and the two cubes, whatever the size of the file.
+ * <P>
+ * The dataset is only read with <code>-Dsecres.city=countries</code> or <code>-Dsecres.city=cities</code>, which
+ * selects the rollup read by the country charts. Like the other datasets it is looked up in the
+ * <code>secres.data.dir</code> directory first, but it must be a file on disk.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class CityModel {
+
+	/** Rollup read by the country charts: <code>off</code>, <code>countries</code> or <code>cities</code> */
+	static final String ROLLUP = System.getProperty("secres.city", "off");
+	/** Whether the city dataset is read */
+	static final boolean ENABLED = ROLLUP.equals("countries") || ROLLUP.equals("cities");
+	/** Path of the dataset */
+	static final String PATH = "/GlobalLandTemperaturesByCity.csv";
+
+	/** Columnar data, set once the read has finished */
+	private volatile SegmentStore store;
+	/** Country rollup, set once the aggregation has finished */
+	private volatile CountryAggregates countries;
+	/** City rollup, set once the aggregation has finished */
+	private volatile CountryAggregates cities;
+	/** Stage building both rollups, completes with the one selected by {@link #ROLLUP} */
+	private final CompletableFuture<CountryAggregates> aggregatesFuture;
+	/** Completes once every stage of this dataset has finished, successfully or not */
+	private final CompletableFuture<Void> loaded;
+	/** Why a stage failed, <code>null</code> if none has */
+	private volatile Throwable error;
+
+	/**
+	 * Schedules the read and aggregation of the dataset.
+	 * @param path  Path to file
+	 * @param scheduler  runs the stages
+	 */
+	CityModel(String path, LoadScheduler scheduler) {
+		String dataset = path.substring(path.lastIndexOf('/') + 1);
+		LoadProgress.expect(dataset, LoadProgress.Phase.PARSE);
+		LoadProgress.expect(dataset, LoadProgress.Phase.AGGREGATE);
+		CompletableFuture<SegmentStore> storeFuture = scheduler.submit(() -> {
+			SegmentStore store = read(path, scheduler.getPool());
+			this.store = store;
+			return store;
+		});
+		aggregatesFuture = scheduler.then(storeFuture, store -> {
+			CountryAggregates[] rollups = aggregate(path, store);
+			countries = rollups[0];
+			cities = rollups[1];
+			return ROLLUP.equals("cities") ? cities : countries;
+		});
+		loaded = aggregatesFuture.handle((v, e) -> {
+			if(e != null) {
+				error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				e.printStackTrace();
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Opens the segments of the dataset, reading the CSV into new segments if it has changed.
+	 * @param path  Path to file
+	 * @param pool  parses the chunks of the CSV in parallel
+	 * @return the store
+	 * @throws IOException  if the file is not on disk or cannot be read
+	 */
+	static SegmentStore read(String path, ForkJoinPool pool) throws IOException {
+		Path file = Model.locate(path);
+		if(file == null) {
+			throw new IOException("Dataset not found on disk: " + path + " (see -Dsecres.data.dir)");
+		}
+		String dataset = path.substring(path.lastIndexOf('/') + 1);
+		LoadProgress.Task progress = LoadProgress.start(dataset, LoadProgress.Phase.PARSE, Files.size(file));
+		Metrics.Timer timer = Metrics.timer("parse/" + dataset);
+		long start = timer.start();
+		SegmentStore store = SegmentStore.open(file, pool, progress);
+		timer.stop(start);
+		Metrics.counter("parse.bytes/" + dataset).add(Files.size(file));
+		Metrics.counter("parse.rows/" + dataset).add(store.getRowCount());
+		progress.finish();
+		return store;
+	}
+
+	/**
+	 * Builds the country and city rollups, streaming over the segments twice: once for the years and cities, once for
+	 * the measurements.
+	 * @param path  Path to file
+	 * @param store  the city dataset
+	 * @return the country rollup and the city rollup
+	 */
+	static CountryAggregates[] aggregate(String path, SegmentStore store) {
+		final int dateColumn = store.indexOf("dt");
+		final int temperatureColumn = store.indexOf("AverageTemperature");
+		final int uncertaintyColumn = store.indexOf("AverageTemperatureUncertainty");
+		final int cityColumn = store.indexOf("City");
+		final int countryColumn = store.indexOf("Country");
+		if(dateColumn < 0 || temperatureColumn < 0 || uncertaintyColumn < 0 || cityColumn < 0 || countryColumn < 0) {
+			throw new IllegalArgumentException(path + " does not have the columns of the city dataset");
+		}
+		String dataset = path.substring(path.lastIndexOf('/') + 1);
+		LoadProgress.Task progress = LoadProgress.start(dataset, LoadProgress.Phase.AGGREGATE, store.getRowCount());
+		Metrics.Timer timer = Metrics.timer("aggregate/" + dataset);
+		long start = timer.start();
+
+		String[] countryNames = new String[store.getDictionarySize(countryColumn)];
+		for(int i = 0; i < countryNames.length; i++) {
+			countryNames[i] = store.getDictionaryValue(countryColumn, i);
+		}
+		// A city is a pair of city and country ids; rows of a city are consecutive, so most rows skip the map
+		Map<Long, Integer> cityIds = new HashMap<>();
+		List<String> cityNames = new ArrayList<>();
+		int firstYear = Integer.MAX_VALUE;
+		int lastYear = Integer.MIN_VALUE;
+		for(int s = 0; s < store.getSegmentCount(); s++) {
+			SegmentStore.Segment segment = store.getSegment(s);
+			long lastKey = -1;
+			for(int row = 0; row < segment.getRowCount(); row++) {
+				if(!segment.isNull(row, dateColumn)) {
+					int year = segment.getYear(row, dateColumn);
+					firstYear = Math.min(firstYear, year);
+					lastYear = Math.max(lastYear, year);
+				}
+				if(segment.isNull(row, cityColumn) || segment.isNull(row, countryColumn)) {
+					continue;
+				}
+				long key = (long) segment.getInt(row, cityColumn) << 32 | segment.getInt(row, countryColumn);
+				if(key != lastKey && !cityIds.containsKey(key)) {
+					cityIds.put(key, cityNames.size());
+					cityNames.add(store.getDictionaryValue(cityColumn, (int) (key >>> 32)) + " (" + countryNames[(int) key] + ")");
+				}
+				lastKey = key;
+			}
+		}
+		if(firstYear > lastYear) {
+			firstYear = lastYear = 0;
+		}
+
+		CountryAggregates.Builder countries = new CountryAggregates.Builder(countryNames, firstYear, lastYear, true);
+		CountryAggregates.Builder cities = new CountryAggregates.Builder(cityNames.toArray(new String[0]), firstYear, lastYear, false);
+		for(int s = 0; s < store.getSegmentCount(); s++) {
+			SegmentStore.Segment segment = store.getSegment(s);
+			long lastKey = -1;
+			int city = -1;
+			for(int row = 0; row < segment.getRowCount(); row++) {
+				if(segment.isNull(row, temperatureColumn) || segment.isNull(row, cityColumn) || segment.isNull(row, countryColumn) || segment.isNull(row, dateColumn)) {
+					continue;
+				}
+				int country = segment.getInt(row, countryColumn);
+				long key = (long) segment.getInt(row, cityColumn) << 32 | country;
+				if(key != lastKey) {
+					city = cityIds.get(key);
+					lastKey = key;
+				}
+				int year = segment.getYear(row, dateColumn);
+				int month = segment.getMonth(row, dateColumn);
+				double value = segment.getDouble(row, temperatureColumn);
+				double uncertainty = segment.isNull(row, uncertaintyColumn) ? 0 : segment.getDouble(row, uncertaintyColumn);
+				countries.add(country, year, month, value, uncertainty);
+				cities.add(city, year, month, value, uncertainty);
+			}
+			progress.add(segment.getRowCount());
+		}
+		CountryAggregates[] rollups = {countries.buildMonthlyMeans(), cities.build()};
+		timer.stop(start);
+		progress.finish();
+		return rollups;
+	}
+
+	/**
+	 * Returns the columnar data
+	 * @return <code>SegmentStore</code> - the data, or <code>null</code> before the read has finished
+	 */
+	SegmentStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Returns the rollup selected by <code>-Dsecres.city</code>
+	 * @return <code>CountryAggregates</code> - the cube, or <code>null</code> before the aggregation has finished
+	 */
+	CountryAggregates getAggregates() {
+		return ROLLUP.equals("cities") ? cities : countries;
+	}
+
+	/**
+	 * Returns the country rollup
+	 * @return <code>CountryAggregates</code> - the cube, or <code>null</code> before the aggregation has finished
+	 */
+	CountryAggregates getCountries() {
+		return countries;
+	}
+
+	/**
+	 * Returns the city rollup
+	 * @return <code>CountryAggregates</code> - the yearly cube, or <code>null</code> before the aggregation has finished
+	 */
+	CountryAggregates getCities() {
+		return cities;
+	}
+
+	/**
+	 * Returns the aggregation stage, for stages that need the rollups
+	 * @return <code>CompletableFuture</code> - completes with the rollup selected by <code>-Dsecres.city</code>
+	 */
+	CompletableFuture<CountryAggregates> getAggregatesFuture() {
+		return aggregatesFuture;
+	}
+
+	/**
+	 * Returns why the dataset failed to load
+	 * @return <code>Throwable</code> - the failure of the first failed stage, or <code>null</code>
+	 */
+	Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * Returns the stage completing once the dataset is read and aggregated
+	 * @return <code>CompletableFuture</code> - completes normally even if a stage failed
+	 */
+	CompletableFuture<Void> getLoaded() {
+		return loaded;
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.secres;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Lazily built, cached indexes over the columns of a {@link ColumnStore}, for sorting and filtering tables.
+ * <P>
+ * A sort permutation lists the rows of a column in ascending order, missing cells last and ties in row order. It is
+ * built once per column by sorting one <code>long</code> per row, the rank of the cell in the high half and the row
+ * in the low half, with {@link Arrays#parallelSort(long[])}. Ranks come from the packed date, from the alphabetical
+ * order of the dictionary, or from the distinct values of a numeric column. The permutation of a date column doubles
+ * as a date index: the rows of a date range are one binary search away. Text columns also get posting lists, the rows
+ * of each dictionary id.
+ * <P>
+ * All methods are thread-safe; an index is built by the first caller that needs it.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class ColumnIndex {
+
+	/** Rank of missing cells, after every value */
+	private static final long MISSING = Integer.MAX_VALUE;
+
+	private final ColumnStore store;
+	/** Ascending sort permutation per column */
+	private final Map<Integer, int[]> permutations = new ConcurrentHashMap<>();
+	/** Posting lists per text column: the offsets of each dictionary id into the rows, then the rows */
+	private final Map<Integer, int[][]> postings = new ConcurrentHashMap<>();
+
+	/**
+	 * @param store  the indexed data
+	 */
+	ColumnIndex(ColumnStore store) {
+		this.store = store;
+	}
+
+	/** @return the indexed data */
+	ColumnStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @param column  the column index
+	 * @return the rows in ascending order of the column, missing cells last; must not be modified
+	 */
+	int[] sortPermutation(int column) {
+		return permutations.computeIfAbsent(column, this::buildPermutation);
+	}
+
+	/**
+	 * @param column  the column index
+	 * @return whether the sort permutation of the column has been built
+	 */
+	boolean hasSortPermutation(int column) {
+		return permutations.containsKey(column);
+	}
+
+	private int[] buildPermutation(int column) {
+		int n = store.getRowCount();
+		long[] ranks = ranks(column);
+		long[] keys = new long[n];
+		IntStream.range(0, n).parallel().forEach(row -> keys[row] = store.isNull(row, column) ? MISSING << 32 | row : ranks[row] << 32 | row);
+		Arrays.parallelSort(keys);
+		int[] permutation = new int[n];
+		IntStream.range(0, n).parallel().forEach(i -> permutation[i] = (int) keys[i]);
+		return permutation;
+	}
+
+	/** @return a non-negative rank below {@link #MISSING} for each row, in the order of the column's values */
+	private long[] ranks(int column) {
+		int n = store.getRowCount();
+		long[] ranks = new long[n];
+		switch(store.getType(column)) {
+			case ColumnStore.DATE: {
+				int min = Integer.MAX_VALUE;
+				for(int row = 0; row < n; row++) {
+					if(!store.isNull(row, column)) {
+						min = Math.min(min, store.getInt(row, column));
+					}
+				}
+				final int first = min;
+				IntStream.range(0, n).parallel().forEach(row -> ranks[row] = (long) store.getInt(row, column) - first);
+				break;
+			}
+			case ColumnStore.CATEGORY: {
+				Integer[] ids = new Integer[store.getDictionarySize(column)];
+				for(int id = 0; id < ids.length; id++) {
+					ids[id] = id;
+				}
+				Arrays.sort(ids, (a, b) -> store.getDictionaryValue(column, a).compareTo(store.getDictionaryValue(column, b)));
+				int[] rankOfId = new int[ids.length];
+				for(int rank = 0; rank < ids.length; rank++) {
+					rankOfId[ids[rank]] = rank;
+				}
+				IntStream.range(0, n).parallel().forEach(row -> ranks[row] = store.isNull(row, column) ? 0 : rankOfId[store.getInt(row, column)]);
+				break;
+			}
+			default: {
+				double[] distinct = IntStream.range(0, n).filter(row -> !store.isNull(row, column)).mapToDouble(row -> store.getDouble(row, column)).toArray();
+				Arrays.parallelSort(distinct);
+				int count = 0;
+				for(int i = 0; i < distinct.length; i++) {
+					if(count == 0 || Double.compare(distinct[count - 1], distinct[i]) != 0) {
+						distinct[count++] = distinct[i];
+					}
+				}
+				final int size = count;
+				IntStream.range(0, n).parallel().forEach(row -> ranks[row] = store.isNull(row, column) ? 0 : Arrays.binarySearch(distinct, 0, size, store.getDouble(row, column)));
+				break;
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	 * @param column  a text column
+	 * @param id  a dictionary id
+	 * @return the rows with that id, ascending; must not be modified
+	 */
+	int[] rowsWithId(int column, int id) {
+		int[][] index = postings.computeIfAbsent(column, this::buildPostings);
+		return Arrays.copyOfRange(index[1], index[0][id], index[0][id + 1]);
+	}
+
+	/** Counting sort of the rows by dictionary id, which keeps the rows of an id ascending */
+	private int[][] buildPostings(int column) {
+		int n = store.getRowCount();
+		int[] offsets = new int[store.getDictionarySize(column) + 1];
+		for(int row = 0; row < n; row++) {
+			if(!store.isNull(row, column)) {
+				offsets[store.getInt(row, column) + 1]++;
+			}
+		}
+		for(int id = 0; id < offsets.length - 1; id++) {
+			offsets[id + 1] += offsets[id];
+		}
+		int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+		int[] rows = new int[offsets[offsets.length - 1]];
+		for(int row = 0; row < n; row++) {
+			if(!store.isNull(row, column)) {
+				rows[next[store.getInt(row, column)]++] = row;
+			}
+		}
+		return new int[][] {offsets, rows};
+	}
+
+	/**
+	 * @param column  a date column
+	 * @param from  the first packed date, inclusive
+	 * @param to  the last packed date, inclusive
+	 * @return the rows in the range, in date order
+	 */
+	int[] rowsInDateRange(int column, int from, int to) {
+		int[] permutation = sortPermutation(column);
+		return Arrays.copyOfRange(permutation, lowerBound(permutation, column, from), lowerBound(permutation, column, (long) to + 1));
+	}
+
+	/**
+	 * Finds the first and last date of a column without building its sort permutation: the ends of the permutation
+	 * if it exists, else one pass over the column.
+	 * @param column  a date column
+	 * @return the first and last packed date, <code>null</code> if every date is missing
+	 */
+	int[] dateRange(int column) {
+		int[] permutation = permutations.get(column);
+		if(permutation != null) {
+			int end = lowerBound(permutation, column, (long) Integer.MAX_VALUE + 1);
+			return end == 0 ? null : new int[] {store.getInt(permutation[0], column), store.getInt(permutation[end - 1], column)};
+		}
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		// Columns are decoded a block at a time, see ColumnStore#compress()
+		int[] dates = new int[4096];
+		for(int from = 0; from < store.getRowCount(); from += dates.length) {
+			int length = Math.min(dates.length, store.getRowCount() - from);
+			store.getInts(column, from, length, dates);
+			for(int i = 0; i < length; i++) {
+				if(!store.isNull(from + i, column)) {
+					min = Math.min(min, dates[i]);
+					max = Math.max(max, dates[i]);
+				}
+			}
+		}
+		return min > max ? null : new int[] {min, max};
+	}
+
+	/** @return the first position of the permutation whose date is at least the given one, missing dates count as the latest */
+	private int lowerBound(int[] permutation, int column, long date) {
+		int low = 0;
+		int high = permutation.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			int row = permutation[mid];
+			if(!store.isNull(row, column) && store.getInt(row, column) < date) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+}
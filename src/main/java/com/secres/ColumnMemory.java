@@ -0,0 +1,192 @@
+package com.secres;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Where the columns of a {@link ColumnStore} are kept, and how much memory one dataset may use for them.
+ * <P>
+ * With <code>-Dsecres.offheap=true</code> the dates, dictionary ids, numeric values and null bitmaps of every loaded
+ * dataset are kept in direct buffers outside the Java heap, so the garbage collector never scans or copies them and
+ * pauses stay short while charts are panned. Direct memory is limited by <code>-XX:MaxDirectMemorySize</code>, which
+ * defaults to the maximum heap size. Parsing a CSV still uses the heap for a while; only the finished columns move.
+ * <P>
+ * <code>-Dsecres.memory.budget=&lt;size&gt;</code>, e.g. <code>512m</code> or <code>2g</code>, caps the column memory
+ * of each dataset; a size that cannot be parsed is reported and ignored. Datasets are checked before their columns are allocated: a CSV against an estimate from its first
+ * rows, a snapshot against its exact size. A dataset over its budget, or over the memory the JVM allows, fails to
+ * load with a {@link BudgetExceededException} that says how much it needs, instead of ending in an
+ * <code>OutOfMemoryError</code>. Dictionaries are small and not counted. The estimate of a CSV is for its parsed
+ * columns, before {@link ColumnStore#compress()}; the finished columns are checked again at their compressed size.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class ColumnMemory {
+
+	/** Whether columns are kept outside the heap */
+	static final boolean OFF_HEAP = Boolean.parseBoolean(System.getProperty("secres.offheap", "false"));
+	/** Column memory allowed per dataset in bytes, <code>Long.MAX_VALUE</code> without budget */
+	static final long BUDGET = budget(System.getProperty("secres.memory.budget"));
+
+	/** Bytes of columns moved off the heap */
+	private static final Metrics.Counter OFF_HEAP_BYTES = Metrics.counter("memory.offheap");
+
+	private ColumnMemory() {}
+
+	/**
+	 * Thrown when the columns of a dataset would not fit in the memory budget.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static final class BudgetExceededException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Bytes the columns need */
+		final long bytes;
+
+		BudgetExceededException(long bytes, String message) {
+			super(message);
+			this.bytes = bytes;
+		}
+
+	}
+
+	/**
+	 * @param size  the <code>secres.memory.budget</code> property, may be <code>null</code>
+	 * @return the budget in bytes, <code>Long.MAX_VALUE</code> if the property is not set or malformed
+	 */
+	static long budget(String size) {
+		try {
+			return parseSize(size, Long.MAX_VALUE);
+		} catch(NumberFormatException e) {
+			System.err.println("Ignoring secres.memory.budget=" + size + ", expected a size like 512m or 2g");
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Parses a size like <code>512m</code> or <code>512mb</code>, with an optional <code>k</code>, <code>m</code> or
+	 * <code>g</code> suffix and an optional <code>b</code> after it.
+	 * @param size  the size, may be <code>null</code>
+	 * @param fallback  the result for <code>null</code>
+	 * @return the size in bytes
+	 * @throws NumberFormatException  if the size is malformed, negative or too large
+	 */
+	static long parseSize(String size, long fallback) {
+		if(size == null || size.trim().isEmpty()) {
+			return fallback;
+		}
+		String text = size.trim().toLowerCase();
+		if(text.endsWith("b")) {
+			text = text.substring(0, text.length() - 1);
+		}
+		if(text.isEmpty()) {
+			throw new NumberFormatException("Empty size: " + size);
+		}
+		int shift = 0;
+		switch(text.charAt(text.length() - 1)) {
+			case 'k':
+				shift = 10;
+				break;
+			case 'm':
+				shift = 20;
+				break;
+			case 'g':
+				shift = 30;
+				break;
+			default:
+				break;
+		}
+		long value = Long.parseLong(shift == 0 ? text : text.substring(0, text.length() - 1));
+		if(value < 0 || value > Long.MAX_VALUE >> shift) {
+			throw new NumberFormatException("Size out of range: " + size);
+		}
+		return value << shift;
+	}
+
+	/** @return the most direct memory the JVM allows, from <code>-XX:MaxDirectMemorySize</code> or the maximum heap size */
+	private static long maxDirectMemory() {
+		for(String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if(argument.startsWith("-XX:MaxDirectMemorySize=")) {
+				return parseSize(argument.substring(argument.indexOf('=') + 1), Runtime.getRuntime().maxMemory());
+			}
+		}
+		return Runtime.getRuntime().maxMemory();
+	}
+
+	/**
+	 * @param types  the column types
+	 * @param rows  the number of rows
+	 * @return the bytes of the columns and null bitmaps
+	 */
+	static long columnBytes(byte[] types, long rows) {
+		long bytes = 0;
+		for(byte type : types) {
+			bytes += 8 * ((rows + 63) >>> 6) + (type == ColumnStore.NUMERIC ? 8 : 4) * rows;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Checks that columns fit in the budget of a dataset and in the memory of the JVM.
+	 * @param bytes  the bytes of the columns
+	 * @param estimate  whether <code>bytes</code> is estimated
+	 * @throws BudgetExceededException  if they do not fit
+	 */
+	static void check(long bytes, boolean estimate) {
+		String needs = (estimate ? "needs about " : "needs ") + megabytes(bytes) + " for its columns";
+		if(bytes > BUDGET) {
+			throw new BudgetExceededException(bytes, needs + ", over the budget of " + megabytes(BUDGET) + " per dataset set with -Dsecres.memory.budget");
+		}
+		long limit = OFF_HEAP ? maxDirectMemory() : Runtime.getRuntime().maxMemory();
+		if(bytes > limit) {
+			throw new BudgetExceededException(bytes, needs + ", over the " + megabytes(limit) + (OFF_HEAP ? " of direct memory allowed by -XX:MaxDirectMemorySize" : " of heap allowed by -Xmx"));
+		}
+	}
+
+	private static String megabytes(long bytes) {
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+
+	private static ByteBuffer allocateDirect(long bytes) {
+		if(bytes > Integer.MAX_VALUE) {
+			throw new BudgetExceededException(bytes, "needs a column of " + megabytes(bytes) + ", over the 2 GB of one direct buffer");
+		}
+		OFF_HEAP_BYTES.add(bytes);
+		return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @param length  the number of values
+	 * @param direct  whether to allocate outside the heap
+	 * @return an empty buffer to fill and flip
+	 */
+	static IntBuffer allocateInts(int length, boolean direct) {
+		return direct ? allocateDirect(4L * length).asIntBuffer() : IntBuffer.allocate(length);
+	}
+
+	/**
+	 * @param length  the number of values
+	 * @param direct  whether to allocate outside the heap
+	 * @return an empty buffer to fill and flip
+	 */
+	static DoubleBuffer allocateDoubles(int length, boolean direct) {
+		return direct ? allocateDirect(8L * length).asDoubleBuffer() : DoubleBuffer.allocate(length);
+	}
+
+	/**
+	 * @param length  the number of values
+	 * @param direct  whether to allocate outside the heap
+	 * @return an empty buffer to fill and flip
+	 */
+	static LongBuffer allocateLongs(int length, boolean direct) {
+		return direct ? allocateDirect(8L * length).asLongBuffer() : LongBuffer.allocate(length);
+	}
+
+}
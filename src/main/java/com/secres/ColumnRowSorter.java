@@ -0,0 +1,332 @@
+package com.secres;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+/**
+ * A <code>RowSorter</code> for a {@link ColumnTableModel} that sorts and filters with a {@link ColumnIndex} instead of
+ * comparing formatted cells.
+ * <P>
+ * Sorting a column reads its cached sort permutation, forwards or backwards, so only the first sort of a column pays
+ * for building it. A {@link Filter} picks its candidate rows from the posting list of a country or the date index, and
+ * only checks the remaining conditions on those. The view order is computed on the {@link LoadScheduler} and swapped
+ * in on the EDT; a result that was overtaken by a newer sort or filter is dropped.
+ * <P>
+ * Clicking a header cycles through ascending, descending and unsorted. Only one column is sorted at a time.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class ColumnRowSorter extends RowSorter<ColumnTableModel> {
+
+	/**
+	 * Conditions on the rows of a table, each one optional.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static final class Filter {
+
+		/** A filter without conditions */
+		static final Filter NONE = new Filter(-1, -1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+		final int textColumn;
+		/** Dictionary id the text column must have, -1 for any */
+		final int textId;
+		final int dateColumn;
+		/** Packed date range, inclusive */
+		final int fromDate, toDate;
+		final int valueColumn;
+		/** Value range, inclusive */
+		final double min, max;
+
+		/**
+		 * @param textColumn  the text column, or -1
+		 * @param textId  the dictionary id the text column must have, or -1 for any
+		 * @param dateColumn  the date column, or -1
+		 * @param fromDate  the first packed date
+		 * @param toDate  the last packed date
+		 * @param valueColumn  the numeric column, or -1
+		 * @param min  the lowest value
+		 * @param max  the highest value
+		 */
+		Filter(int textColumn, int textId, int dateColumn, int fromDate, int toDate, int valueColumn, double min, double max) {
+			this.textColumn = textColumn;
+			this.textId = textColumn < 0 ? -1 : textId;
+			this.dateColumn = dateColumn;
+			this.fromDate = dateColumn < 0 ? Integer.MIN_VALUE : fromDate;
+			this.toDate = dateColumn < 0 ? Integer.MAX_VALUE : toDate;
+			this.valueColumn = valueColumn;
+			this.min = valueColumn < 0 ? Double.NEGATIVE_INFINITY : min;
+			this.max = valueColumn < 0 ? Double.POSITIVE_INFINITY : max;
+		}
+
+		/** @return whether the filter has no conditions */
+		boolean isEmpty() {
+			return textId < 0 && fromDate == Integer.MIN_VALUE && toDate == Integer.MAX_VALUE && min == Double.NEGATIVE_INFINITY && max == Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * @param index  the index of the data
+		 * @return the rows passing every condition, ascending
+		 */
+		int[] apply(ColumnIndex index) {
+			ColumnStore store = index.getStore();
+			// Start from the most selective index
+			int[] candidates;
+			boolean sorted = true;
+			if(textId >= 0) {
+				candidates = index.rowsWithId(textColumn, textId);
+			}
+			else if(fromDate != Integer.MIN_VALUE || toDate != Integer.MAX_VALUE) {
+				candidates = index.rowsInDateRange(dateColumn, fromDate, toDate);
+				sorted = false;
+			}
+			else {
+				candidates = null;
+			}
+			int n = candidates == null ? store.getRowCount() : candidates.length;
+			int[] rows = new int[n];
+			int count = 0;
+			for(int i = 0; i < n; i++) {
+				int row = candidates == null ? i : candidates[i];
+				if(matches(store, row)) {
+					rows[count++] = row;
+				}
+			}
+			rows = Arrays.copyOf(rows, count);
+			if(!sorted) {
+				Arrays.parallelSort(rows);
+			}
+			return rows;
+		}
+
+		private boolean matches(ColumnStore store, int row) {
+			if(textId >= 0 && (store.isNull(row, textColumn) || store.getInt(row, textColumn) != textId)) {
+				return false;
+			}
+			if(fromDate != Integer.MIN_VALUE || toDate != Integer.MAX_VALUE) {
+				if(store.isNull(row, dateColumn)) {
+					return false;
+				}
+				int date = store.getInt(row, dateColumn);
+				if(date < fromDate || date > toDate) {
+					return false;
+				}
+			}
+			if(min != Double.NEGATIVE_INFINITY || max != Double.POSITIVE_INFINITY) {
+				double value = store.getDouble(row, valueColumn);
+				// NaN, a missing value, fails both comparisons
+				if(!(value >= min && value <= max)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+	private final ColumnTableModel model;
+	private List<SortKey> sortKeys = Collections.emptyList();
+	private Filter filter = Filter.NONE;
+	/** Model row of each view row, <code>null</code> while the view shows every row in model order */
+	private int[] viewToModel;
+	/** Inverse of <code>viewToModel</code>, built on demand */
+	private int[] modelToView;
+	/** Number of the latest update, to drop results that were overtaken */
+	private int updates;
+
+	/**
+	 * @param model  the table model
+	 */
+	ColumnRowSorter(ColumnTableModel model) {
+		this.model = model;
+	}
+
+	@Override
+	public ColumnTableModel getModel() {
+		return model;
+	}
+
+	/** @return the filter in use */
+	Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Replaces the filter; the view is updated once the rows are found.
+	 * @param filter  the filter
+	 */
+	void setFilter(Filter filter) {
+		this.filter = filter;
+		update();
+	}
+
+	@Override
+	public void toggleSortOrder(int column) {
+		SortOrder order = SortOrder.ASCENDING;
+		if(!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column) {
+			switch(sortKeys.get(0).getSortOrder()) {
+				case ASCENDING:
+					order = SortOrder.DESCENDING;
+					break;
+				case DESCENDING:
+					order = SortOrder.UNSORTED;
+					break;
+				default:
+					break;
+			}
+		}
+		setSortKeys(order == SortOrder.UNSORTED ? null : Collections.singletonList(new SortKey(column, order)));
+	}
+
+	@Override
+	public void setSortKeys(List<? extends SortKey> keys) {
+		List<SortKey> sortKeys = keys == null || keys.isEmpty() ? Collections.<SortKey>emptyList() : Collections.singletonList(keys.get(0));
+		if(!sortKeys.equals(this.sortKeys)) {
+			this.sortKeys = sortKeys;
+			fireSortOrderChanged();
+			update();
+		}
+	}
+
+	@Override
+	public List<? extends SortKey> getSortKeys() {
+		return sortKeys;
+	}
+
+	/** Computes the view order off the EDT and installs it on the EDT */
+	private void update() {
+		int update = ++updates;
+		ColumnIndex index = model.getIndex();
+		if(index == null) {
+			return;
+		}
+		SortKey key = sortKeys.isEmpty() ? null : sortKeys.get(0);
+		Filter filter = this.filter;
+		Main.getScheduler().submit(() -> order(index, key, filter)).thenAcceptAsync(order -> {
+			if(update == updates && index == model.getIndex()) {
+				int[] previous = viewToModel;
+				viewToModel = order;
+				modelToView = null;
+				fireRowSorterChanged(previous);
+			}
+		}, LoadScheduler.EDT).whenComplete((v, e) -> {
+			if(e != null) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * @param index  the index of the data
+	 * @param key  the sorted column, or <code>null</code>
+	 * @param filter  the filter
+	 * @return the model row of each view row, or <code>null</code> for all rows in model order
+	 */
+	static int[] order(ColumnIndex index, SortKey key, Filter filter) {
+		int[] rows = filter.isEmpty() ? null : filter.apply(index);
+		if(key == null) {
+			return rows;
+		}
+		int[] permutation = index.sortPermutation(key.getColumn());
+		boolean descending = key.getSortOrder() == SortOrder.DESCENDING;
+		int n = permutation.length;
+		int[] order = new int[rows == null ? n : rows.length];
+		if(rows == null) {
+			for(int i = 0; i < n; i++) {
+				order[i] = permutation[descending ? n - 1 - i : i];
+			}
+			return order;
+		}
+		long[] included = new long[(n + 63) >>> 6];
+		for(int row : rows) {
+			included[row >>> 6] |= 1L << row;
+		}
+		int count = 0;
+		for(int i = 0; i < n; i++) {
+			int row = permutation[descending ? n - 1 - i : i];
+			if((included[row >>> 6] & (1L << row)) != 0) {
+				order[count++] = row;
+			}
+		}
+		return order;
+	}
+
+	@Override
+	public int convertRowIndexToModel(int index) {
+		if(index < 0 || index >= getViewRowCount()) {
+			throw new IndexOutOfBoundsException("Invalid view row " + index);
+		}
+		return viewToModel == null ? index : viewToModel[index];
+	}
+
+	@Override
+	public int convertRowIndexToView(int index) {
+		if(index < 0 || index >= getModelRowCount()) {
+			throw new IndexOutOfBoundsException("Invalid model row " + index);
+		}
+		if(viewToModel == null) {
+			return index;
+		}
+		if(modelToView == null) {
+			modelToView = new int[getModelRowCount()];
+			Arrays.fill(modelToView, -1);
+			for(int i = 0; i < viewToModel.length; i++) {
+				modelToView[viewToModel[i]] = i;
+			}
+		}
+		return modelToView[index];
+	}
+
+	@Override
+	public int getViewRowCount() {
+		return viewToModel == null ? getModelRowCount() : viewToModel.length;
+	}
+
+	@Override
+	public int getModelRowCount() {
+		return model.getRowCount();
+	}
+
+	@Override
+	public void modelStructureChanged() {
+		// A new store: its indexes are new and the old filter's ids mean nothing
+		updates++;
+		sortKeys = Collections.emptyList();
+		filter = Filter.NONE;
+		viewToModel = null;
+		modelToView = null;
+		fireSortOrderChanged();
+	}
+
+	@Override
+	public void allRowsChanged() {
+		update();
+	}
+
+	@Override
+	public void rowsInserted(int firstRow, int endRow) {
+		update();
+	}
+
+	@Override
+	public void rowsDeleted(int firstRow, int endRow) {
+		update();
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow) {
+		update();
+	}
+
+	@Override
+	public void rowsUpdated(int firstRow, int endRow, int column) {
+		update();
+	}
+
+}
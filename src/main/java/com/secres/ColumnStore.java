@@ -0,0 +1,859 @@
+package com.secres;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typed, column-oriented store for one CSV dataset.
+ * <P>
+ * Each column is parsed <i>once</i> at load time into primitive buffers:
+ * <ul>
+ * <li>Date columns (<code>dt</code>) are packed into an <code>int</code> as <code>year * 12 + (month - 1)</code></li>
+ * <li>Numeric columns (temperatures, uncertainties) are stored as <code>double</code></li>
+ * <li>Text columns (<code>Country</code>, <code>City</code> etc.) are dictionary-encoded into <code>int</code> ids</li>
+ * </ul>
+ * Missing cells are tracked in a null bitmap per column instead of empty Strings.
+ * <P>
+ * A loaded store is compressed with {@link #compress()}: dates and ids are stored as runs or bit-packed by
+ * {@link IntColumn}, numbers in fixed point by {@link DoubleColumn}, and columns without missing cells drop their null
+ * bitmap. Every value reads back exactly as parsed. Turn this off with <code>-Dsecres.compress=false</code>.
+ * <P>
+ * The buffers wrap heap arrays, or are direct buffers outside the heap when {@link ColumnMemory} says so.
+ * <P>
+ * The store is immutable once built, so it can be read from any thread. Use {@link Builder} to create one.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public class ColumnStore {
+
+	/** Column type of a packed year-month date */
+	static final byte DATE = 0;
+	/** Column type of a <code>double</code> value */
+	static final byte NUMERIC = 1;
+	/** Column type of a dictionary-encoded String */
+	static final byte CATEGORY = 2;
+
+	/** Whether loaded stores are compressed */
+	static final boolean COMPRESS = Boolean.parseBoolean(System.getProperty("secres.compress", "true"));
+
+	/** Table header */
+	private final String[] header;
+	/** Column types, one of {@link #DATE}, {@link #NUMERIC} or {@link #CATEGORY} */
+	private final byte[] types;
+	/** Number of rows */
+	private final int rowCount;
+	/** Packed dates or dictionary ids, <code>null</code> for numeric columns */
+	private final IntColumn[] ints;
+	/** Numeric values, <code>null</code> for date and text columns */
+	private final DoubleColumn[] doubles;
+	/** Null bitmaps - a set bit means the cell is missing, <code>null</code> if no cell is */
+	private final LongBuffer[] nulls;
+	/** Dictionaries of the text columns, indexed by id */
+	private final String[][] dictionaries;
+
+	private ColumnStore(String[] header, byte[] types, int rowCount, IntColumn[] ints, DoubleColumn[] doubles, LongBuffer[] nulls, String[][] dictionaries) {
+		this.header = header;
+		this.types = types;
+		this.rowCount = rowCount;
+		this.ints = ints;
+		this.doubles = doubles;
+		this.nulls = nulls;
+		this.dictionaries = dictionaries;
+	}
+
+	/**
+	 * Infers the column types of a Berkeley Earth dataset from its header.
+	 * @param header  the CSV header
+	 * @return the column types
+	 */
+	static byte[] inferTypes(String[] header) {
+		byte[] types = new byte[header.length];
+		for(int i = 0; i < header.length; i++) {
+			String name = header[i].trim();
+			if(name.equals("dt")) {
+				types[i] = DATE;
+			}
+			else if(name.equals("Country") || name.equals("City") || name.equals("State") || name.equals("Latitude") || name.equals("Longitude")) {
+				types[i] = CATEGORY;
+			}
+			else {
+				types[i] = NUMERIC;
+			}
+		}
+		return types;
+	}
+
+	/**
+	 * Infers column types from the header and a sample of the first rows.
+	 * <P>
+	 * Besides the known Berkeley Earth columns, a column is a date if every sampled cell is formatted as <code>yyyy-MM-dd</code>,
+	 * numeric if every sampled cell is a number, and text otherwise. Empty cells match any type.
+	 * @param header  the CSV header
+	 * @param sample  the first rows of the file
+	 * @return the column types
+	 */
+	static byte[] inferTypes(String[] header, List<String[]> sample) {
+		byte[] types = inferTypes(header);
+		for(int i = 0; i < header.length; i++) {
+			if(types[i] != NUMERIC) {
+				continue;
+			}
+			boolean dates = true;
+			boolean numbers = true;
+			boolean any = false;
+			for(String[] line : sample) {
+				String cell = i < line.length ? line[i].trim() : "";
+				if(cell.isEmpty()) {
+					continue;
+				}
+				any = true;
+				dates &= cell.matches("\\d{1,4}-\\d{2}-\\d{2}");
+				if(numbers) {
+					try {
+						Double.parseDouble(cell);
+					} catch(NumberFormatException e) {
+						numbers = false;
+					}
+				}
+			}
+			if(any && dates) {
+				types[i] = DATE;
+			}
+			else if(!numbers) {
+				types[i] = CATEGORY;
+			}
+		}
+		return types;
+	}
+
+	/**
+	 * Packs a year and month into a single <code>int</code>
+	 * @param year  the year
+	 * @param month  the month (1 - 12)
+	 * @return the packed date
+	 */
+	static int packDate(int year, int month) {
+		return year * 12 + (month - 1);
+	}
+
+	/**
+	 * @param packed  a packed date
+	 * @return the year of a packed date
+	 */
+	static int yearOf(int packed) {
+		return Math.floorDiv(packed, 12);
+	}
+
+	/**
+	 * @param packed  a packed date
+	 * @return the month (1 - 12) of a packed date
+	 */
+	static int monthOf(int packed) {
+		return Math.floorMod(packed, 12) + 1;
+	}
+
+	/**
+	 * @param year  the year
+	 * @param month  the month (1 - 12)
+	 * @return the first millisecond of the month in the default time zone, as used by JFreeChart's <code>Month</code> and <code>Year</code>
+	 */
+	static long toMillis(int year, int month) {
+		return LocalDate.of(year, month, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	/** @return the number of rows */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/** @return the number of columns */
+	public int getColumnCount() {
+		return header.length;
+	}
+
+	/** @return the table header */
+	public String[] getHeader() {
+		return header.clone();
+	}
+
+	/**
+	 * @param column  the column index
+	 * @return the column name
+	 */
+	public String getColumnName(int column) {
+		return header[column];
+	}
+
+	/**
+	 * @param column  the column index
+	 * @return the column type
+	 */
+	byte getType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * Returns the index of the first column with the given name.
+	 * @param name  the column name
+	 * @return the column index or -1 if not found
+	 */
+	public int indexOf(String name) {
+		for(int i = 0; i < header.length; i++) {
+			if(header[i].trim().equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param row  the row index
+	 * @param column  the column index
+	 * @return <code>true</code> if the cell is missing
+	 */
+	public boolean isNull(int row, int column) {
+		LongBuffer bitmap = nulls[column];
+		return bitmap != null && (bitmap.get(row >>> 6) & (1L << row)) != 0;
+	}
+
+	/**
+	 * @param row  the row index
+	 * @param column  a numeric column
+	 * @return the value, or <code>NaN</code> if missing
+	 */
+	public double getDouble(int row, int column) {
+		return doubles[column].get(row);
+	}
+
+	/**
+	 * @param row  the row index
+	 * @param column  a date or text column
+	 * @return the packed date or dictionary id
+	 */
+	public int getInt(int row, int column) {
+		return ints[column].get(row);
+	}
+
+	/**
+	 * Decodes the values of consecutive rows, for loops over many rows.
+	 * @param column  a numeric column
+	 * @param from  the first row
+	 * @param length  the number of rows
+	 * @param destination  receives the values from index 0, <code>NaN</code> if missing
+	 */
+	public void getDoubles(int column, int from, int length, double[] destination) {
+		doubles[column].copyTo(from, destination, 0, length);
+	}
+
+	/**
+	 * Decodes the values of consecutive rows, for loops over many rows.
+	 * @param column  a date or text column
+	 * @param from  the first row
+	 * @param length  the number of rows
+	 * @param destination  receives the packed dates or dictionary ids from index 0
+	 */
+	public void getInts(int column, int from, int length, int[] destination) {
+		ints[column].copyTo(from, destination, 0, length);
+	}
+
+	/**
+	 * @param row  the row index
+	 * @param column  a date column
+	 * @return the year
+	 */
+	public int getYear(int row, int column) {
+		return yearOf(ints[column].get(row));
+	}
+
+	/**
+	 * @param row  the row index
+	 * @param column  a date column
+	 * @return the month (1 - 12)
+	 */
+	public int getMonth(int row, int column) {
+		return monthOf(ints[column].get(row));
+	}
+
+	/**
+	 * @param column  a text column
+	 * @return the number of distinct values
+	 */
+	public int getDictionarySize(int column) {
+		return dictionaries[column].length;
+	}
+
+	/**
+	 * @param column  a text column
+	 * @param id  the dictionary id
+	 * @return the String for the id
+	 */
+	public String getDictionaryValue(int column, int id) {
+		return dictionaries[column][id];
+	}
+
+	/**
+	 * @param column  a text column
+	 * @param value  the String to look up
+	 * @return the dictionary id, or -1 if the value does not occur
+	 */
+	public int getDictionaryId(int column, String value) {
+		String[] dictionary = dictionaries[column];
+		for(int i = 0; i < dictionary.length; i++) {
+			if(dictionary[i].equals(value)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Formats a cell the way it appears in the CSV.
+	 * @param row  the row index
+	 * @param column  the column index
+	 * @return the cell as a String, empty if missing
+	 */
+	public String getValueAsString(int row, int column) {
+		if(isNull(row, column)) {
+			return "";
+		}
+		switch(types[column]) {
+			case DATE:
+				int packed = ints[column].get(row);
+				int month = monthOf(packed);
+				return yearOf(packed) + (month < 10 ? "-0" : "-") + month + "-01";
+			case CATEGORY:
+				return dictionaries[column][ints[column].get(row)];
+			default:
+				return Double.toString(doubles[column].get(row));
+		}
+	}
+
+	/**
+	 * @return the number of bytes {@link #writeTo(ByteBuffer)} needs
+	 */
+	long encodedSize() {
+		long size = 16;
+		for(int i = 0; i < header.length; i++) {
+			size += 5 + utf8(header[i]).length;
+			size += 1 + (nulls[i] != null ? 8L * nulls[i].limit() : 0);
+			size += doubles[i] != null ? doubles[i].encodedSize() : ints[i].encodedSize();
+			if(dictionaries[i] != null) {
+				size += 4;
+				for(String value : dictionaries[i]) {
+					size += 4 + utf8(value).length;
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the columns in binary form and in their current encoding, see {@link SnapshotCache}.
+	 * @param out  the destination, with at least {@link #encodedSize()} bytes remaining
+	 */
+	void writeTo(ByteBuffer out) {
+		out.putInt(header.length);
+		out.putInt(rowCount);
+		for(int i = 0; i < header.length; i++) {
+			putString(out, header[i]);
+			out.put(types[i]);
+		}
+		out.putLong(columnBytes());
+		for(int i = 0; i < header.length; i++) {
+			if(nulls[i] != null) {
+				out.put((byte) 1);
+				out.asLongBuffer().put(nulls[i].duplicate());
+				out.position(out.position() + 8 * nulls[i].limit());
+			}
+			else {
+				out.put((byte) 0);
+			}
+			if(doubles[i] != null) {
+				doubles[i].writeTo(out);
+			}
+			else {
+				ints[i].writeTo(out);
+			}
+			if(dictionaries[i] != null) {
+				out.putInt(dictionaries[i].length);
+				for(String value : dictionaries[i]) {
+					putString(out, value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads columns written by {@link #writeTo(ByteBuffer)} into the memory selected by {@link ColumnMemory}.
+	 * @param in  the source, positioned at the columns
+	 * @return the store
+	 * @throws ColumnMemory.BudgetExceededException  if the columns do not fit in the memory budget
+	 */
+	static ColumnStore readFrom(ByteBuffer in) {
+		int columns = in.getInt();
+		int rowCount = in.getInt();
+		String[] header = new String[columns];
+		byte[] types = new byte[columns];
+		for(int i = 0; i < columns; i++) {
+			header[i] = getString(in);
+			types[i] = in.get();
+		}
+		// Fails before anything is allocated
+		ColumnMemory.check(in.getLong(), false);
+		IntColumn[] ints = new IntColumn[columns];
+		DoubleColumn[] doubles = new DoubleColumn[columns];
+		LongBuffer[] nulls = new LongBuffer[columns];
+		String[][] dictionaries = new String[columns][];
+		for(int i = 0; i < columns; i++) {
+			if(in.get() != 0) {
+				int words = (rowCount + 63) >>> 6;
+				nulls[i] = copy(in.asLongBuffer(), words, ColumnMemory.OFF_HEAP);
+				in.position(in.position() + 8 * words);
+			}
+			if(types[i] == NUMERIC) {
+				doubles[i] = DoubleColumn.readFrom(in, rowCount, ColumnMemory.OFF_HEAP);
+			}
+			else {
+				ints[i] = IntColumn.readFrom(in, rowCount, ColumnMemory.OFF_HEAP);
+			}
+			if(types[i] == CATEGORY) {
+				dictionaries[i] = new String[in.getInt()];
+				for(int id = 0; id < dictionaries[i].length; id++) {
+					dictionaries[i][id] = getString(in);
+				}
+			}
+		}
+		return new ColumnStore(header, types, rowCount, ints, doubles, nulls, dictionaries);
+	}
+
+	/**
+	 * Compresses the columns, see {@link IntColumn} and {@link DoubleColumn}.
+	 * @return a copy of this store with every column in its smallest encoding, on the heap
+	 */
+	ColumnStore compress() {
+		IntColumn[] ints = new IntColumn[header.length];
+		DoubleColumn[] doubles = new DoubleColumn[header.length];
+		LongBuffer[] nulls = new LongBuffer[header.length];
+		for(int i = 0; i < header.length; i++) {
+			nulls[i] = hasNulls(i) ? this.nulls[i] : null;
+			if(this.doubles[i] != null) {
+				doubles[i] = this.doubles[i].encode(rowCount);
+			}
+			if(this.ints[i] != null) {
+				ints[i] = this.ints[i].encode(rowCount, nulls[i]);
+			}
+		}
+		return new ColumnStore(header, types, rowCount, ints, doubles, nulls, dictionaries);
+	}
+
+	/** @return whether any cell of a column is missing */
+	private boolean hasNulls(int column) {
+		LongBuffer bitmap = nulls[column];
+		if(bitmap != null) {
+			for(int word = 0; word < bitmap.limit(); word++) {
+				if(bitmap.get(word) != 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the columns outside the heap.
+	 * @return a copy of this store with its columns in direct buffers, see {@link ColumnMemory}
+	 */
+	ColumnStore offHeap() {
+		IntColumn[] ints = new IntColumn[header.length];
+		DoubleColumn[] doubles = new DoubleColumn[header.length];
+		LongBuffer[] nulls = new LongBuffer[header.length];
+		for(int i = 0; i < header.length; i++) {
+			if(this.nulls[i] != null) {
+				nulls[i] = copy(this.nulls[i], this.nulls[i].limit(), true);
+			}
+			if(this.doubles[i] != null) {
+				doubles[i] = this.doubles[i].offHeap();
+			}
+			if(this.ints[i] != null) {
+				ints[i] = this.ints[i].offHeap();
+			}
+		}
+		return new ColumnStore(header, types, rowCount, ints, doubles, nulls, dictionaries);
+	}
+
+	/** @return the bytes of the columns and null bitmaps in their current encoding */
+	long columnBytes() {
+		long bytes = 0;
+		for(int i = 0; i < header.length; i++) {
+			bytes += nulls[i] != null ? 8L * nulls[i].limit() : 0;
+			bytes += doubles[i] != null ? doubles[i].bytes() : ints[i].bytes();
+		}
+		return bytes;
+	}
+
+	/** @return a new buffer with the first <code>length</code> values of <code>source</code> */
+	private static LongBuffer copy(LongBuffer source, int length, boolean direct) {
+		LongBuffer copy = ColumnMemory.allocateLongs(length, direct);
+		LongBuffer values = source.duplicate();
+		values.limit(length);
+		copy.put(values).flip();
+		return copy;
+	}
+
+	/** @return the arrays as plain heap columns, <code>null</code> columns stay <code>null</code> */
+	private static IntColumn[] wrap(int[][] arrays) {
+		IntColumn[] columns = new IntColumn[arrays.length];
+		for(int i = 0; i < arrays.length; i++) {
+			columns[i] = arrays[i] == null ? null : IntColumn.of(IntBuffer.wrap(arrays[i]));
+		}
+		return columns;
+	}
+
+	private static DoubleColumn[] wrap(double[][] arrays) {
+		DoubleColumn[] columns = new DoubleColumn[arrays.length];
+		for(int i = 0; i < arrays.length; i++) {
+			columns[i] = arrays[i] == null ? null : DoubleColumn.of(DoubleBuffer.wrap(arrays[i]));
+		}
+		return columns;
+	}
+
+	private static LongBuffer[] wrap(long[][] arrays) {
+		LongBuffer[] buffers = new LongBuffer[arrays.length];
+		for(int i = 0; i < arrays.length; i++) {
+			buffers[i] = LongBuffer.wrap(arrays[i]);
+		}
+		return buffers;
+	}
+
+	static byte[] utf8(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static void putString(ByteBuffer out, String value) {
+		byte[] bytes = utf8(value);
+		out.putInt(bytes.length);
+		out.put(bytes);
+	}
+
+	static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Concatenates stores with the same columns, in order.
+	 * <P>
+	 * Dictionary ids are remapped so that they are numbered in order of first appearance, as if the rows had been read by one {@link Builder}.
+	 * @param parts  the stores to join
+	 * @return a store with the rows of every part
+	 */
+	static ColumnStore concat(ColumnStore... parts) {
+		ColumnStore first = parts[0];
+		int columns = first.header.length;
+		int rowCount = 0;
+		for(ColumnStore part : parts) {
+			rowCount += part.rowCount;
+		}
+		int[][] ints = new int[columns][];
+		double[][] doubles = new double[columns][];
+		long[][] nulls = new long[columns][];
+		String[][] dictionaries = new String[columns][];
+		for(int i = 0; i < columns; i++) {
+			nulls[i] = new long[(rowCount + 63) >>> 6];
+			if(first.doubles[i] != null) {
+				doubles[i] = new double[rowCount];
+			}
+			if(first.ints[i] != null) {
+				ints[i] = new int[rowCount];
+			}
+		}
+		for(int i = 0; i < columns; i++) {
+			Map<String, Integer> lookup = first.dictionaries[i] == null ? null : new HashMap<>();
+			int offset = 0;
+			for(ColumnStore part : parts) {
+				if(doubles[i] != null) {
+					part.doubles[i].copyTo(0, doubles[i], offset, part.rowCount);
+				}
+				if(lookup != null) {
+					// Remap the ids of this part to the merged dictionary
+					String[] dictionary = part.dictionaries[i];
+					int[] remap = new int[dictionary.length];
+					for(int id = 0; id < dictionary.length; id++) {
+						Integer merged = lookup.get(dictionary[id]);
+						if(merged == null) {
+							merged = lookup.size();
+							lookup.put(dictionary[id], merged);
+						}
+						remap[id] = merged;
+					}
+					IntColumn source = part.ints[i];
+					for(int row = 0; row < part.rowCount; row++) {
+						ints[i][offset + row] = part.isNull(row, i) ? 0 : remap[source.get(row)];
+					}
+				}
+				else if(ints[i] != null) {
+					part.ints[i].copyTo(0, ints[i], offset, part.rowCount);
+				}
+				LongBuffer source = part.nulls[i];
+				for(int word = 0; source != null && word < source.limit(); word++) {
+					long bits = source.get(word);
+					while(bits != 0) {
+						int row = offset + (word << 6) + Long.numberOfTrailingZeros(bits);
+						if(row - offset < part.rowCount) {
+							nulls[i][row >>> 6] |= 1L << row;
+						}
+						bits &= bits - 1;
+					}
+				}
+				offset += part.rowCount;
+			}
+			if(lookup != null) {
+				String[] dictionary = new String[lookup.size()];
+				for(Map.Entry<String, Integer> entry : lookup.entrySet()) {
+					dictionary[entry.getValue()] = entry.getKey();
+				}
+				dictionaries[i] = dictionary;
+			}
+		}
+		return new ColumnStore(first.header.clone(), first.types.clone(), rowCount, wrap(ints), wrap(doubles), wrap(nulls), dictionaries);
+	}
+
+	/**
+	 * Incrementally builds a {@link ColumnStore}, one row at a time.
+	 * <P>
+	 * A row is started with {@link #newRow()} and every cell defaults to missing until it is set.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static class Builder {
+
+		/** Date and numeric cells that could not be parsed, across all builders */
+		private static final Metrics.Counter INVALID_CELLS = Metrics.counter("parse.invalid");
+
+		private final String[] header;
+		private final byte[] types;
+		private int rowCount;
+		private int capacity;
+		private int[][] ints;
+		private double[][] doubles;
+		private long[][] nulls;
+		/** Dictionary lookup per text column */
+		private final Map<String, Integer>[] lookups;
+		/** Dictionary values per text column, indexed by id */
+		private final String[][] values;
+		/** Date and numeric cells of this builder that could not be parsed */
+		private int invalidCells;
+
+		/**
+		 * Creates a builder with column types inferred from the header.
+		 * @param header  the CSV header
+		 */
+		Builder(String[] header) {
+			this(header, inferTypes(header));
+		}
+
+		/**
+		 * @param header  the CSV header
+		 * @param types  the column types
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Builder(String[] header, byte[] types) {
+			this.header = header;
+			this.types = types;
+			capacity = 1024;
+			ints = new int[header.length][];
+			doubles = new double[header.length][];
+			nulls = new long[header.length][];
+			lookups = new Map[header.length];
+			values = new String[header.length][];
+			for(int i = 0; i < header.length; i++) {
+				if(types[i] == NUMERIC) {
+					doubles[i] = new double[capacity];
+				}
+				else {
+					ints[i] = new int[capacity];
+				}
+				if(types[i] == CATEGORY) {
+					lookups[i] = new HashMap<>();
+					values[i] = new String[16];
+				}
+				nulls[i] = new long[capacity >>> 6];
+			}
+		}
+
+		/**
+		 * Starts a new row with all cells missing.
+		 * @return the index of the new row
+		 */
+		int newRow() {
+			if(rowCount == capacity) {
+				grow();
+			}
+			int row = rowCount++;
+			for(int i = 0; i < header.length; i++) {
+				nulls[i][row >>> 6] |= 1L << row;
+				if(doubles[i] != null) {
+					doubles[i][row] = Double.NaN;
+				}
+			}
+			return row;
+		}
+
+		private void grow() {
+			capacity = capacity * 2;
+			for(int i = 0; i < header.length; i++) {
+				if(doubles[i] != null) {
+					doubles[i] = Arrays.copyOf(doubles[i], capacity);
+				}
+				if(ints[i] != null) {
+					ints[i] = Arrays.copyOf(ints[i], capacity);
+				}
+				nulls[i] = Arrays.copyOf(nulls[i], capacity >>> 6);
+			}
+		}
+
+		/**
+		 * @param row  the row index
+		 * @param column  a numeric column
+		 * @param value  the value
+		 */
+		void setDouble(int row, int column, double value) {
+			doubles[column][row] = value;
+			nulls[column][row >>> 6] &= ~(1L << row);
+		}
+
+		/**
+		 * @param row  the row index
+		 * @param column  a date or text column
+		 * @param value  the packed date or dictionary id
+		 */
+		void setInt(int row, int column, int value) {
+			ints[column][row] = value;
+			nulls[column][row >>> 6] &= ~(1L << row);
+		}
+
+		/**
+		 * Leaves a cell of a date or numeric column that cannot be parsed missing. Column types are inferred from the
+		 * first rows, so a later cell may not fit; the first one of a builder is reported and all are counted in
+		 * {@link Metrics}.
+		 * @param column  a date or numeric column
+		 * @param cell  the text of the cell
+		 */
+		void skipInvalid(int column, String cell) {
+			if(invalidCells++ == 0) {
+				System.err.println("Reading \"" + cell + "\" in " + (types[column] == DATE ? "date" : "numeric") + " column " + header[column] + " as missing, see the parse.invalid counter for more");
+			}
+			INVALID_CELLS.add(1);
+		}
+
+		/**
+		 * Returns the dictionary id of a String, adding it if it is new.
+		 * @param column  a text column
+		 * @param value  the String
+		 * @return the dictionary id
+		 */
+		int intern(int column, String value) {
+			Integer id = lookups[column].get(value);
+			if(id == null) {
+				id = lookups[column].size();
+				if(id == values[column].length) {
+					values[column] = Arrays.copyOf(values[column], id * 2);
+				}
+				values[column][id] = value;
+				lookups[column].put(value, id);
+			}
+			return id;
+		}
+
+		/**
+		 * Parses one CSV line of Strings into a new row.
+		 * @param line  the fields of the line
+		 */
+		void addRow(String[] line) {
+			int row = newRow();
+			for(int i = 0; i < header.length && i < line.length; i++) {
+				String cell = line[i].trim();
+				if(cell.isEmpty()) {
+					continue;
+				}
+				switch(types[i]) {
+					case DATE:
+						try {
+							setInt(row, i, parseDate(cell));
+						} catch(NumberFormatException e) {
+							skipInvalid(i, cell);
+						}
+						break;
+					case CATEGORY:
+						setInt(row, i, intern(i, cell));
+						break;
+					default:
+						try {
+							setDouble(row, i, Double.parseDouble(cell));
+						} catch(NumberFormatException e) {
+							skipInvalid(i, cell);
+						}
+						break;
+				}
+			}
+		}
+
+		/**
+		 * Parses a <code>yyyy-MM-dd</code> date.
+		 * @param cell  the date
+		 * @return the packed year and month
+		 * @throws NumberFormatException  if the date is malformed
+		 */
+		private static int parseDate(String cell) {
+			int dash = cell.indexOf('-');
+			if(dash < 1 || dash + 3 > cell.length() || (dash + 3 < cell.length() && cell.charAt(dash + 3) != '-')) {
+				throw new NumberFormatException("Invalid date: " + cell);
+			}
+			int month = Integer.parseInt(cell.substring(dash + 1, dash + 3));
+			if(month < 1 || month > 12) {
+				throw new NumberFormatException("Invalid date: " + cell);
+			}
+			return packDate(Integer.parseInt(cell.substring(0, dash)), month);
+		}
+
+		/** @return the number of rows added so far */
+		int getRowCount() {
+			return rowCount;
+		}
+
+		/** @return the finished {@link ColumnStore} */
+		ColumnStore build() {
+			int[][] ints = new int[header.length][];
+			double[][] doubles = new double[header.length][];
+			long[][] nulls = new long[header.length][];
+			String[][] dictionaries = new String[header.length][];
+			for(int i = 0; i < header.length; i++) {
+				if(this.doubles[i] != null) {
+					doubles[i] = Arrays.copyOf(this.doubles[i], rowCount);
+				}
+				if(this.ints[i] != null) {
+					ints[i] = Arrays.copyOf(this.ints[i], rowCount);
+				}
+				nulls[i] = Arrays.copyOf(this.nulls[i], (rowCount + 63) >>> 6);
+				if(lookups[i] != null) {
+					dictionaries[i] = Arrays.copyOf(values[i], lookups[i].size());
+				}
+			}
+			return new ColumnStore(header.clone(), types.clone(), rowCount, wrap(ints), wrap(doubles), wrap(nulls), dictionaries);
+		}
+
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.secres;
+
+import java.util.Arrays;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A read-only <code>TableModel</code> that formats cells on demand from a {@link ColumnStore}.
+ * <P>
+ * The model starts empty and shows the data once {@link #setStore(ColumnStore)} is called on the EDT.
+ * <P>
+ * No row is materialized: a <code>JTable</code> only asks for the cells it paints, so the model costs a few screens of
+ * Strings however many rows the store has. Formatted cells are kept in a small direct-mapped cache, so repaints
+ * while scrolling, selecting or hovering do not format and allocate the same cells again.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public class ColumnTableModel extends AbstractTableModel {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Cached cells, a power of two well above the cells of one screen */
+	private static final int CACHE_BITS = 13;
+	private static final int CACHE_SIZE = 1 << CACHE_BITS;
+	/** Hit rate of the cell cache of every table */
+	private static final Metrics.Ratio CACHE_METRIC = Metrics.ratio("cache.cells");
+
+	/** Backing store */
+	private ColumnStore store;
+	/** Sort and filter indexes of the store */
+	private ColumnIndex index;
+	/** Table header */
+	private String[] header = new String[0];
+	/** Cell index (row * columns + column) of each cache slot, -1 if empty */
+	private final long[] cachedCells = new long[CACHE_SIZE];
+	/** Formatted value of each cache slot */
+	private final String[] cachedValues = new String[CACHE_SIZE];
+
+	ColumnTableModel() {
+		Arrays.fill(cachedCells, -1);
+	}
+
+	/**
+	 * Replaces the backing store. Must be called on the EDT.
+	 * @param store  the new store
+	 */
+	void setStore(ColumnStore store) {
+		this.store = store;
+		this.index = new ColumnIndex(store);
+		this.header = store.getHeader();
+		Arrays.fill(cachedCells, -1);
+		Arrays.fill(cachedValues, null);
+		fireTableStructureChanged();
+	}
+
+	/** @return the backing {@link ColumnStore}, or <code>null</code> before the read has finished */
+	public ColumnStore getStore() {
+		return store;
+	}
+
+	/** @return the indexes of the backing store, or <code>null</code> before the read has finished */
+	ColumnIndex getIndex() {
+		return index;
+	}
+
+	@Override
+	public int getRowCount() {
+		return store == null ? 0 : store.getRowCount();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return header.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return header[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int columnIndex) {
+		return String.class;
+	}
+
+	@Override
+	public String getValueAt(int rowIndex, int columnIndex) {
+		long cell = (long) rowIndex * header.length + columnIndex;
+		// Neighbouring cells land in different slots, the multiplier spreads rows of different screens
+		int slot = (int) ((cell * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+		if(cachedCells[slot] == cell) {
+			CACHE_METRIC.hit();
+			return cachedValues[slot];
+		}
+		CACHE_METRIC.miss();
+		String value = store.getValueAsString(rowIndex, columnIndex);
+		cachedCells[slot] = cell;
+		cachedValues[slot] = value;
+		return value;
+	}
+
+}
@@ -0,0 +1,514 @@
+package com.secres;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dense cube of temperature aggregates of the country dataset, indexed by country id, year and month.
+ * <P>
+ * Every cell keeps the count, sum, minimum and maximum of the average temperature and the sum of its uncertainty.
+ * The cube is built in a <i>single</i> pass over the rows, and the yearly and all-time rollups are stored next to the
+ * monthly cells, so every lookup takes constant time. All country charts query this object instead of scanning the
+ * {@link ColumnStore} themselves. Prefix sums over the years answer the average of any range of years in constant time as well.
+ * <P>
+ * The cube is persisted by {@link SnapshotCache} alongside the dataset snapshot, see {@link #writeTo(ByteBuffer)}.
+ * <P>
+ * Cubes of other datasets, e.g. the country and city rollups of the out-of-core city dataset, are filled by a
+ * {@link Builder}. A cube of many regions can leave out the monthly cells, which keeps it a twelfth of the size.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class CountryAggregates {
+
+	/** The aggregate of no measurements */
+	static final Aggregate EMPTY = new Aggregate(0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0);
+
+	/** Country names, indexed by the dictionary id of the country column */
+	private final String[] countries;
+	/** First year of the cube */
+	private final int firstYear;
+	/** Number of years of the cube */
+	private final int years;
+	/** Monthly cells, indexed by <code>(country * years + year - firstYear) * 12 + month - 1</code>, <code>null</code> in a yearly cube */
+	private final Cells months;
+	/** Yearly rollups, indexed by <code>country * years + year - firstYear</code> */
+	private final Cells yearly;
+	/** All-time rollups, indexed by country */
+	private final Cells totals;
+	/** First and last year with a measurement per country */
+	private final int[] firstYears, lastYears;
+	/** Running totals of the yearly counts, indexed by <code>country * (years + 1) + year - firstYear</code> */
+	private final int[] countPrefix;
+	/** Running totals of the yearly sums */
+	private final double[] sumPrefix;
+	/** Running totals of the yearly uncertainty sums */
+	private final double[] uncertaintyPrefix;
+
+	private CountryAggregates(String[] countries, int firstYear, int years, Cells months, Cells yearly, Cells totals) {
+		this.countries = countries;
+		this.firstYear = firstYear;
+		this.years = years;
+		this.months = months;
+		this.yearly = yearly;
+		this.totals = totals;
+		firstYears = new int[countries.length];
+		lastYears = new int[countries.length];
+		countPrefix = new int[countries.length * (years + 1)];
+		sumPrefix = new double[countPrefix.length];
+		uncertaintyPrefix = new double[countPrefix.length];
+		for(int country = 0; country < countries.length; country++) {
+			firstYears[country] = Integer.MAX_VALUE;
+			lastYears[country] = Integer.MIN_VALUE;
+			for(int year = 0; year < years; year++) {
+				int cell = country * years + year;
+				if(yearly.counts[cell] > 0) {
+					firstYears[country] = Math.min(firstYears[country], firstYear + year);
+					lastYears[country] = firstYear + year;
+				}
+				int prefix = country * (years + 1) + year;
+				countPrefix[prefix + 1] = countPrefix[prefix] + yearly.counts[cell];
+				sumPrefix[prefix + 1] = sumPrefix[prefix] + yearly.sums[cell];
+				uncertaintyPrefix[prefix + 1] = uncertaintyPrefix[prefix] + yearly.uncertaintySums[cell];
+			}
+		}
+	}
+
+	/**
+	 * @param store  a dataset
+	 * @return whether the dataset has the columns of the country dataset
+	 */
+	static boolean supports(ColumnStore store) {
+		return store.indexOf("dt") >= 0 && store.indexOf("AverageTemperature") >= 0 && store.indexOf("AverageTemperatureUncertainty") >= 0 && store.indexOf("Country") >= 0;
+	}
+
+	/**
+	 * Aggregates the country dataset in one pass.
+	 * @param store  the country dataset
+	 * @param progress  receives the number of rows aggregated, may be <code>null</code>
+	 * @return the aggregates
+	 */
+	static CountryAggregates build(ColumnStore store, LoadProgress.Task progress) {
+		final int dateColumn = store.indexOf("dt");
+		final int temperatureColumn = store.indexOf("AverageTemperature");
+		final int uncertaintyColumn = store.indexOf("AverageTemperatureUncertainty");
+		final int countryColumn = store.indexOf("Country");
+		int numCountries = store.getDictionarySize(countryColumn);
+
+		String[] countries = new String[numCountries];
+		for(int i = 0; i < numCountries; i++) {
+			countries[i] = store.getDictionaryValue(countryColumn, i);
+		}
+		// The span of years only needs the date column
+		int firstYear = Integer.MAX_VALUE;
+		int lastYear = Integer.MIN_VALUE;
+		for(int row = 0; row < store.getRowCount(); row++) {
+			if(!store.isNull(row, dateColumn)) {
+				int year = store.getYear(row, dateColumn);
+				firstYear = Math.min(firstYear, year);
+				lastYear = Math.max(lastYear, year);
+			}
+		}
+		if(firstYear > lastYear) {
+			firstYear = lastYear = 0;
+		}
+
+		Builder builder = new Builder(countries, firstYear, lastYear, true);
+		// Columns are decoded a block at a time, see ColumnStore#compress()
+		final int block = 4096;
+		int[] dates = new int[block];
+		int[] countryIds = new int[block];
+		double[] temperatures = new double[block];
+		double[] uncertainties = new double[block];
+		for(int from = 0; from < store.getRowCount(); from += block) {
+			int length = Math.min(block, store.getRowCount() - from);
+			store.getInts(dateColumn, from, length, dates);
+			store.getInts(countryColumn, from, length, countryIds);
+			store.getDoubles(temperatureColumn, from, length, temperatures);
+			store.getDoubles(uncertaintyColumn, from, length, uncertainties);
+			for(int i = 0; i < length; i++) {
+				int row = from + i;
+				if(store.isNull(row, temperatureColumn) || store.isNull(row, countryColumn) || store.isNull(row, dateColumn)) {
+					continue;
+				}
+				double uncertainty = store.isNull(row, uncertaintyColumn) ? 0 : uncertainties[i];
+				builder.add(countryIds[i], ColumnStore.yearOf(dates[i]), ColumnStore.monthOf(dates[i]), temperatures[i], uncertainty);
+			}
+			if(progress != null) {
+				progress.add(length);
+			}
+		}
+		if(progress != null) {
+			progress.finish();
+		}
+		return builder.build();
+	}
+
+	/** @return the number of countries */
+	int getCountryCount() {
+		return countries.length;
+	}
+
+	/**
+	 * @param country  the country id
+	 * @return the country name
+	 */
+	String getCountry(int country) {
+		return countries[country];
+	}
+
+	/**
+	 * @param name  the country name
+	 * @return the country id, or -1 if the country does not occur
+	 */
+	int getCountryId(String name) {
+		for(int i = 0; i < countries.length; i++) {
+			if(countries[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param country  the country id
+	 * @return the first year with a measurement
+	 */
+	int getFirstYear(int country) {
+		return firstYears[country];
+	}
+
+	/**
+	 * @param country  the country id
+	 * @return the last year with a measurement
+	 */
+	int getLastYear(int country) {
+		return lastYears[country];
+	}
+
+	/**
+	 * @param country  the country id
+	 * @param year  the year
+	 * @param month  the month (1 - 12)
+	 * @return the aggregate of one month, {@link #EMPTY} in a yearly cube
+	 */
+	Aggregate get(int country, int year, int month) {
+		if(months == null || year < firstYear || year >= firstYear + years) {
+			return EMPTY;
+		}
+		return months.get((country * years + year - firstYear) * 12 + month - 1);
+	}
+
+	/**
+	 * @param country  the country id
+	 * @param year  the year
+	 * @return the aggregate of all months of a year
+	 */
+	Aggregate getYear(int country, int year) {
+		if(year < firstYear || year >= firstYear + years) {
+			return EMPTY;
+		}
+		return yearly.get(country * years + year - firstYear);
+	}
+
+	/**
+	 * Aggregates a range of years from the prefix sums. Count, sum and uncertainty take constant time;
+	 * minimum and maximum scan the yearly rollups of the range.
+	 * @param country  the country id
+	 * @param fromYear  the first year, inclusive
+	 * @param toYear  the last year, inclusive
+	 * @return the aggregate of all months of the years
+	 */
+	Aggregate getYears(int country, int fromYear, int toYear) {
+		int from = Math.max(fromYear - firstYear, 0);
+		int to = Math.min(toYear - firstYear + 1, years);
+		if(from >= to) {
+			return EMPTY;
+		}
+		if(to - from == 1) {
+			return yearly.get(country * years + from);
+		}
+		int base = country * (years + 1);
+		int count = countPrefix[base + to] - countPrefix[base + from];
+		if(count == 0) {
+			return EMPTY;
+		}
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for(int year = from; year < to; year++) {
+			min = Math.min(min, yearly.mins[country * years + year]);
+			max = Math.max(max, yearly.maxs[country * years + year]);
+		}
+		return new Aggregate(count, sumPrefix[base + to] - sumPrefix[base + from], min, max, uncertaintyPrefix[base + to] - uncertaintyPrefix[base + from]);
+	}
+
+	/** @return the first year of the cube */
+	int getFirstYear() {
+		return firstYear;
+	}
+
+	/** @return the last year of the cube */
+	int getLastYear() {
+		return firstYear + years - 1;
+	}
+
+	/**
+	 * @param country  the country id
+	 * @return the aggregate of all measurements of a country
+	 */
+	Aggregate getAll(int country) {
+		return totals.get(country);
+	}
+
+	/**
+	 * @return the number of bytes {@link #writeTo(ByteBuffer)} needs
+	 */
+	long encodedSize() {
+		long size = 12;
+		for(String country : countries) {
+			size += 4 + country.getBytes(StandardCharsets.UTF_8).length;
+		}
+		return size + 1 + (months != null ? months.encodedSize() : 0) + yearly.encodedSize() + totals.encodedSize();
+	}
+
+	/**
+	 * Writes the cube in binary form, see {@link SnapshotCache}.
+	 * @param out  the destination, with at least {@link #encodedSize()} bytes remaining
+	 */
+	void writeTo(ByteBuffer out) {
+		out.putInt(countries.length);
+		for(String country : countries) {
+			byte[] bytes = country.getBytes(StandardCharsets.UTF_8);
+			out.putInt(bytes.length);
+			out.put(bytes);
+		}
+		out.putInt(firstYear);
+		out.putInt(years);
+		out.put((byte) (months != null ? 1 : 0));
+		if(months != null) {
+			months.writeTo(out);
+		}
+		yearly.writeTo(out);
+		totals.writeTo(out);
+	}
+
+	/**
+	 * Reads a cube written by {@link #writeTo(ByteBuffer)}.
+	 * @param in  the source, positioned at the cube
+	 * @return the aggregates
+	 */
+	static CountryAggregates readFrom(ByteBuffer in) {
+		String[] countries = new String[in.getInt()];
+		for(int i = 0; i < countries.length; i++) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			countries[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		int firstYear = in.getInt();
+		int years = in.getInt();
+		Cells months = in.get() != 0 ? Cells.readFrom(in, countries.length * years * 12) : null;
+		Cells yearly = Cells.readFrom(in, countries.length * years);
+		Cells totals = Cells.readFrom(in, countries.length);
+		return new CountryAggregates(countries, firstYear, years, months, yearly, totals);
+	}
+
+	/**
+	 * Fills a cube one measurement at a time, for datasets that are not a single {@link ColumnStore}.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static final class Builder {
+
+		private final String[] regions;
+		private final int firstYear;
+		private final int years;
+		/** Monthly cells, <code>null</code> for a yearly cube */
+		private final Cells months;
+		/** Yearly cells of a yearly cube, rolled up from <code>months</code> otherwise */
+		private final Cells yearly;
+
+		/**
+		 * @param regions  the region names, indexed by region id
+		 * @param firstYear  the first year of the measurements
+		 * @param lastYear  the last year of the measurements
+		 * @param monthly  whether to keep the monthly cells
+		 */
+		Builder(String[] regions, int firstYear, int lastYear, boolean monthly) {
+			this.regions = regions;
+			this.firstYear = firstYear;
+			this.years = lastYear - firstYear + 1;
+			months = monthly ? new Cells(regions.length * years * 12) : null;
+			yearly = monthly ? null : new Cells(regions.length * years);
+		}
+
+		/**
+		 * Adds one measurement.
+		 * @param region  the region id
+		 * @param year  the year, within the years of the builder
+		 * @param month  the month (1 - 12)
+		 * @param value  the temperature
+		 * @param uncertainty  the uncertainty, 0 if missing
+		 */
+		void add(int region, int year, int month, double value, double uncertainty) {
+			if(months != null) {
+				months.add((region * years + year - firstYear) * 12 + month - 1, value, uncertainty);
+			}
+			else {
+				yearly.add(region * years + year - firstYear, value, uncertainty);
+			}
+		}
+
+		/** @return the cube with its rollups */
+		CountryAggregates build() {
+			Cells yearly = months != null ? months.rollup(12) : this.yearly;
+			return new CountryAggregates(regions, firstYear, years, months, yearly, yearly.rollup(years));
+		}
+
+		/**
+		 * Builds a monthly cube as if every region had one measurement per month: the mean of the measurements added
+		 * to the month, e.g. of all cities of a country. Counts and means then read like those of the country dataset.
+		 * @return the cube with its rollups
+		 */
+		CountryAggregates buildMonthlyMeans() {
+			months.toMeans();
+			return build();
+		}
+
+	}
+
+	/**
+	 * One level of the cube, as parallel arrays.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	private static final class Cells {
+
+		final int[] counts;
+		final double[] sums;
+		final double[] mins;
+		final double[] maxs;
+		final double[] uncertaintySums;
+
+		Cells(int size) {
+			counts = new int[size];
+			sums = new double[size];
+			mins = new double[size];
+			maxs = new double[size];
+			uncertaintySums = new double[size];
+			Arrays.fill(mins, Double.POSITIVE_INFINITY);
+			Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+		}
+
+		void add(int cell, double value, double uncertainty) {
+			counts[cell]++;
+			sums[cell] += value;
+			mins[cell] = Math.min(mins[cell], value);
+			maxs[cell] = Math.max(maxs[cell], value);
+			uncertaintySums[cell] += uncertainty;
+		}
+
+		/** Replaces every measured cell by one measurement, the mean of the cell */
+		void toMeans() {
+			for(int cell = 0; cell < counts.length; cell++) {
+				if(counts[cell] > 0) {
+					double mean = sums[cell] / counts[cell];
+					sums[cell] = mins[cell] = maxs[cell] = mean;
+					uncertaintySums[cell] /= counts[cell];
+					counts[cell] = 1;
+				}
+			}
+		}
+
+		/**
+		 * @param width  the number of consecutive cells that form one rolled-up cell
+		 * @return the coarser level
+		 */
+		Cells rollup(int width) {
+			Cells coarse = new Cells(counts.length / width);
+			for(int cell = 0; cell < counts.length; cell++) {
+				int target = cell / width;
+				coarse.counts[target] += counts[cell];
+				coarse.sums[target] += sums[cell];
+				coarse.mins[target] = Math.min(coarse.mins[target], mins[cell]);
+				coarse.maxs[target] = Math.max(coarse.maxs[target], maxs[cell]);
+				coarse.uncertaintySums[target] += uncertaintySums[cell];
+			}
+			return coarse;
+		}
+
+		Aggregate get(int cell) {
+			if(counts[cell] == 0) {
+				return EMPTY;
+			}
+			return new Aggregate(counts[cell], sums[cell], mins[cell], maxs[cell], uncertaintySums[cell]);
+		}
+
+		long encodedSize() {
+			return 36L * counts.length;
+		}
+
+		void writeTo(ByteBuffer out) {
+			out.asIntBuffer().put(counts);
+			out.position(out.position() + 4 * counts.length);
+			for(double[] values : new double[][] {sums, mins, maxs, uncertaintySums}) {
+				out.asDoubleBuffer().put(values);
+				out.position(out.position() + 8 * values.length);
+			}
+		}
+
+		static Cells readFrom(ByteBuffer in, int size) {
+			Cells cells = new Cells(size);
+			in.asIntBuffer().get(cells.counts);
+			in.position(in.position() + 4 * size);
+			for(double[] values : new double[][] {cells.sums, cells.mins, cells.maxs, cells.uncertaintySums}) {
+				in.asDoubleBuffer().get(values);
+				in.position(in.position() + 8 * size);
+			}
+			return cells;
+		}
+
+	}
+
+	/**
+	 * An immutable aggregate of temperature measurements.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static final class Aggregate {
+
+		/** Number of measurements */
+		final int count;
+		/** Sum of the temperatures */
+		final double sum;
+		/** Lowest temperature, <code>+Infinity</code> if empty */
+		final double min;
+		/** Highest temperature, <code>-Infinity</code> if empty */
+		final double max;
+		/** Sum of the uncertainties */
+		final double uncertaintySum;
+
+		Aggregate(int count, double sum, double min, double max, double uncertaintySum) {
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+			this.uncertaintySum = uncertaintySum;
+		}
+
+		/** @return the average temperature, <code>NaN</code> if empty */
+		double mean() {
+			return count == 0 ? Double.NaN : sum / count;
+		}
+
+		/** @return the average uncertainty, <code>NaN</code> if empty */
+		double meanUncertainty() {
+			return count == 0 ? Double.NaN : uncertaintySum / count;
+		}
+
+	}
+
+}
@@ -0,0 +1,642 @@
+package com.secres;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.opencsv.CSVParser;
+
+/**
+ * A CSV scanner that reads bytes straight into the primitive columns of a {@link ColumnStore.Builder}.
+ * <P>
+ * Files on disk are memory-mapped, so no <code>String</code> is created per line or per field:
+ * <ul>
+ * <li>Dates and short decimals are parsed in place from the bytes</li>
+ * <li>Text cells are looked up in a byte-keyed dictionary, so a <code>String</code> is only created the first time a value is seen</li>
+ * </ul>
+ * Decimals with more than 15 significant digits (e.g. <code>3.0340000000000003</code>) fall back to
+ * {@link Double#parseDouble(String)} to stay exact. A cell of a date or numeric column that cannot be parsed is read as
+ * missing, see {@link ColumnStore.Builder#skipInvalid(int, String)}.
+ * <P>
+ * Quoted fields follow RFC 4180: they may contain commas, line breaks and doubled quotes.
+ * <P>
+ * Large files are split into newline-aligned chunks that are parsed concurrently on a {@link ForkJoinPool}.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class CsvScanner {
+
+	/** Exact powers of ten for the fast decimal path */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for(int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+	/** Largest number of significant digits that fit exactly in a <code>double</code> mantissa */
+	private static final int MAX_FAST_DIGITS = 15;
+	/** Smallest chunk worth parsing on its own thread */
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+	/** Rows used to infer the column types */
+	static final int SAMPLE_ROWS = 100;
+	/** Bytes scanned between progress reports */
+	private static final int REPORT_INTERVAL = 1 << 16;
+
+	/** Data being scanned */
+	private final ByteBuffer buffer;
+	/** Destination of the parsed rows */
+	private final ColumnStore.Builder builder;
+	/** Column types */
+	private final byte[] types;
+	/** Byte-keyed dictionaries of the text columns */
+	private final ByteDictionary[] dictionaries;
+	/** Receives the number of bytes scanned, may be <code>null</code> */
+	private final LoadProgress.Task progress;
+
+	/**
+	 * @param buffer  the data
+	 * @param builder  the destination, whose header matches the data
+	 * @param types  the column types of <code>builder</code>
+	 * @param progress  receives the number of bytes scanned, may be <code>null</code>
+	 */
+	CsvScanner(ByteBuffer buffer, ColumnStore.Builder builder, byte[] types, LoadProgress.Task progress) {
+		this.buffer = buffer;
+		this.builder = builder;
+		this.types = types;
+		this.progress = progress;
+		this.dictionaries = new ByteDictionary[types.length];
+		for(int i = 0; i < types.length; i++) {
+			if(types[i] == ColumnStore.CATEGORY) {
+				dictionaries[i] = new ByteDictionary();
+			}
+		}
+	}
+
+	/**
+	 * Memory-maps a file and scans it into a {@link ColumnStore}.
+	 * @param file  the CSV file
+	 * @return the parsed columns
+	 * @throws IOException  if the file cannot be mapped
+	 */
+	static ColumnStore scan(Path file) throws IOException {
+		return scan(map(file), ForkJoinPool.commonPool(), null);
+	}
+
+	/**
+	 * Memory-maps a whole file read-only.
+	 * @param file  the file
+	 * @return the mapped bytes
+	 * @throws IOException  if the file cannot be mapped
+	 */
+	static MappedByteBuffer map(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map (" + size + " bytes)");
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	/**
+	 * Scans a buffer holding a whole CSV file, header included, in parallel.
+	 * <P>
+	 * The rows are split into byte ranges that end on a line break outside of quotes. Each range is parsed into its
+	 * own partial {@link ColumnStore} on <code>pool</code>, and the parts are concatenated in order.
+	 * @param buffer  the data
+	 * @param pool  the pool parsing the chunks
+	 * @param progress  receives the number of bytes scanned, may be <code>null</code>
+	 * @return the parsed columns
+	 * @throws IOException  if the data cannot be parsed
+	 */
+	static ColumnStore scan(ByteBuffer buffer, ForkJoinPool pool, LoadProgress.Task progress) throws IOException {
+		int start = dataStart(buffer);
+		int headerEnd = nextRow(buffer, start, buffer.limit());
+		String[] header = parseHeader(buffer, start, headerEnd);
+		byte[] types = inferTypes(buffer, header, headerEnd);
+		int[] bounds = split(buffer, headerEnd, buffer.limit(), pool);
+		ColumnStore[] parts = scanChunks(buffer, header, types, bounds, pool, progress);
+		return parts.length == 1 ? parts[0] : ColumnStore.concat(parts);
+	}
+
+	/**
+	 * Parses each chunk of rows between two boundaries into its own {@link ColumnStore}, in parallel.
+	 * @param buffer  the data
+	 * @param header  the column names
+	 * @param types  the column types
+	 * @param bounds  the chunk boundaries, see {@link #split(ByteBuffer, int, int, ForkJoinPool)}
+	 * @param pool  the pool parsing the chunks
+	 * @param progress  receives the number of bytes scanned, may be <code>null</code>
+	 * @return the parsed chunks, in order
+	 * @throws IOException  if the data cannot be parsed
+	 */
+	static ColumnStore[] scanChunks(ByteBuffer buffer, String[] header, byte[] types, int[] bounds, ForkJoinPool pool, LoadProgress.Task progress) throws IOException {
+		List<Callable<ColumnStore>> tasks = new ArrayList<>();
+		for(int i = 0; i + 1 < bounds.length; i++) {
+			int from = bounds[i];
+			int to = bounds[i + 1];
+			tasks.add(() -> {
+				ColumnStore.Builder builder = new ColumnStore.Builder(header, types);
+				new CsvScanner(buffer.duplicate(), builder, types, progress).scanRange(from, to);
+				return builder.build();
+			});
+		}
+		ColumnStore[] parts = new ColumnStore[tasks.size()];
+		List<Future<ColumnStore>> results = pool.invokeAll(tasks);
+		Metrics.Histogram chunkRows = Metrics.histogram("parse.chunk.rows");
+		for(int i = 0; i < parts.length; i++) {
+			parts[i] = get(results.get(i));
+			chunkRows.record(parts[i].getRowCount());
+		}
+		return parts;
+	}
+
+	/**
+	 * Splits the rows in <code>[from, to)</code> into chunks for parallel parsing.
+	 * <P>
+	 * The bytes are first cut into equal ranges. Quotes are counted in each range in parallel, so the quote state at
+	 * every cut is known from the parity of the quotes before it. Each cut is then moved forward to the next line break
+	 * outside of quotes.
+	 * @param buffer  the data
+	 * @param from  the start of the first row
+	 * @param to  the end of the data
+	 * @param pool  the pool counting quotes
+	 * @return the chunk boundaries, starting with <code>from</code> and ending with <code>to</code>
+	 * @throws IOException  if counting fails
+	 */
+	static int[] split(ByteBuffer buffer, int from, int to, ForkJoinPool pool) throws IOException {
+		int chunks = (int) Math.min(pool.getParallelism() * 4L, (to - from) / MIN_CHUNK_SIZE);
+		if(chunks <= 1) {
+			return new int[] {from, to};
+		}
+		int[] cuts = new int[chunks + 1];
+		for(int i = 0; i <= chunks; i++) {
+			cuts[i] = from + (int) ((long) (to - from) * i / chunks);
+		}
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		for(int i = 0; i < chunks; i++) {
+			int start = cuts[i];
+			int end = cuts[i + 1];
+			tasks.add(() -> {
+				boolean odd = false;
+				for(int pos = start; pos < end; pos++) {
+					if(buffer.get(pos) == '"') {
+						odd = !odd;
+					}
+				}
+				return odd;
+			});
+		}
+		List<Future<Boolean>> oddQuotes = pool.invokeAll(tasks);
+		int[] bounds = new int[chunks + 1];
+		bounds[0] = from;
+		bounds[chunks] = to;
+		boolean quoted = false;
+		for(int i = 1; i < chunks; i++) {
+			quoted ^= get(oddQuotes.get(i - 1));
+			bounds[i] = Math.max(bounds[i - 1], rowStart(buffer, cuts[i], to, quoted));
+		}
+		return bounds;
+	}
+
+	/**
+	 * Finds the first row that starts after <code>pos</code>.
+	 * @param buffer  the data
+	 * @param pos  any position
+	 * @param to  the end of the data
+	 * @param quoted  whether <code>pos</code> is inside a quoted field
+	 * @return the position after the next line break outside of quotes, or <code>to</code>
+	 */
+	private static int rowStart(ByteBuffer buffer, int pos, int to, boolean quoted) {
+		for(; pos < to; pos++) {
+			byte b = buffer.get(pos);
+			if(b == '"') {
+				quoted = !quoted;
+			}
+			else if(b == '\n' && !quoted) {
+				return pos + 1;
+			}
+		}
+		return to;
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Infers the column types from the header and the first rows.
+	 * @param buffer  the data
+	 * @param header  the column names
+	 * @param from  the start of the first row
+	 * @return the column types
+	 * @throws IOException  if a row is malformed
+	 */
+	static byte[] inferTypes(ByteBuffer buffer, String[] header, int from) throws IOException {
+		List<String[]> sample = new ArrayList<>();
+		int pos = from;
+		while(pos < buffer.limit() && sample.size() < SAMPLE_ROWS) {
+			int end = nextRow(buffer, pos, buffer.limit());
+			sample.add(parseHeader(buffer, pos, end));
+			pos = end;
+		}
+		return ColumnStore.inferTypes(header, sample);
+	}
+
+	/**
+	 * Estimates the column memory of a whole CSV file before it is parsed, from the length of rows sampled at several
+	 * places, since files sorted by a text column have rows of different lengths at the start and the end.
+	 * @param buffer  the data
+	 * @return the estimated bytes, see {@link ColumnMemory#columnBytes(byte[], long)}
+	 * @throws IOException  if the header or a row is malformed
+	 */
+	static long estimateColumnBytes(ByteBuffer buffer) throws IOException {
+		int start = dataStart(buffer);
+		int headerEnd = nextRow(buffer, start, buffer.limit());
+		byte[] types = inferTypes(buffer, parseHeader(buffer, start, headerEnd), headerEnd);
+		final int places = 8;
+		long length = buffer.limit() - headerEnd;
+		long sampledBytes = 0;
+		int sampledRows = 0;
+		for(int i = 0; i < places; i++) {
+			int pos = headerEnd + (int) (length * i / places);
+			if(i > 0) { // Skips to the next line break; a quoted one only makes the estimate a little off
+				while(pos < buffer.limit() && buffer.get(pos++) != '\n');
+			}
+			int from = pos;
+			for(int row = 0; row < SAMPLE_ROWS / places && pos < buffer.limit(); row++) {
+				pos = nextRow(buffer, pos, buffer.limit());
+				sampledRows++;
+			}
+			sampledBytes += pos - from;
+		}
+		if(sampledRows == 0) {
+			return 0;
+		}
+		return ColumnMemory.columnBytes(types, (long) (length / ((double) sampledBytes / sampledRows)));
+	}
+
+	/**
+	 * @param buffer  the data
+	 * @return the position after an optional UTF-8 byte order mark
+	 */
+	static int dataStart(ByteBuffer buffer) {
+		if(buffer.limit() >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+			return 3;
+		}
+		return 0;
+	}
+
+	/**
+	 * Finds the start of the next row, skipping line breaks inside quoted fields.
+	 * @param buffer  the data
+	 * @param from  the start of the current row
+	 * @param to  the end of the data
+	 * @return the position after the row's line break, or <code>to</code>
+	 */
+	static int nextRow(ByteBuffer buffer, int from, int to) {
+		boolean quoted = false;
+		for(int pos = from; pos < to; pos++) {
+			byte b = buffer.get(pos);
+			if(b == '"') {
+				quoted = !quoted;
+			}
+			else if(b == '\n' && !quoted) {
+				return pos + 1;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Decodes and splits one row, e.g. the header.
+	 * @param buffer  the data
+	 * @param from  the start of the row
+	 * @param to  the end of the row
+	 * @return the fields
+	 * @throws IOException  if the row is malformed
+	 */
+	static String[] parseHeader(ByteBuffer buffer, int from, int to) throws IOException {
+		byte[] bytes = new byte[to - from];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(from + i);
+		}
+		return new CSVParser().parseLine(new String(bytes, StandardCharsets.UTF_8).trim());
+	}
+
+	/**
+	 * Scans the rows in <code>[from, to)</code> into the builder. The range must start at a row boundary.
+	 * @param from  the first byte
+	 * @param to  the end of the range
+	 */
+	void scanRange(int from, int to) {
+		int columns = types.length;
+		int pos = from;
+		int reported = from;
+		while(pos < to) {
+			if(progress != null && pos - reported >= REPORT_INTERVAL) {
+				progress.add(pos - reported);
+				reported = pos;
+			}
+			byte b = buffer.get(pos);
+			if(b == '\n' || b == '\r') { // blank line
+				pos++;
+				continue;
+			}
+			int row = builder.newRow();
+			for(int column = 0; ; column++) {
+				int start;
+				int end;
+				boolean quoted = false;
+				if(buffer.get(pos) == '"') {
+					quoted = true;
+					start = ++pos;
+					end = to;
+					while(pos < to) {
+						if(buffer.get(pos) == '"') {
+							if(pos + 1 < to && buffer.get(pos + 1) == '"') { // escaped quote
+								pos += 2;
+								continue;
+							}
+							end = pos++;
+							break;
+						}
+						pos++;
+					}
+					while(pos < to && !isDelimiter(buffer.get(pos))) {
+						pos++;
+					}
+				}
+				else {
+					start = pos;
+					while(pos < to && !isDelimiter(buffer.get(pos))) {
+						pos++;
+					}
+					end = pos;
+				}
+				while(start < end && isBlank(buffer.get(start))) {
+					start++;
+				}
+				while(end > start && isBlank(buffer.get(end - 1))) {
+					end--;
+				}
+				if(column < columns && end > start) {
+					parseField(row, column, start, end, quoted);
+				}
+				if(pos >= to) {
+					break;
+				}
+				byte delimiter = buffer.get(pos++);
+				if(delimiter == ',') {
+					if(pos >= to) {
+						break;
+					}
+					continue;
+				}
+				if(delimiter == '\r' && pos < to && buffer.get(pos) == '\n') {
+					pos++;
+				}
+				break;
+			}
+		}
+		if(progress != null) {
+			progress.add(to - reported);
+		}
+	}
+
+	private static boolean isDelimiter(byte b) {
+		return b == ',' || b == '\n' || b == '\r';
+	}
+
+	/** Same whitespace as {@link String#trim()} */
+	private static boolean isBlank(byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+	/**
+	 * Parses one non-empty field into the builder.
+	 * @param row  the row index
+	 * @param column  the column index
+	 * @param start  the first byte of the field
+	 * @param end  the end of the field
+	 * @param quoted  whether the field was quoted
+	 */
+	private void parseField(int row, int column, int start, int end, boolean quoted) {
+		switch(types[column]) {
+			case ColumnStore.DATE:
+				try {
+					builder.setInt(row, column, parseDate(start, end));
+				} catch(NumberFormatException e) {
+					builder.skipInvalid(column, decode(start, end, quoted));
+				}
+				break;
+			case ColumnStore.CATEGORY:
+				ByteDictionary dictionary = dictionaries[column];
+				int id = dictionary.lookup(buffer, start, end);
+				if(id < 0) {
+					id = builder.intern(column, decode(start, end, quoted));
+					dictionary.add(buffer, start, end, id);
+				}
+				builder.setInt(row, column, id);
+				break;
+			default:
+				try {
+					builder.setDouble(row, column, parseDouble(start, end));
+				} catch(NumberFormatException e) {
+					builder.skipInvalid(column, decode(start, end, quoted));
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Parses a <code>yyyy-MM-dd</code> date.
+	 * @return the packed year and month
+	 */
+	private int parseDate(int start, int end) {
+		int pos = start;
+		int year = 0;
+		byte b;
+		while(pos < end && (b = buffer.get(pos)) != '-') {
+			if(b < '0' || b > '9') {
+				throw new NumberFormatException("Invalid date: " + decode(start, end, false));
+			}
+			year = year * 10 + (b - '0');
+			pos++;
+		}
+		if(pos + 2 >= end) {
+			throw new NumberFormatException("Invalid date: " + decode(start, end, false));
+		}
+		int month = (buffer.get(pos + 1) - '0') * 10 + (buffer.get(pos + 2) - '0');
+		if(month < 1 || month > 12) {
+			throw new NumberFormatException("Invalid date: " + decode(start, end, false));
+		}
+		return ColumnStore.packDate(year, month);
+	}
+
+	/**
+	 * Parses a decimal exactly. Plain decimals with at most 15 significant digits are converted with one
+	 * correctly rounded division; anything else goes through {@link Double#parseDouble(String)}.
+	 */
+	private double parseDouble(int start, int end) {
+		int pos = start;
+		boolean negative = false;
+		byte b = buffer.get(pos);
+		if(b == '-' || b == '+') {
+			negative = b == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean dot = false;
+		boolean any = false;
+		for(; pos < end; pos++) {
+			b = buffer.get(pos);
+			if(b >= '0' && b <= '9') {
+				any = true;
+				if(mantissa != 0 || b != '0') {
+					if(++digits > MAX_FAST_DIGITS) {
+						return Double.parseDouble(decode(start, end, false));
+					}
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if(dot) {
+					scale++;
+				}
+			}
+			else if(b == '.' && !dot) {
+				dot = true;
+			}
+			else {
+				return Double.parseDouble(decode(start, end, false));
+			}
+		}
+		if(!any || scale >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(decode(start, end, false));
+		}
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes a field into a <code>String</code>, unescaping doubled quotes.
+	 */
+	private String decode(int start, int end, boolean quoted) {
+		byte[] bytes = new byte[end - start];
+		int length = 0;
+		for(int pos = start; pos < end; pos++) {
+			byte b = buffer.get(pos);
+			bytes[length++] = b;
+			if(quoted && b == '"' && pos + 1 < end && buffer.get(pos + 1) == '"') {
+				pos++;
+			}
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * An open-addressing hash table from the raw bytes of a text cell to its dictionary id.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	private static final class ByteDictionary {
+
+		private byte[][] keys = new byte[64][];
+		private int[] hashes = new int[64];
+		private int[] ids = new int[64];
+		private int size;
+
+		private static int hash(ByteBuffer buffer, int start, int end) {
+			int h = 1;
+			for(int pos = start; pos < end; pos++) {
+				h = 31 * h + buffer.get(pos);
+			}
+			return h ^ (h >>> 16);
+		}
+
+		/** @return the id of the bytes, or -1 if they have not been added */
+		int lookup(ByteBuffer buffer, int start, int end) {
+			int h = hash(buffer, start, end);
+			int mask = keys.length - 1;
+			for(int slot = h & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+				if(hashes[slot] == h && matches(keys[slot], buffer, start, end)) {
+					return ids[slot];
+				}
+			}
+			return -1;
+		}
+
+		void add(ByteBuffer buffer, int start, int end, int id) {
+			if((size + 1) * 2 > keys.length) {
+				rehash();
+			}
+			byte[] key = new byte[end - start];
+			for(int i = 0; i < key.length; i++) {
+				key[i] = buffer.get(start + i);
+			}
+			insert(key, hash(buffer, start, end), id);
+			size++;
+		}
+
+		private void insert(byte[] key, int h, int id) {
+			int mask = keys.length - 1;
+			int slot = h & mask;
+			while(keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			hashes[slot] = h;
+			ids[slot] = id;
+		}
+
+		private void rehash() {
+			byte[][] oldKeys = keys;
+			int[] oldHashes = hashes;
+			int[] oldIds = ids;
+			keys = new byte[oldKeys.length * 2][];
+			hashes = new int[keys.length];
+			ids = new int[keys.length];
+			for(int i = 0; i < oldKeys.length; i++) {
+				if(oldKeys[i] != null) {
+					insert(oldKeys[i], oldHashes[i], oldIds[i]);
+				}
+			}
+		}
+
+		private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+			if(key.length != end - start) {
+				return false;
+			}
+			for(int i = 0; i < key.length; i++) {
+				if(key[i] != buffer.get(start + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,281 @@
+package com.secres;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic datasets with the exact schemas of the Berkeley Earth files, to find the scaling limits of the
+ * loaders, tables and charts on datasets of any size.
+ * <P>
+ * Every region gets a mean temperature, a seasonal swing (reversed south of the equator) and a warming trend;
+ * each month adds Gaussian noise. A fraction of the measurements is left empty, and the uncertainty shrinks over the
+ * years like in the real data. The output only depends on the settings and the seed. Some region names contain a
+ * comma and are quoted, as in the country file.
+ * <P>
+ * Run from the command line, files are written under their usual names, so the application and the JMH benchmarks
+ * read them with <code>-Dsecres.data.dir</code>:
+ * <pre>
+ * java -cp risingtemperatures-1.0.jar com.secres.DatasetGenerator --out /tmp/synthetic --regions 2430 --seed 7
+ * </pre>
+ * Options: <code>--schema global|country|city</code> (default: global and country), <code>--regions</code>,
+ * <code>--from</code> and <code>--to</code> (years), <code>--missing</code> (ratio of empty measurements),
+ * <code>--noise</code> (standard deviation in &deg;C) and <code>--seed</code>.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class DatasetGenerator {
+
+	/**
+	 * The layout of a generated file.
+	 */
+	enum Schema {
+		/** One global series, as <code>GlobalTemperatures.csv</code> */
+		GLOBAL("GlobalTemperatures.csv", "dt,LandAverageTemperature,LandAverageTemperatureUncertainty,LandMaxTemperature,LandMaxTemperatureUncertainty,LandMinTemperature,LandMinTemperatureUncertainty,LandAndOceanAverageTemperature,LandAndOceanAverageTemperatureUncertainty", 1750, 2015),
+		/** One series per country, as <code>GlobalLandTemperaturesByCountry.csv</code> */
+		COUNTRY("GlobalLandTemperaturesByCountry.csv", "dt,AverageTemperature,AverageTemperatureUncertainty,Country", 1743, 2013),
+		/** One series per city, as <code>GlobalLandTemperaturesByCity.csv</code> */
+		CITY("GlobalLandTemperaturesByCity.csv", "dt,AverageTemperature,AverageTemperatureUncertainty,City,Country,Latitude,Longitude", 1743, 2013);
+
+		/** Name of the real dataset */
+		final String fileName;
+		final String header;
+		/** Years of the real dataset */
+		final int fromYear, toYear;
+
+		Schema(String fileName, String header, int fromYear, int toYear) {
+			this.fileName = fileName;
+			this.header = header;
+			this.fromYear = fromYear;
+			this.toYear = toYear;
+		}
+	}
+
+	/** Cities of the city schema per country */
+	private static final int CITIES_PER_COUNTRY = 20;
+	/** Year the warming trend starts */
+	private static final int TREND_START = 1850;
+
+	private final Schema schema;
+	private final int regions;
+	private final int fromYear, toYear;
+	private final double missing;
+	private final double noise;
+	private final long seed;
+
+	/**
+	 * @param schema  the layout
+	 * @param regions  the number of countries or cities, ignored by {@link Schema#GLOBAL}
+	 * @param fromYear  the first year
+	 * @param toYear  the last year
+	 * @param missing  the ratio of empty measurements, 0 - 1
+	 * @param noise  the standard deviation of the monthly noise in &deg;C
+	 * @param seed  the seed
+	 */
+	DatasetGenerator(Schema schema, int regions, int fromYear, int toYear, double missing, double noise, long seed) {
+		if(regions < 1 || fromYear > toYear || !(missing >= 0 && missing <= 1) || !(noise >= 0)) {
+			throw new IllegalArgumentException("Invalid settings: " + regions + " regions, years " + fromYear + "-" + toYear + ", missing " + missing + ", noise " + noise);
+		}
+		this.schema = schema;
+		this.regions = schema == Schema.GLOBAL ? 1 : regions;
+		this.fromYear = fromYear;
+		this.toYear = toYear;
+		this.missing = missing;
+		this.noise = noise;
+		this.seed = seed;
+	}
+
+	/** @return the number of data rows written */
+	long getRowCount() {
+		return (long) regions * (toYear - fromYear + 1) * 12;
+	}
+
+	/**
+	 * Writes the dataset to a file, replacing it.
+	 * @param file  the file
+	 * @throws IOException  if the file cannot be written
+	 */
+	void write(Path file) throws IOException {
+		try(Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			write(out);
+		}
+	}
+
+	/**
+	 * Writes the dataset.
+	 * @param out  receives the CSV, not closed
+	 * @throws IOException  if writing fails
+	 */
+	void write(Writer out) throws IOException {
+		Writer writer = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+		StringBuilder line = new StringBuilder(128);
+		writer.write(schema.header);
+		writer.write('\n');
+		for(int region = 0; region < regions; region++) {
+			// Every region draws from its own stream, so a region looks the same whatever the number of regions
+			SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + region);
+			double latitude = random.nextDouble(-60, 70);
+			double longitude = random.nextDouble(-180, 180);
+			double mean = schema == Schema.GLOBAL ? 8.4 : 27 - Math.abs(latitude) * 0.55 + random.nextDouble(-3, 3);
+			double swing = (schema == Schema.GLOBAL ? 6 : Math.min(Math.abs(latitude) * 0.3, 18) + random.nextDouble(0, 2)) * Math.signum(latitude + 0.5);
+			double trend = 0.005 + random.nextDouble(0, 0.01);
+			String tail = tail(region, latitude, longitude);
+			for(int year = fromYear; year <= toYear; year++) {
+				double uncertainty = 0.1 + 3.5 * Math.exp(-(year - fromYear) / 60.0);
+				double warming = year > TREND_START ? trend * (year - TREND_START) : 0;
+				for(int month = 1; month <= 12; month++) {
+					line.setLength(0);
+					line.append(year).append(month < 10 ? "-0" : "-").append(month).append("-01");
+					// Warmest in July in the north, in January in the south
+					double seasonal = -swing * Math.cos(2 * Math.PI * (month - 1) / 12);
+					if(random.nextDouble() < missing) {
+						line.append(",,");
+					}
+					else {
+						appendValue(line.append(','), mean + seasonal + warming + noise * gaussian(random));
+						appendValue(line.append(','), uncertainty * (0.8 + 0.4 * random.nextDouble()));
+					}
+					if(schema == Schema.GLOBAL) {
+						// Maximum, minimum and ocean temperatures only exist from 1850 on
+						if(year < TREND_START || random.nextDouble() < missing) {
+							line.append(",,,,,,");
+						}
+						else {
+							double land = mean + seasonal + warming;
+							appendValue(line.append(','), land + 5.7 + noise * gaussian(random));
+							appendValue(line.append(','), uncertainty * 0.8);
+							appendValue(line.append(','), land - 5.6 + noise * gaussian(random));
+							appendValue(line.append(','), uncertainty * 0.8);
+							appendValue(line.append(','), 15.2 + seasonal * 0.25 + warming * 0.6 + noise * 0.3 * gaussian(random));
+							appendValue(line.append(','), uncertainty * 0.5);
+						}
+					}
+					line.append(tail).append('\n');
+					writer.append(line);
+				}
+			}
+		}
+		writer.flush();
+	}
+
+	/** @return the text columns of a region's rows, with their leading comma */
+	private String tail(int region, double latitude, double longitude) {
+		switch(schema) {
+			case COUNTRY:
+				return "," + regionName("Country", region);
+			case CITY:
+				return "," + regionName("City", region) + "," + regionName("Country", region % Math.max(1, regions / CITIES_PER_COUNTRY))
+					+ "," + coordinate(latitude, 'N', 'S') + "," + coordinate(longitude, 'E', 'W');
+			default:
+				return "";
+		}
+	}
+
+	/** Names every 10th region with a comma, quoted like <code>"Bonaire, Saint Eustatius And Saba"</code> */
+	private static String regionName(String kind, int region) {
+		return region % 10 == 3 ? "\"" + kind + " " + region + ", North\"" : kind + " " + region;
+	}
+
+	/** Formats like <code>57.05N</code> */
+	private static String coordinate(double degrees, char positive, char negative) {
+		StringBuilder text = new StringBuilder();
+		long hundredths = Math.round(Math.abs(degrees) * 100);
+		text.append(hundredths / 100).append('.');
+		if(hundredths % 100 < 10) {
+			text.append('0');
+		}
+		return text.append(hundredths % 100).append(degrees < 0 ? negative : positive).toString();
+	}
+
+	/** Appends a value rounded to three decimals, like the real files */
+	private static void appendValue(StringBuilder line, double value) {
+		long thousandths = Math.round(value * 1000);
+		if(thousandths < 0) {
+			line.append('-');
+			thousandths = -thousandths;
+		}
+		line.append(thousandths / 1000).append('.');
+		long fraction = thousandths % 1000;
+		if(fraction < 100) {
+			line.append('0');
+		}
+		if(fraction < 10) {
+			line.append('0');
+		}
+		line.append(fraction);
+	}
+
+	/** Box-Muller transform, since <code>SplittableRandom</code> has no Gaussian */
+	private static double gaussian(SplittableRandom random) {
+		return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+
+	/**
+	 * Writes synthetic datasets, see the class documentation for the options.
+	 * @param args  the options
+	 * @throws IOException  if a file cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		List<Schema> schemas = new ArrayList<>();
+		int regions = 243;
+		Integer fromYear = null, toYear = null;
+		double missing = 0.04, noise = 1;
+		long seed = 1;
+		Path directory = Paths.get(".");
+		for(int i = 0; i < args.length; i += 2) {
+			if(i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + args[i]);
+			}
+			String value = args[i + 1];
+			switch(args[i]) {
+				case "--schema":
+					schemas.add(Schema.valueOf(value.toUpperCase()));
+					break;
+				case "--regions":
+					regions = Integer.parseInt(value);
+					break;
+				case "--from":
+					fromYear = Integer.parseInt(value);
+					break;
+				case "--to":
+					toYear = Integer.parseInt(value);
+					break;
+				case "--missing":
+					missing = Double.parseDouble(value);
+					break;
+				case "--noise":
+					noise = Double.parseDouble(value);
+					break;
+				case "--seed":
+					seed = Long.parseLong(value);
+					break;
+				case "--out":
+					directory = Paths.get(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i] + ", expected --schema, --regions, --from, --to, --missing, --noise, --seed or --out");
+			}
+		}
+		if(schemas.isEmpty()) {
+			schemas.add(Schema.GLOBAL);
+			schemas.add(Schema.COUNTRY);
+		}
+		Files.createDirectories(directory);
+		for(Schema schema : schemas) {
+			DatasetGenerator generator = new DatasetGenerator(schema, regions, fromYear != null ? fromYear : schema.fromYear, toYear != null ? toYear : schema.toYear, missing, noise, seed);
+			Path file = directory.resolve(schema.fileName);
+			long start = System.nanoTime();
+			generator.write(file);
+			System.out.printf("%s: %,d rows, %,d bytes in %d ms%n", file, generator.getRowCount(), Files.size(file), (System.nanoTime() - start) / 1000000);
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package com.secres;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Shows the EDT stalls found by the {@link EdtWatchdog}, newest first, with the EDT stack of the selected stall,
+ * and the current EDT latency from {@link Metrics}. Created and used on the EDT.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class DiagnosticsPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+	private final EdtWatchdog watchdog;
+	/** Stalls, newest first */
+	private final List<EdtWatchdog.Stall> stalls = new ArrayList<>();
+	private final StallTableModel tableModel = new StallTableModel();
+	private final JLabel statusLabel = new JLabel();
+	private final Consumer<EdtWatchdog.Stall> listener = this::addStall;
+	/** Refreshes the latency while the panel is shown */
+	private final Timer refreshTimer = new Timer(1000, e -> refreshStatus());
+
+	/** Columns: time, duration and event of each stall */
+	private final class StallTableModel extends AbstractTableModel {
+
+		private static final long serialVersionUID = 1L;
+		private final String[] columns = {"Time", "Duration (ms)", "Event"};
+
+		@Override
+		public int getRowCount() {
+			return stalls.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columns.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return columns[column];
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			return column == 1 ? Long.class : String.class;
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			EdtWatchdog.Stall stall = stalls.get(row);
+			switch(column) {
+				case 0:
+					return TIME.format(stall.time);
+				case 1:
+					return stall.durationMillis;
+				default:
+					return stall.event;
+			}
+		}
+
+	}
+
+	/**
+	 * @param watchdog  the installed watchdog
+	 */
+	DiagnosticsPanel(EdtWatchdog watchdog) {
+		super(new BorderLayout());
+		this.watchdog = watchdog;
+		for(EdtWatchdog.Stall stall : watchdog.getStalls()) {
+			stalls.add(0, stall);
+		}
+
+		JTable table = new JTable(tableModel);
+		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		table.getColumnModel().getColumn(0).setPreferredWidth(90);
+		table.getColumnModel().getColumn(1).setPreferredWidth(90);
+		table.getColumnModel().getColumn(2).setPreferredWidth(500);
+
+		JTextArea stackArea = new JTextArea();
+		stackArea.setEditable(false);
+		stackArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		table.getSelectionModel().addListSelectionListener(e -> {
+			int row = table.getSelectedRow();
+			stackArea.setText(row < 0 ? "" : stalls.get(row).toString());
+			stackArea.setCaretPosition(0);
+		});
+
+		JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(stackArea));
+		splitPane.setResizeWeight(0.4);
+		add(splitPane);
+
+		statusLabel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+		add(statusLabel, BorderLayout.NORTH);
+		JLabel logLabel = new JLabel("Log: " + EdtWatchdog.LOG.toAbsolutePath());
+		logLabel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+		add(logLabel, BorderLayout.SOUTH);
+		refreshStatus();
+	}
+
+	/** Starts following new stalls and the latency. */
+	void start() {
+		watchdog.addStallListener(listener);
+		refreshTimer.start();
+	}
+
+	/** Stops following new stalls and the latency. */
+	void stop() {
+		watchdog.removeStallListener(listener);
+		refreshTimer.stop();
+	}
+
+	private void addStall(EdtWatchdog.Stall stall) {
+		stalls.add(0, stall);
+		tableModel.fireTableRowsInserted(0, 0);
+		refreshStatus();
+	}
+
+	private void refreshStatus() {
+		Metrics.Timer latency = Metrics.timer("edt.latency");
+		statusLabel.setText(String.format("Threshold %d ms  |  EDT latency p50 %.1f ms, p99 %.1f ms, max %.1f ms  |  %d stalls",
+			EdtWatchdog.THRESHOLD_MILLIS, latency.get50thPercentileMillis(), latency.get99thPercentileMillis(), latency.getMaxMillis(), stalls.size()));
+	}
+
+}
@@ -0,0 +1,268 @@
+package com.secres;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * A column of <code>double</code> values of a {@link ColumnStore}: temperatures and uncertainties.
+ * <P>
+ * The CSV files write values with a few decimals, e.g. <code>10.592</code>, so most columns are stored in fixed point
+ * ({@link #PACKED}): each value is <code>(base + offset) / 10^scale</code>, which gives back the parsed value bit for
+ * bit, and the offsets are bit-packed. Two codes past the largest offset mark a missing value and a patch: values
+ * that do not fit the scale, like <code>-0.0</code> or the <code>3.0340000000000003</code> written by the source of
+ * <code>GlobalTemperatures.csv</code>, are kept as they are in a small table sorted by row. The scale, from 0 to
+ * {@link #MAX_SCALE} decimals, is the one that needs the least memory; a column where none saves memory stays
+ * {@link #PLAIN}.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class DoubleColumn {
+
+	/** Encoding with one <code>double</code> per row */
+	static final byte PLAIN = 0;
+	/** Encoding with bit-packed fixed point values */
+	static final byte PACKED = 2;
+	/** Most decimals tried for {@link #PACKED} */
+	static final int MAX_SCALE = 6;
+
+	/** Largest scaled value that converts exactly to and from a <code>double</code> */
+	private static final double MAX_SCALED = 1L << 52;
+
+	private final byte encoding;
+	/** Values of a {@link #PLAIN} column */
+	private final DoubleBuffer values;
+	/** Decimals of a {@link #PACKED} column */
+	private final int scale;
+	/** <code>10^scale</code> */
+	private final double divisor;
+	/** Smallest scaled value */
+	private final long base;
+	/** Offset of missing values; the next one marks a patch */
+	private final long nanCode;
+	/** Offsets from {@link #base} */
+	private final PackedBits offsets;
+	/** Rows of the values that are not in fixed point, ascending */
+	private final int[] patchRows;
+	/** Values of {@link #patchRows} */
+	private final double[] patchValues;
+
+	private DoubleColumn(byte encoding, DoubleBuffer values, int scale, long base, long nanCode, PackedBits offsets, int[] patchRows, double[] patchValues) {
+		this.encoding = encoding;
+		this.values = values;
+		this.scale = scale;
+		this.divisor = Math.pow(10, scale);
+		this.base = base;
+		this.nanCode = nanCode;
+		this.offsets = offsets;
+		this.patchRows = patchRows;
+		this.patchValues = patchValues;
+	}
+
+	/**
+	 * @param values  one value per row
+	 * @return a {@link #PLAIN} column reading <code>values</code>
+	 */
+	static DoubleColumn of(DoubleBuffer values) {
+		return new DoubleColumn(PLAIN, values, 0, 0, 0, null, null, null);
+	}
+
+	/**
+	 * @param row  the row index
+	 * @return the value, <code>NaN</code> if missing
+	 */
+	double get(int row) {
+		if(encoding == PACKED) {
+			return decode(offsets.get(row), row);
+		}
+		return values.get(row);
+	}
+
+	private double decode(long offset, int row) {
+		if(offset < nanCode) {
+			// Dividing by an exact power of ten rounds to the same double as parsing the decimal
+			return (base + offset) / divisor;
+		}
+		return offset == nanCode ? Double.NaN : patchValues[Arrays.binarySearch(patchRows, row)];
+	}
+
+	/**
+	 * Decodes consecutive values into an array, faster than {@link #get(int)} for each row.
+	 * @param from  the first row
+	 * @param destination  the array
+	 * @param offset  the index in <code>destination</code> of the first row
+	 * @param length  the number of rows
+	 */
+	void copyTo(int from, double[] destination, int offset, int length) {
+		if(encoding == PLAIN) {
+			DoubleBuffer source = values.duplicate();
+			source.position(from);
+			source.get(destination, offset, length);
+			return;
+		}
+		for(int row = 0; row < length; row++) {
+			destination[offset + row] = decode(offsets.get(from + row), from + row);
+		}
+	}
+
+	/** @return the encoding, {@link #PLAIN} or {@link #PACKED} */
+	byte getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Stores the values of this column in fixed point if that saves memory.
+	 * @param rows  the number of rows
+	 * @return the column in its smallest encoding, on the heap
+	 */
+	DoubleColumn encode(int rows) {
+		int best = -1;
+		long bestBytes = 8L * rows;
+		for(int scale = 0; scale <= MAX_SCALE; scale++) {
+			long[] range = scan(rows, scale);
+			long bytes = PackedBits.bytes(rows, PackedBits.bitsFor(range[1] - range[0] + 2)) + 12 * range[2];
+			if(bytes < bestBytes) {
+				best = scale;
+				bestBytes = bytes;
+			}
+			if(range[2] == 0) { // More decimals only need more bits
+				break;
+			}
+		}
+		if(best < 0) {
+			return this;
+		}
+		long[] range = scan(rows, best);
+		long nanCode = range[1] - range[0] + 1;
+		PackedBits offsets = PackedBits.allocate(rows, PackedBits.bitsFor(nanCode + 1));
+		int[] patchRows = new int[(int) range[2]];
+		double[] patchValues = new double[patchRows.length];
+		double divisor = Math.pow(10, best);
+		int patches = 0;
+		for(int row = 0; row < rows; row++) {
+			double value = get(row);
+			if(Double.isNaN(value)) {
+				offsets.set(row, nanCode);
+			}
+			else if(isExact(value, divisor)) {
+				offsets.set(row, Math.round(value * divisor) - range[0]);
+			}
+			else {
+				offsets.set(row, nanCode + 1);
+				patchRows[patches] = row;
+				patchValues[patches++] = value;
+			}
+		}
+		return new DoubleColumn(PACKED, null, best, range[0], nanCode, offsets, patchRows, patchValues);
+	}
+
+	/**
+	 * @return the smallest and largest scaled value, 0 if there is none, and the number of values that are not exact
+	 */
+	private long[] scan(int rows, int scale) {
+		double divisor = Math.pow(10, scale);
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		long patches = 0;
+		for(int row = 0; row < rows; row++) {
+			double value = get(row);
+			if(Double.isNaN(value)) {
+				continue;
+			}
+			if(isExact(value, divisor)) {
+				long scaled = Math.round(value * divisor);
+				min = Math.min(min, scaled);
+				max = Math.max(max, scaled);
+			}
+			else {
+				patches++;
+			}
+		}
+		if(min > max) {
+			min = max = 0;
+		}
+		return new long[] {min, max, patches};
+	}
+
+	/** @return whether a value is given back bit for bit from its scaled value */
+	private static boolean isExact(double value, double divisor) {
+		return Math.abs(value * divisor) < MAX_SCALED && Double.doubleToRawLongBits(Math.round(value * divisor) / divisor) == Double.doubleToRawLongBits(value);
+	}
+
+	/** @return the bytes of the values */
+	long bytes() {
+		return encoding == PACKED ? offsets.bytes() + 12L * patchRows.length : 8L * values.limit();
+	}
+
+	/** @return a copy in direct buffers, see {@link ColumnMemory}; patches are few and stay on the heap */
+	DoubleColumn offHeap() {
+		if(encoding == PACKED) {
+			return new DoubleColumn(PACKED, null, scale, base, nanCode, offsets.offHeap(), patchRows, patchValues);
+		}
+		DoubleBuffer copy = ColumnMemory.allocateDoubles(values.limit(), true);
+		copy.put(values.duplicate()).flip();
+		return of(copy);
+	}
+
+	/** @return the number of bytes {@link #writeTo(ByteBuffer)} needs */
+	long encodedSize() {
+		return encoding == PACKED ? 22 + offsets.encodedSize() + 12L * patchRows.length : 1 + 8L * values.limit();
+	}
+
+	/**
+	 * @param out  the destination
+	 */
+	void writeTo(ByteBuffer out) {
+		out.put(encoding);
+		if(encoding == PACKED) {
+			out.put((byte) scale);
+			out.putLong(base);
+			out.putLong(nanCode);
+			offsets.writeTo(out);
+			out.putInt(patchRows.length);
+			for(int i = 0; i < patchRows.length; i++) {
+				out.putInt(patchRows[i]);
+				out.putDouble(patchValues[i]);
+			}
+		}
+		else {
+			out.asDoubleBuffer().put(values.duplicate());
+			out.position(out.position() + 8 * values.limit());
+		}
+	}
+
+	/**
+	 * @param in  the source, positioned at the column
+	 * @param rows  the number of rows
+	 * @param direct  whether to read the values outside the heap
+	 * @return the column
+	 */
+	static DoubleColumn readFrom(ByteBuffer in, int rows, boolean direct) {
+		byte encoding = in.get();
+		switch(encoding) {
+			case PACKED:
+				int scale = in.get();
+				long base = in.getLong();
+				long nanCode = in.getLong();
+				PackedBits offsets = PackedBits.readFrom(in, direct);
+				int[] patchRows = new int[in.getInt()];
+				double[] patchValues = new double[patchRows.length];
+				for(int i = 0; i < patchRows.length; i++) {
+					patchRows[i] = in.getInt();
+					patchValues[i] = in.getDouble();
+				}
+				return new DoubleColumn(PACKED, null, scale, base, nanCode, offsets, patchRows, patchValues);
+			case PLAIN:
+				DoubleBuffer values = ColumnMemory.allocateDoubles(rows, direct);
+				DoubleBuffer source = in.asDoubleBuffer();
+				source.limit(rows);
+				values.put(source).flip();
+				in.position(in.position() + 8 * rows);
+				return of(values);
+			default:
+				throw new IllegalArgumentException("Unknown column encoding " + encoding);
+		}
+	}
+
+}
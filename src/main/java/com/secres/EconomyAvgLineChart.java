@@ -6,9 +6,16 @@ import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.event.ItemEvent;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartMouseEvent;
@@ -29,15 +36,27 @@ import org.jfree.data.xy.XYSeriesCollection;
 
 /**
  * A class containing a line chart with the Top 5 World Economies Average Yearly Temperature from 1900 to 2012.
+ * <P>
+ * The "Countries..." button replaces the top 5 economies with any set of countries. Each series is read from the
+ * yearly rollups of {@link CountryAggregates}, so a country only costs its own years and never a scan of the dataset.
  * 
  * @author Pranav Amarnath
  *
  */
 public class EconomyAvgLineChart extends AbstractGraph {
 
+	/** Countries shown until the user picks others */
+	static final List<String> DEFAULT_COUNTRIES = Arrays.asList("China", "Germany", "India", "Japan", "United States");
+	/** Colors of the first series */
+	private static final Color[] COLORS = {null, null, new Color(0, 128, 0), new Color(255, 120, 0), Color.MAGENTA};
+	
 	XYSeriesCollection dataset;
 	JFreeChart chart;
 	ChartPanel panel;
+	/** Countries shown, replaced on the EDT and read by {@link #prepareModel()} */
+	private volatile List<String> countries = DEFAULT_COUNTRIES;
+	/** One range crosshair per country */
+	private CrosshairOverlay crosshairOverlay;
 	
 	/**
 	 * Multi-series line chart for Top 5 economies
@@ -64,25 +83,10 @@ public class EconomyAvgLineChart extends AbstractGraph {
 		panel = new ChartPanel(chart);
 		panel.setMouseWheelEnabled(true);
 
-        CrosshairOverlay crosshairOverlay = new CrosshairOverlay();
+        crosshairOverlay = new CrosshairOverlay();
         Crosshair xCrosshair = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
         xCrosshair.setLabelVisible(true);
-        Crosshair yCrosshair0 = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
-        yCrosshair0.setLabelVisible(true);
-        Crosshair yCrosshair1 = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
-        yCrosshair1.setLabelVisible(true);
-        Crosshair yCrosshair2 = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
-        yCrosshair2.setLabelVisible(true);
-        Crosshair yCrosshair3 = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
-        yCrosshair3.setLabelVisible(true);
-        Crosshair yCrosshair4 = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
-        yCrosshair4.setLabelVisible(true);
         crosshairOverlay.addDomainCrosshair(xCrosshair);
-        crosshairOverlay.addRangeCrosshair(yCrosshair0);
-        crosshairOverlay.addRangeCrosshair(yCrosshair1);
-        crosshairOverlay.addRangeCrosshair(yCrosshair2);
-        crosshairOverlay.addRangeCrosshair(yCrosshair3);
-        crosshairOverlay.addRangeCrosshair(yCrosshair4);
 
         panel.addOverlay(crosshairOverlay);
         
@@ -100,16 +104,10 @@ public class EconomyAvgLineChart extends AbstractGraph {
 		        ValueAxis xAxis = plot.getDomainAxis();
 		        double x = xAxis.java2DToValue(event.getTrigger().getX(), dataArea, RectangleEdge.BOTTOM);
 		        xCrosshair.setValue(x);
-		        double y0 = DatasetUtils.findYValue(plot.getDataset(), 0, x);
-		        yCrosshair0.setValue(y0);
-		        double y1 = DatasetUtils.findYValue(plot.getDataset(), 1, x);
-		        yCrosshair1.setValue(y1);
-		        double y2 = DatasetUtils.findYValue(plot.getDataset(), 2, x);
-		        yCrosshair2.setValue(y2);
-		        double y3 = DatasetUtils.findYValue(plot.getDataset(), 3, x);
-		        yCrosshair3.setValue(y3);
-		        double y4 = DatasetUtils.findYValue(plot.getDataset(), 4, x);
-		        yCrosshair4.setValue(y4);
+		        List<Crosshair> yCrosshairs = crosshairOverlay.getRangeCrosshairs();
+		        for(int i = 0; i < yCrosshairs.size(); i++) {
+		        	yCrosshairs.get(i).setValue(DatasetUtils.findYValue(plot.getDataset(), i, x));
+		        }
 		    }
 		});
         
@@ -125,8 +123,11 @@ public class EconomyAvgLineChart extends AbstractGraph {
 				panel.removeOverlay(crosshairOverlay);
 			}
         });
+        JButton chooseCountries = new JButton("Countries...");
+        chooseCountries.addActionListener(e -> chooseCountries());
         JPanel crosshairCheckboxPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         crosshairCheckboxPanel.add(enableCrosshair);
+        crosshairCheckboxPanel.add(chooseCountries);
         
         mainPanel.add(panel);
         mainPanel.add(crosshairCheckboxPanel, BorderLayout.SOUTH);
@@ -134,134 +135,128 @@ public class EconomyAvgLineChart extends AbstractGraph {
 		return mainPanel;
 	}
 	
-	/** Adds data to the multi-series line chart for Top 5 economies */
-	@Override
-	void updateModel() {
-		XYPlot plot = chart.getXYPlot();
-		XYLineAndShapeRenderer r = (XYLineAndShapeRenderer) plot.getRenderer();
-		
-		final int numSeries = 5;
-		
-		double[] averages = new double[numSeries];
-		int[] counts = new int[numSeries];
-		int[] iterCounts = new int[numSeries];
-		
-		String[] countries = new String[numSeries];
-		countries[0] = "China";
-		countries[1] = "Germany";
-		countries[2] = "India";
-		countries[3] = "Japan";
-		countries[4] = "United States";
-		
-		XYSeries[] series = new XYSeries[numSeries];
-		series[0] = new XYSeries(countries[0]);
-		series[1] = new XYSeries(countries[1]);
-		series[2] = new XYSeries(countries[2]);
-		series[3] = new XYSeries(countries[3]);
-		series[4] = new XYSeries(countries[4]);
-		
-		for(int i = 0; i < numSeries; i++) {
-			dataset.addSeries(series[i]);
+	/** Lets the user pick the countries of the chart */
+	private void chooseCountries() {
+		CountryAggregates aggregates = Main.getCountryAggregates();
+		if(aggregates == null) {
+			return;
 		}
-		
-		for(int i = 0; i < View.getCountryTable().getModel().getRowCount(); i++) {
-			// Avoid infinite values where the particular x-value doesn't exist
-			if((Double.parseDouble(((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4))) >= 1900) {
-				if(View.getCountryTable().getModel().getValueAt(i, 3).equals(countries[0])) {
-					iterCounts[0] = iterCounts[0] + 1;
-					if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-						counts[0]++;
-						averages[0] = averages[0] + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1));
-					}
-					if(iterCounts[0] == 12) { // count only becomes 12 after 12 *count increase*, does not mean 12 months... UPDATE: Fixed
-						averages[0] = averages[0]/counts[0];
-						series[0].add(Double.parseDouble(((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)), averages[0]);
-						averages[0] = 0;
-						counts[0] = 0;
-						iterCounts[0] = 0;
-					}
-				}
-				else if(View.getCountryTable().getModel().getValueAt(i, 3).equals(countries[1])) {
-					iterCounts[1] = iterCounts[1] + 1;
-					if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-						counts[1]++;
-						averages[1] = averages[1] + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1));
-					}
-					if(counts[1] == 12) {
-						averages[1] = averages[1]/counts[1];
-						series[1].add(Double.parseDouble(((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)), averages[1]);
-						averages[1] = 0;
-						counts[1] = 0;
-						iterCounts[1] = 0;
-					}
-				}
-				else if(View.getCountryTable().getModel().getValueAt(i, 3).equals(countries[2])) {
-					iterCounts[2] = iterCounts[2] + 1;
-					r.setSeriesPaint(2, new Color(0, 128, 0));
-					if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-						counts[2]++;
-						averages[2] = averages[2] + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1));
-					}
-					if(iterCounts[2] == 12) {
-						averages[2] = averages[2]/counts[2];
-						series[2].add(Double.parseDouble(((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)), averages[2]);
-						averages[2] = 0;
-						counts[2] = 0;
-						iterCounts[2] = 0;
+		String[] names = new String[aggregates.getCountryCount()];
+		for(int i = 0; i < names.length; i++) {
+			names[i] = aggregates.getCountry(i);
+		}
+		Arrays.sort(names);
+		JList<String> list = new JList<>(names);
+		List<Integer> selected = new ArrayList<>();
+		List<String> shown = countries == DEFAULT_COUNTRIES ? defaultRegions(aggregates) : countries;
+		for(int i = 0; i < names.length; i++) {
+			if(shown.contains(names[i])) {
+				selected.add(i);
+			}
+		}
+		list.setSelectedIndices(selected.stream().mapToInt(Integer::intValue).toArray());
+		list.setVisibleRowCount(15);
+		int option = JOptionPane.showConfirmDialog(panel, new JScrollPane(list), "Choose Countries", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+		if(option == JOptionPane.OK_OPTION && !list.getSelectedValuesList().isEmpty()) {
+			countries = list.getSelectedValuesList();
+			updateModel();
+		}
+	}
+	
+	/**
+	 * Finds the regions of the default countries. A cube of cities (see {@link CityModel}) has no countries, so each
+	 * country is shown by its city with the most measurements.
+	 * @param aggregates  the cube read by the chart
+	 * @return the region of each default country
+	 */
+	static List<String> defaultRegions(CountryAggregates aggregates) {
+		List<String> regions = new ArrayList<>();
+		for(String country : DEFAULT_COUNTRIES) {
+			String region = country;
+			if(aggregates.getCountryId(country) < 0) {
+				int best = -1;
+				for(int i = 0; i < aggregates.getCountryCount(); i++) {
+					if(aggregates.getCountry(i).endsWith(" (" + country + ")") && (best < 0 || aggregates.getAll(i).count > aggregates.getAll(best).count)) {
+						best = i;
 					}
 				}
-				else if(View.getCountryTable().getModel().getValueAt(i, 3).equals(countries[3])) {
-					iterCounts[3] = iterCounts[3] + 1;
-					r.setSeriesPaint(3, new Color(255, 120, 0));
-					if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-						counts[3]++;
-						averages[3] = averages[3] + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1));
-					}
-					if(iterCounts[3] == 12) {
-						averages[3] = averages[3]/counts[3];
-						series[3].add(Double.parseDouble(((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)), averages[3]);
-						averages[3] = 0;
-						counts[3] = 0;
-						iterCounts[3] = 0;
-					}
+				if(best >= 0) {
+					region = aggregates.getCountry(best);
 				}
-				else if(View.getCountryTable().getModel().getValueAt(i, 3).equals(countries[4])) {
-					r.setSeriesPaint(4, Color.MAGENTA);
-					iterCounts[4] = iterCounts[4] + 1;
-					if((String)View.getCountryTable().getModel().getValueAt(i, 1) != null && !((String)View.getCountryTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-						counts[4]++;
-						averages[4] = averages[4] + Double.parseDouble((String)View.getCountryTable().getModel().getValueAt(i, 1));
-					}
-					if(iterCounts[4] == 12) {
-						averages[4] = averages[4]/counts[4];
-						series[4].add(Double.parseDouble(((String)View.getCountryTable().getModel().getValueAt(i, 0)).substring(0, 4)), averages[4]);
-						averages[4] = 0;
-						counts[4] = 0;
-						iterCounts[4] = 0;
+			}
+			regions.add(region);
+		}
+		return regions;
+	}
+	
+	/** Builds the data of the multi-series line chart for the chosen countries */
+	@Override
+	Runnable prepareModel() {
+		CountryAggregates aggregates = Main.getCountryAggregates();
+		final boolean defaults = this.countries == DEFAULT_COUNTRIES;
+		final List<String> countries = defaults ? defaultRegions(aggregates) : this.countries;
+		final int numSeries = countries.size();
+		
+		XYSeriesCollection dataset = new XYSeriesCollection();
+		XYSeries[] series = new XYSeries[numSeries];
+		for(int i = 0; i < numSeries; i++) {
+			series[i] = new XYSeries(countries.get(i));
+			int country = aggregates.getCountryId(countries.get(i));
+			if(country >= 0) {
+				// Avoid infinite values where the particular x-value doesn't exist
+				for(int year = Math.max(1900, aggregates.getFirstYear(country)); year <= aggregates.getLastYear(country); year++) {
+					CountryAggregates.Aggregate yearly = aggregates.getYear(country, year);
+					// Only plot years with all 12 months measured
+					if(yearly.count == 12) {
+						series[i].add(year, yearly.mean());
 					}
 				}
 			}
+			dataset.addSeries(series[i]);
 		}
 
 		for(int i = 0; i < numSeries; i++) {
-			double[] coefficients = Regression.getOLSRegression(dataset, i);
-			double b = coefficients[0]; // intercept
-			double m = coefficients[1]; // slope
-			XYSeries trend = new XYSeries(countries[i] + " Trend");
-			double x = series[i].getDataItem(0).getXValue();
-			trend.add(x, m * x + b);
-			x = series[i].getDataItem(series[i].getItemCount() - 1).getXValue();
-			trend.add(x, m * x + b);
-			//System.out.println(SwingUtilities.isEventDispatchThread()); // prints true
-			r.setSeriesStroke(i+numSeries, new BasicStroke(1.5f));
-			r.setSeriesPaint(i+numSeries, Color.BLACK);
-			r.setSeriesVisibleInLegend(i+numSeries, false, true);
+			XYSeries trend = new XYSeries(countries.get(i) + " Trend");
+			// A regression needs at least two points
+			if(series[i].getItemCount() >= 2) {
+				double[] coefficients = Regression.getOLSRegression(dataset, i);
+				double b = coefficients[0]; // intercept
+				double m = coefficients[1]; // slope
+				double x = series[i].getDataItem(0).getXValue();
+				trend.add(x, m * x + b);
+				x = series[i].getDataItem(series[i].getItemCount() - 1).getXValue();
+				trend.add(x, m * x + b);
+				// Prints out slope of trend line for each country:
+				//System.out.println(countries.get(i) + ": " + m);
+			}
 			dataset.addSeries(trend);
-			// Prints out slope of trend line for each country:
-			//System.out.println(countries[i] + ": " + m);
 		}
-
-		chart.setNotify(true);
+		
+		return () -> {
+			XYPlot plot = chart.getXYPlot();
+			XYLineAndShapeRenderer r = (XYLineAndShapeRenderer) plot.getRenderer();
+			
+			chart.setNotify(false);
+			r.clearSeriesPaints(false);
+			r.clearSeriesStrokes(false);
+			crosshairOverlay.clearRangeCrosshairs();
+			chart.setTitle(defaults ? "Average Temperature of Top 5 World Economies (1900-2012)" : "Average Temperature of Selected Countries (1900-2012)");
+			for(int i = 0; i < numSeries; i++) {
+				if(i < COLORS.length && COLORS[i] != null) {
+					r.setSeriesPaint(i, COLORS[i]);
+				}
+				r.setSeriesVisibleInLegend(i, true, false);
+				Crosshair yCrosshair = new Crosshair(Double.NaN, Color.GRAY, new BasicStroke(1f));
+				yCrosshair.setLabelVisible(true);
+				crosshairOverlay.addRangeCrosshair(yCrosshair);
+				r.setSeriesStroke(i+numSeries, new BasicStroke(1.5f));
+				r.setSeriesPaint(i+numSeries, Color.BLACK);
+				r.setSeriesVisibleInLegend(i+numSeries, false, true);
+			}
+			this.dataset = dataset;
+			plot.setDataset(dataset);
+			chart.setNotify(true);
+		};
 	}
 	
 }
@@ -0,0 +1,235 @@
+package com.secres;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Detects stalls of the Event Dispatch Thread.
+ * <P>
+ * The watchdog replaces the system <code>EventQueue</code> with one that times every event it dispatches. A daemon
+ * thread polls the event in progress; once it runs longer than the threshold, the thread captures the stack of the
+ * EDT, which shows what the event is stuck on. When the event finishes, a {@link Stall} with its type, duration and
+ * stack is kept for the diagnostics panel and appended to the log file. The thread also posts a probe event every
+ * {@link #PROBE_MILLIS} ms, so <code>edt.latency</code> in {@link Metrics} shows how long events wait in the queue.
+ * <P>
+ * Events that run a nested event loop, like a modal dialog, are not reported; the events of the nested loop are.
+ * <P>
+ * Settings: <code>-Dsecres.watchdog=false</code> disables it, <code>-Dsecres.watchdog.threshold</code> sets the
+ * threshold in ms (default 200), and <code>-Dsecres.watchdog.log</code> sets the log file
+ * (default <code>~/.secres/edt-stalls.log</code>).
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class EdtWatchdog extends EventQueue {
+
+	/** Whether the watchdog is installed at startup */
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("secres.watchdog", "true"));
+	/** Events running longer than this are stalls */
+	static final long THRESHOLD_MILLIS = Long.getLong("secres.watchdog.threshold", 200);
+	/** Log of the stalls */
+	static final Path LOG = Paths.get(System.getProperty("secres.watchdog.log", Paths.get(System.getProperty("user.home"), ".secres", "edt-stalls.log").toString()));
+	/** Interval of the latency probes */
+	static final long PROBE_MILLIS = 100;
+	/** Stalls kept for the diagnostics panel */
+	private static final int KEPT_STALLS = 200;
+
+	/**
+	 * An event that blocked the EDT for longer than the threshold.
+	 */
+	static final class Stall {
+
+		/** When the event started */
+		final Instant time;
+		/** Type and source of the event */
+		final String event;
+		final long durationMillis;
+		/** Stack of the EDT while the event was stalled, empty if the event ended before it could be captured */
+		final StackTraceElement[] stack;
+
+		Stall(Instant time, String event, long durationMillis, StackTraceElement[] stack) {
+			this.time = time;
+			this.event = event;
+			this.durationMillis = durationMillis;
+			this.stack = stack;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(time).append(" EDT stalled for ").append(durationMillis).append(" ms by ").append(event);
+			for(StackTraceElement element : stack) {
+				sb.append(System.lineSeparator()).append("\tat ").append(element);
+			}
+			return sb.toString();
+		}
+
+	}
+
+	private static EdtWatchdog installed;
+
+	/** Stalls waiting to be logged and published */
+	private final LinkedBlockingQueue<Stall> pending = new LinkedBlockingQueue<>();
+	/** Latest stalls, oldest first; only used on the EDT */
+	private final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+	/** Called on the EDT with every new stall */
+	private final List<Consumer<Stall>> listeners = new CopyOnWriteArrayList<>();
+	private final Metrics.Timer dispatchTimer = Metrics.timer("edt.dispatch");
+	private final Metrics.Timer latencyTimer = Metrics.timer("edt.latency");
+	private final Metrics.Counter stallCounter = Metrics.counter("edt.stalls");
+
+	/** Number of the event in progress, changes with every event */
+	private volatile long sequence;
+	/** Start of the event in progress, 0 while idle or in a nested event loop */
+	private volatile long startNanos;
+	/** The EDT of the event in progress */
+	private volatile Thread dispatchThread;
+	/** Stack captured by the watchdog thread for the event <code>stackSequence</code> */
+	private volatile StackTraceElement[] stack;
+	private volatile long stackSequence = -1;
+
+	private EdtWatchdog() {}
+
+	/** Replaces the system event queue and starts the watchdog thread, unless disabled or installed already. */
+	static synchronized void install() {
+		if(!ENABLED || installed != null) {
+			return;
+		}
+		installed = new EdtWatchdog();
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(installed);
+		Thread thread = new Thread(installed::watch, "secres-edt-watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** @return the installed watchdog, or <code>null</code> */
+	static synchronized EdtWatchdog get() {
+		return installed;
+	}
+
+	@Override
+	protected void dispatchEvent(AWTEvent event) {
+		long start = System.nanoTime();
+		long current = ++sequence;
+		dispatchThread = Thread.currentThread();
+		startNanos = start;
+		try {
+			super.dispatchEvent(event);
+		} finally {
+			// Idle, or back in the nested loop of an outer event, which is not timed
+			startNanos = 0;
+			long nanos = System.nanoTime() - start;
+			dispatchTimer.stop(start);
+			boolean nested = sequence != current;
+			if(!nested && nanos >= THRESHOLD_MILLIS * 1_000_000) {
+				StackTraceElement[] captured = stackSequence == current ? stack : new StackTraceElement[0];
+				pending.add(new Stall(Instant.now().minusNanos(nanos), describe(event), nanos / 1_000_000, captured));
+			}
+		}
+	}
+
+	/** @return the type, source and parameters of an event, shortened */
+	private static String describe(AWTEvent event) {
+		String source = event.getSource() == null ? "null" : event.getSource().getClass().getName();
+		String description = event.getClass().getSimpleName() + " from " + source + " [" + event.paramString() + "]";
+		return description.length() > 300 ? description.substring(0, 297) + "..." : description;
+	}
+
+	/** Loop of the watchdog thread: captures stacks of stalled events, probes the latency and logs stalls. */
+	private void watch() {
+		long poll = Math.max(THRESHOLD_MILLIS / 4, 5);
+		long nextProbe = 0;
+		while(true) {
+			try {
+				Thread.sleep(Math.min(poll, PROBE_MILLIS));
+			} catch(InterruptedException e) {
+				return;
+			}
+			long start = startNanos;
+			long current = sequence;
+			Thread thread = dispatchThread;
+			if(start != 0 && thread != null && stackSequence != current && System.nanoTime() - start >= THRESHOLD_MILLIS * 1_000_000) {
+				StackTraceElement[] captured = thread.getStackTrace();
+				// Only keep the stack if it still belongs to the same event
+				if(sequence == current && startNanos == start) {
+					stack = captured;
+					stackSequence = current;
+				}
+			}
+			long now = System.nanoTime();
+			if(now >= nextProbe) {
+				nextProbe = now + PROBE_MILLIS * 1_000_000;
+				SwingUtilities.invokeLater(() -> latencyTimer.stop(now));
+			}
+			publish();
+		}
+	}
+
+	/** Logs the pending stalls and hands them to the EDT. */
+	private void publish() {
+		List<Stall> stalls = new ArrayList<>();
+		pending.drainTo(stalls);
+		if(stalls.isEmpty()) {
+			return;
+		}
+		stallCounter.add(stalls.size());
+		try {
+			Files.createDirectories(LOG.toAbsolutePath().getParent());
+			try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(LOG, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+				for(Stall stall : stalls) {
+					out.println(stall);
+				}
+			}
+		} catch(IOException e) {
+			System.err.println("Cannot write " + LOG + ": " + e);
+		}
+		SwingUtilities.invokeLater(() -> {
+			for(Stall stall : stalls) {
+				this.stalls.addLast(stall);
+				if(this.stalls.size() > KEPT_STALLS) {
+					this.stalls.removeFirst();
+				}
+				for(Consumer<Stall> listener : listeners) {
+					listener.accept(stall);
+				}
+			}
+		});
+	}
+
+	/** @return the latest stalls, oldest first; must be called on the EDT */
+	List<Stall> getStalls() {
+		return new ArrayList<>(stalls);
+	}
+
+	/**
+	 * @param listener  called on the EDT with every new stall
+	 */
+	void addStallListener(Consumer<Stall> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener  a listener added before
+	 */
+	void removeStallListener(Consumer<Stall> listener) {
+		listeners.remove(listener);
+	}
+
+}
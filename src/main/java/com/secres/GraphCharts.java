@@ -5,46 +5,68 @@ package com.secres;
  * <P>
  * <code>GraphCharts</code> contains static methods for
  * returning the instances of each chart object.
+ * Each chart object is created on the first call of its method, so charts that are never shown cost nothing.
  * 
  * @author Pranav Amarnath
  *
  */
 public class GraphCharts {
-
-	private static BasicLineChart basicLineChart = new BasicLineChart();
-	private static AverageYearTempChart avgChart = new AverageYearTempChart();
-	private static SeasonsChart seasonsCharts = new SeasonsChart();
-	private static ThermometerAvgChart thermoChart = new ThermometerAvgChart();
-	private static AvgTempBarCountry singleBarChart = new AvgTempBarCountry();
-	private static AvgTempBarCountryChange doubleBarCharts = new AvgTempBarCountryChange();
-	private static EconomyAvgLineChart economyChart = new EconomyAvgLineChart();
-	
-	static BasicLineChart getBasicLineChart() {
+	
+	private static BasicLineChart basicLineChart;
+	private static AverageYearTempChart avgChart;
+	private static SeasonsChart seasonsCharts;
+	private static ThermometerAvgChart thermoChart;
+	private static AvgTempBarCountry singleBarChart;
+	private static AvgTempBarCountryChange doubleBarCharts;
+	private static EconomyAvgLineChart economyChart;
+	
+	static synchronized BasicLineChart getBasicLineChart() {
+		if(basicLineChart == null) {
+			basicLineChart = new BasicLineChart();
+		}
 		return basicLineChart;
 	}
 	
-	static AverageYearTempChart getAvgChart() {
+	static synchronized AverageYearTempChart getAvgChart() {
+		if(avgChart == null) {
+			avgChart = new AverageYearTempChart();
+		}
 		return avgChart;
 	}
 	
-	static SeasonsChart getSeasonsCharts() {
+	static synchronized SeasonsChart getSeasonsCharts() {
+		if(seasonsCharts == null) {
+			seasonsCharts = new SeasonsChart();
+		}
 		return seasonsCharts;
 	}
 	
-	static ThermometerAvgChart getThermometerChart() {
+	static synchronized ThermometerAvgChart getThermometerChart() {
+		if(thermoChart == null) {
+			thermoChart = new ThermometerAvgChart();
+		}
 		return thermoChart;
 	}
 	
-	static AvgTempBarCountry getBarChart() {
+	static synchronized AvgTempBarCountry getBarChart() {
+		if(singleBarChart == null) {
+			singleBarChart = new AvgTempBarCountry();
+		}
 		return singleBarChart;
 	}
 	
-	static AvgTempBarCountryChange getBarChartChange() {
+	static synchronized AvgTempBarCountryChange getBarChartChange() {
+		if(doubleBarCharts == null) {
+			doubleBarCharts = new AvgTempBarCountryChange();
+		}
 		return doubleBarCharts;
 	}
 	
-	static EconomyAvgLineChart getEconomyChart() {
+	static synchronized EconomyAvgLineChart getEconomyChart() {
+		if(economyChart == null) {
+			economyChart = new EconomyAvgLineChart();
+		}
 		return economyChart;
 	}
-	
+
 }
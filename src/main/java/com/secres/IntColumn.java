@@ -0,0 +1,300 @@
+package com.secres;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A column of <code>int</code> values of a {@link ColumnStore}: packed dates or dictionary ids.
+ * <P>
+ * Three encodings are available, {@link #encode(int, LongBuffer)} picks the smallest:
+ * <ul>
+ * <li>{@link #PLAIN} - one <code>int</code> per row</li>
+ * <li>{@link #RUNS} - runs of rows where the value grows by a fixed step. Monthly dates of one region are a single
+ * run with step 1 and the country id of a country file sorted by country is a single run with step 0. A value is
+ * found by binary search over the run starts, skipped while rows are read in order</li>
+ * <li>{@link #PACKED} - the offset of each value from the smallest one, in as few bits as it needs</li>
+ * </ul>
+ * Missing cells have no value of their own and take whatever value suits the encoding best.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class IntColumn {
+
+	/** Encoding with one <code>int</code> per row */
+	static final byte PLAIN = 0;
+	/** Encoding with runs of a fixed step */
+	static final byte RUNS = 1;
+	/** Encoding with bit-packed offsets */
+	static final byte PACKED = 2;
+
+	private final byte encoding;
+	/** Values of a {@link #PLAIN} column */
+	private final IntBuffer values;
+	/** First row of each run and the row count at the end, for {@link #RUNS} */
+	private final int[] runStarts;
+	/** Value at the first row of each run */
+	private final int[] runValues;
+	/** Step between the rows of each run */
+	private final int[] runSteps;
+	/** Last run found; a stale value from another thread only costs a search */
+	private int hint;
+	/** Smallest value of a {@link #PACKED} column */
+	private final int base;
+	/** Offsets from {@link #base} */
+	private final PackedBits offsets;
+
+	private IntColumn(byte encoding, IntBuffer values, int[] runStarts, int[] runValues, int[] runSteps, int base, PackedBits offsets) {
+		this.encoding = encoding;
+		this.values = values;
+		this.runStarts = runStarts;
+		this.runValues = runValues;
+		this.runSteps = runSteps;
+		this.base = base;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * @param values  one value per row
+	 * @return a {@link #PLAIN} column reading <code>values</code>
+	 */
+	static IntColumn of(IntBuffer values) {
+		return new IntColumn(PLAIN, values, null, null, null, 0, null);
+	}
+
+	/**
+	 * @param row  the row index
+	 * @return the value
+	 */
+	int get(int row) {
+		switch(encoding) {
+			case RUNS:
+				int run = hint;
+				if(row < runStarts[run] || row >= runStarts[run + 1]) {
+					run = Arrays.binarySearch(runStarts, 0, runValues.length, row);
+					if(run < 0) {
+						run = -run - 2;
+					}
+					hint = run;
+				}
+				return runValues[run] + runSteps[run] * (row - runStarts[run]);
+			case PACKED:
+				return base + (int) offsets.get(row);
+			default:
+				return values.get(row);
+		}
+	}
+
+	/**
+	 * Decodes consecutive values into an array, faster than {@link #get(int)} for each row.
+	 * @param from  the first row
+	 * @param destination  the array
+	 * @param offset  the index in <code>destination</code> of the first row
+	 * @param length  the number of rows
+	 */
+	void copyTo(int from, int[] destination, int offset, int length) {
+		switch(encoding) {
+			case RUNS:
+				int run = Arrays.binarySearch(runStarts, 0, runValues.length, from);
+				if(run < 0) {
+					run = -run - 2;
+				}
+				for(int row = from; row < from + length; run++) {
+					int end = Math.min(runStarts[run + 1], from + length);
+					int value = runValues[run] + runSteps[run] * (row - runStarts[run]);
+					int step = runSteps[run];
+					for(; row < end; row++, value += step) {
+						destination[offset + row - from] = value;
+					}
+				}
+				break;
+			case PACKED:
+				for(int row = 0; row < length; row++) {
+					destination[offset + row] = base + (int) offsets.get(from + row);
+				}
+				break;
+			default:
+				IntBuffer source = values.duplicate();
+				source.position(from);
+				source.get(destination, offset, length);
+				break;
+		}
+	}
+
+	/** @return the encoding, one of {@link #PLAIN}, {@link #RUNS} or {@link #PACKED} */
+	byte getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Picks the smallest encoding for the values of this column.
+	 * @param rows  the number of rows
+	 * @param nulls  the null bitmap, <code>null</code> if no cell is missing
+	 * @return the column in its smallest encoding, on the heap
+	 */
+	IntColumn encode(int rows, LongBuffer nulls) {
+		// Missing cells continue the last step, so they never break a run
+		int[] filled = new int[rows];
+		int step = 0;
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for(int row = 0; row < rows; row++) {
+			boolean missing = nulls != null && (nulls.get(row >>> 6) & (1L << row)) != 0;
+			if(missing) {
+				filled[row] = row == 0 ? 0 : filled[row - 1] + step;
+			}
+			else {
+				filled[row] = get(row);
+				step = row == 0 ? 0 : filled[row] - filled[row - 1];
+			}
+			min = Math.min(min, filled[row]);
+			max = Math.max(max, filled[row]);
+		}
+		int runs = 0;
+		for(int row = 0; row < rows; runs++) {
+			row = runEnd(filled, row);
+		}
+		int bits = rows == 0 ? 0 : PackedBits.bitsFor(max - min);
+		long runBytes = 12L * runs + 4;
+		long packedBytes = bits < 32 ? PackedBits.bytes(rows, bits) : Long.MAX_VALUE;
+		long plainBytes = 4L * rows;
+		if(runBytes <= packedBytes && runBytes < plainBytes) {
+			int[] runStarts = new int[runs + 1];
+			int[] runValues = new int[runs];
+			int[] runSteps = new int[runs];
+			int run = 0;
+			for(int row = 0; row < rows; run++) {
+				int end = runEnd(filled, row);
+				runStarts[run] = row;
+				runValues[run] = filled[row];
+				runSteps[run] = end - row > 1 ? filled[row + 1] - filled[row] : 0;
+				row = end;
+			}
+			runStarts[runs] = rows;
+			return new IntColumn(RUNS, null, runStarts, runValues, runSteps, 0, null);
+		}
+		if(packedBytes < plainBytes) {
+			PackedBits offsets = PackedBits.allocate(rows, bits);
+			for(int row = 0; row < rows; row++) {
+				offsets.set(row, filled[row] - min);
+			}
+			return new IntColumn(PACKED, null, null, null, null, (int) min, offsets);
+		}
+		return of(IntBuffer.wrap(filled));
+	}
+
+	/** @return the end of the run starting at <code>row</code> */
+	private static int runEnd(int[] values, int row) {
+		if(row + 1 >= values.length) {
+			return values.length;
+		}
+		int step = values[row + 1] - values[row];
+		int end = row + 2;
+		while(end < values.length && values[end] - values[end - 1] == step) {
+			end++;
+		}
+		return end;
+	}
+
+	/** @return the bytes of the values */
+	long bytes() {
+		switch(encoding) {
+			case RUNS:
+				return 12L * runValues.length + 4;
+			case PACKED:
+				return offsets.bytes();
+			default:
+				return 4L * values.limit();
+		}
+	}
+
+	/** @return a copy in direct buffers, see {@link ColumnMemory}; run tables are small and stay on the heap */
+	IntColumn offHeap() {
+		switch(encoding) {
+			case RUNS:
+				return this;
+			case PACKED:
+				return new IntColumn(PACKED, null, null, null, null, base, offsets.offHeap());
+			default:
+				IntBuffer copy = ColumnMemory.allocateInts(values.limit(), true);
+				copy.put(values.duplicate()).flip();
+				return of(copy);
+		}
+	}
+
+	/** @return the number of bytes {@link #writeTo(ByteBuffer)} needs */
+	long encodedSize() {
+		switch(encoding) {
+			case RUNS:
+				return 5 + 12L * runValues.length;
+			case PACKED:
+				return 5 + offsets.encodedSize();
+			default:
+				return 1 + 4L * values.limit();
+		}
+	}
+
+	/**
+	 * @param out  the destination
+	 */
+	void writeTo(ByteBuffer out) {
+		out.put(encoding);
+		switch(encoding) {
+			case RUNS:
+				out.putInt(runValues.length);
+				for(int run = 0; run < runValues.length; run++) {
+					out.putInt(runStarts[run]);
+					out.putInt(runValues[run]);
+					out.putInt(runSteps[run]);
+				}
+				break;
+			case PACKED:
+				out.putInt(base);
+				offsets.writeTo(out);
+				break;
+			default:
+				out.asIntBuffer().put(values.duplicate());
+				out.position(out.position() + 4 * values.limit());
+				break;
+		}
+	}
+
+	/**
+	 * @param in  the source, positioned at the column
+	 * @param rows  the number of rows
+	 * @param direct  whether to read the values outside the heap
+	 * @return the column
+	 */
+	static IntColumn readFrom(ByteBuffer in, int rows, boolean direct) {
+		byte encoding = in.get();
+		switch(encoding) {
+			case RUNS:
+				int runs = in.getInt();
+				int[] runStarts = new int[runs + 1];
+				int[] runValues = new int[runs];
+				int[] runSteps = new int[runs];
+				for(int run = 0; run < runs; run++) {
+					runStarts[run] = in.getInt();
+					runValues[run] = in.getInt();
+					runSteps[run] = in.getInt();
+				}
+				runStarts[runs] = rows;
+				return new IntColumn(RUNS, null, runStarts, runValues, runSteps, 0, null);
+			case PACKED:
+				int base = in.getInt();
+				return new IntColumn(PACKED, null, null, null, null, base, PackedBits.readFrom(in, direct));
+			case PLAIN:
+				IntBuffer values = ColumnMemory.allocateInts(rows, direct);
+				IntBuffer source = in.asIntBuffer();
+				source.limit(rows);
+				values.put(source).flip();
+				in.position(in.position() + 4 * rows);
+				return of(values);
+			default:
+				throw new IllegalArgumentException("Unknown column encoding " + encoding);
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.secres;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.swing.JPanel;
+
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.event.ChartProgressEvent;
+
+/**
+ * A chart of {@link GraphCharts} whose cards are only created the first time one of them is shown in {@link View}.
+ * <P>
+ * The chart's data can be prefetched: {@link #prefetch()} schedules {@link AbstractGraph#prepareModel()} on the
+ * {@link LoadScheduler} after the load stage it reads, without creating any Swing component, and {@link #show(JPanel)}
+ * installs the result once the cards exist, unless {@link AbstractGraph#updateModel()} installed newer data meanwhile.
+ * All methods are called on the EDT.
+ * <P>
+ * Building, installing and every redraw of the chart are timed in {@link Metrics}.
+ *
+ * @param <T>  the chart class
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class LazyChart<T extends AbstractGraph> {
+
+	/** Returns the chart object, creating it on first use */
+	private final Supplier<T> chart;
+	/** Load stage producing the data the chart reads */
+	private final CompletableFuture<?> input;
+	/** Card names and the views creating them */
+	private final Map<String, Function<T, JPanel>> cards = new LinkedHashMap<>();
+	/** Data being built or built, <code>null</code> until prefetched or shown */
+	private CompletableFuture<Runnable> model;
+	/** Whether the cards have been created */
+	private boolean shown;
+
+	/**
+	 * @param chart  returns the chart object
+	 * @param input  the load stage the chart's data depends on
+	 */
+	LazyChart(Supplier<T> chart, CompletableFuture<?> input) {
+		this.chart = chart;
+		this.input = input;
+	}
+
+	/**
+	 * Adds a card of the chart.
+	 * @param name  the card name in the <code>CardLayout</code>
+	 * @param view  creates the card, e.g. <code>updateView</code>
+	 * @return this chart
+	 */
+	LazyChart<T> card(String name, Function<T, JPanel> view) {
+		cards.put(name, view);
+		return this;
+	}
+
+	/** @return the card names */
+	Set<String> getCards() {
+		return cards.keySet();
+	}
+
+	/** @return whether the cards have been created */
+	boolean isShown() {
+		return shown;
+	}
+
+	/** Starts building the chart's data in the background once its input exists, unless it has been started already. */
+	void prefetch() {
+		if(model == null) {
+			T chart = this.chart.get();
+			int generation = chart.getGeneration();
+			model = Main.getScheduler().then(input, data -> {
+				LoadProgress.Task progress = LoadProgress.start(chart.getClass().getSimpleName(), LoadProgress.Phase.CHART, 1);
+				Runnable install = chart.prepareModelTimed();
+				progress.finish();
+				return () -> {
+					if(chart.getGeneration() == generation) {
+						install.run();
+					}
+				};
+			});
+		}
+	}
+
+	/**
+	 * Creates the cards of the chart, unless they exist already, and installs the data once it is built.
+	 * @param cardsPanel  the panel with the <code>CardLayout</code>
+	 */
+	void show(JPanel cardsPanel) {
+		if(shown) {
+			return;
+		}
+		shown = true;
+		T chart = this.chart.get();
+		for(Map.Entry<String, Function<T, JPanel>> card : cards.entrySet()) {
+			JPanel panel = card.getValue().apply(chart);
+			timeRepaints(panel, Metrics.timer("chart.repaint/" + card.getKey()));
+			cardsPanel.add(panel, card.getKey());
+		}
+		prefetch();
+		model.thenAcceptAsync(Runnable::run, LoadScheduler.EDT).whenComplete((v, e) -> {
+			if(e != null) {
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	/**
+	 * Records the time of every redraw of the charts in a card.
+	 * @param component  the card or one of its children
+	 * @param timer  the card's timer
+	 */
+	private static void timeRepaints(Component component, Metrics.Timer timer) {
+		if(component instanceof ChartPanel && ((ChartPanel) component).getChart() != null) {
+			long[] start = new long[1];
+			// Called on the EDT around every draw of the chart
+			((ChartPanel) component).getChart().addProgressListener(e -> {
+				if(e.getType() == ChartProgressEvent.DRAWING_STARTED) {
+					start[0] = timer.start();
+				}
+				else if(e.getType() == ChartProgressEvent.DRAWING_FINISHED && start[0] != 0) {
+					timer.stop(start[0]);
+					start[0] = 0;
+				}
+			});
+		}
+		else if(component instanceof Container) {
+			for(Component child : ((Container) component).getComponents()) {
+				timeRepaints(child, timer);
+			}
+		}
+	}
+
+}
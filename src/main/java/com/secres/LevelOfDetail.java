@@ -0,0 +1,221 @@
+package com.secres;
+
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.Range;
+
+/**
+ * A level-of-detail layer that keeps a line chart's dataset at about one point per pixel.
+ * <P>
+ * The full-resolution {@link ArrayXYDataset} stays in memory, and the plot is given a copy with only the items in the
+ * visible domain range, downsampled with Largest-Triangle-Three-Buckets (LTTB) to the width of the panel. LTTB keeps the
+ * points that shape the line, so peaks and troughs survive. Whenever the domain axis changes, by mouse-wheel zoom,
+ * drag zoom, pan or restoring the auto bounds, or the panel is resized, the visible range is sampled again. Repaint
+ * cost is therefore bounded by the screen width instead of the size of the data.
+ * <P>
+ * Given a {@link TimePyramid} instead, the layer first picks the finest precomputed level that fits the visible range
+ * into the panel, so a zoomed-out chart shows yearly or decadal averages and a zoomed-in chart shows the months.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class LevelOfDetail implements AxisChangeListener {
+
+	/** Sampled points per pixel of the data area */
+	private static final double POINTS_PER_PIXEL = 1.0;
+	/** Sample size while the panel has no size yet */
+	private static final int DEFAULT_POINTS = 1000;
+
+	private final ChartPanel panel;
+	private final XYPlot plot;
+	private final int datasetIndex;
+	private ArrayXYDataset source;
+	/** Levels to choose the source from, or <code>null</code> */
+	private TimePyramid pyramid;
+	/** Level of the current sample, or <code>null</code> without a pyramid */
+	private TimePyramid.Resolution resolution;
+	/** Guards against the axis change caused by our own dataset change */
+	private boolean sampling;
+	/** Visible range and sample size of the current sample */
+	private Range sampledRange;
+	private int sampledPoints;
+
+	private LevelOfDetail(ChartPanel panel, int datasetIndex) {
+		this.panel = panel;
+		this.plot = panel.getChart().getXYPlot();
+		this.datasetIndex = datasetIndex;
+	}
+
+	/**
+	 * Installs a level-of-detail layer on a chart panel.
+	 * @param panel  the panel of an XY chart
+	 * @param datasetIndex  the index of the plot dataset to sample
+	 * @return the layer, to give it data with {@link #setSource(ArrayXYDataset)}
+	 */
+	static LevelOfDetail install(ChartPanel panel, int datasetIndex) {
+		LevelOfDetail lod = new LevelOfDetail(panel, datasetIndex);
+		lod.plot.getDomainAxis().addChangeListener(lod);
+		panel.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				lod.resample();
+			}
+		});
+		return lod;
+	}
+
+	/**
+	 * Replaces the full-resolution data and shows a sample of it.
+	 * @param source  the full-resolution data, with ascending x values
+	 */
+	void setSource(ArrayXYDataset source) {
+		this.source = source;
+		this.pyramid = null;
+		sampledRange = null;
+		resample();
+	}
+
+	/**
+	 * Replaces the data with the levels of a pyramid and shows a sample of the level that fits the visible range.
+	 * @param pyramid  the levels
+	 */
+	void setPyramid(TimePyramid pyramid) {
+		this.pyramid = pyramid;
+		this.source = null;
+		sampledRange = null;
+		resample();
+	}
+
+	/** @return the full-resolution data, the finest level of a pyramid */
+	ArrayXYDataset getSource() {
+		return pyramid == null ? source : pyramid.getLevel(TimePyramid.Resolution.MONTH);
+	}
+
+	/** @return the level shown, or <code>null</code> without a pyramid */
+	TimePyramid.Resolution getResolution() {
+		return resolution;
+	}
+
+	@Override
+	public void axisChanged(AxisChangeEvent event) {
+		resample();
+	}
+
+	/** Samples the visible range again, unless it has been sampled at this size already. */
+	void resample() {
+		if((source == null && pyramid == null) || sampling) {
+			return;
+		}
+		ValueAxis axis = plot.getDomainAxis();
+		// After a restore the axis auto-ranges on the current sample, so widen it to all data
+		Range visible = axis.isAutoRange() ? null : axis.getRange();
+		int width = (int) panel.getScreenDataArea().getWidth();
+		int points = width > 0 ? (int) (width * POINTS_PER_PIXEL) : DEFAULT_POINTS;
+		if(points == sampledPoints && (visible == null ? sampledRange == null : visible.equals(sampledRange)) && plot.getDataset(datasetIndex) != null) {
+			return;
+		}
+		sampling = true;
+		try {
+			ArrayXYDataset data = source;
+			if(pyramid != null) {
+				// A lookup of a precomputed level, the rows are not aggregated again
+				resolution = pyramid.choose(visible, points);
+				data = pyramid.getLevel(resolution);
+			}
+			plot.setDataset(datasetIndex, sample(data, visible, points));
+			sampledRange = visible;
+			sampledPoints = points;
+		} finally {
+			sampling = false;
+		}
+	}
+
+	/**
+	 * Downsamples every series of a dataset.
+	 * @param source  the full-resolution data, with ascending x values
+	 * @param visible  the visible domain range, or <code>null</code> for all data
+	 * @param points  the number of points to keep per series
+	 * @return the sample, keeping one point beyond each end of the range so lines run to the edges
+	 */
+	static ArrayXYDataset sample(ArrayXYDataset source, Range visible, int points) {
+		int[][] items = new int[source.getSeriesCount()][];
+		for(int series = 0; series < items.length; series++) {
+			int from = 0;
+			int to = source.getItemCount(series);
+			if(visible != null) {
+				from = Math.max(source.indexOf(series, visible.getLowerBound()) - 1, 0);
+				to = Math.min(source.indexOf(series, visible.getUpperBound()) + 1, to);
+			}
+			items[series] = lttb(source, series, from, to, points);
+		}
+		return source.select(items);
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets: keeps the first and last item, and from each bucket in between the item
+	 * forming the largest triangle with the item kept from the previous bucket and the average of the next bucket.
+	 * @param data  the data
+	 * @param series  the series
+	 * @param from  the first item, inclusive
+	 * @param to  the last item, exclusive
+	 * @param threshold  the number of items to keep
+	 * @return the indices of the kept items, ascending
+	 */
+	static int[] lttb(ArrayXYDataset data, int series, int from, int to, int threshold) {
+		int n = to - from;
+		if(n <= threshold || threshold < 3) {
+			int[] all = new int[Math.max(n, 0)];
+			for(int i = 0; i < all.length; i++) {
+				all[i] = from + i;
+			}
+			return all;
+		}
+		int[] kept = new int[threshold];
+		double every = (double) (n - 2) / (threshold - 2);
+		int a = from;
+		kept[0] = a;
+		for(int bucket = 0; bucket < threshold - 2; bucket++) {
+			// Average of the next bucket
+			int nextStart = from + (int) ((bucket + 1) * every) + 1;
+			int nextEnd = Math.min(from + (int) ((bucket + 2) * every) + 1, to);
+			double avgX = 0;
+			double avgY = 0;
+			for(int i = nextStart; i < nextEnd; i++) {
+				avgX += data.getXValue(series, i);
+				avgY += data.getYValue(series, i);
+			}
+			int length = Math.max(nextEnd - nextStart, 1);
+			avgX /= length;
+			avgY /= length;
+			if(nextEnd <= nextStart) {
+				avgX = data.getXValue(series, to - 1);
+				avgY = data.getYValue(series, to - 1);
+			}
+			// Item of this bucket with the largest triangle
+			int start = from + (int) (bucket * every) + 1;
+			int end = nextStart;
+			double ax = data.getXValue(series, a);
+			double ay = data.getYValue(series, a);
+			double maxArea = -1;
+			int chosen = start;
+			for(int i = start; i < end; i++) {
+				double area = Math.abs((ax - avgX) * (data.getYValue(series, i) - ay) - (ax - data.getXValue(series, i)) * (avgY - ay));
+				if(area > maxArea) {
+					maxArea = area;
+					chosen = i;
+				}
+			}
+			kept[bucket + 1] = chosen;
+			a = chosen;
+		}
+		kept[threshold - 1] = to - 1;
+		return kept;
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.secres;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe bookkeeping of the startup load pipeline.
+ * <P>
+ * Every unit of work registers a {@link Task} for one dataset and one {@link Phase}, and reports the bytes, rows or
+ * charts it has processed. The datasets read at startup {@link #expect(String, Phase)} their tasks before they start,
+ * so the progress of a phase counts tasks that have not started yet and only moves forward. {@link Main} polls {@link #fraction()} and {@link #etaMillis()} to drive the splash screen,
+ * and with <code>-Dsecres.progress.summary=true</code> prints {@link #summary()} once startup is done, so it is visible
+ * where the time went.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class LoadProgress {
+
+	/** Whether {@link #summary()} is printed once startup is done, selected at startup */
+	static final boolean PRINT_SUMMARY = Boolean.getBoolean("secres.progress.summary");
+
+	/** Stages of the load pipeline, with their share of the progress bar */
+	enum Phase {
+		/** Reading a CSV or snapshot, counted in bytes */
+		PARSE("bytes", 0.7),
+		/** Aggregating rows for the charts, counted in rows */
+		AGGREGATE("rows", 0.1),
+		/** Building chart datasets, counted in charts */
+		CHART("charts", 0.2);
+
+		/** Unit of the work counters */
+		final String unit;
+		/** Share of the overall progress */
+		final double weight;
+
+		Phase(String unit, double weight) {
+			this.unit = unit;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Progress of one phase of one dataset.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static final class Task {
+
+		final String dataset;
+		final Phase phase;
+		final long total;
+		private final AtomicLong done = new AtomicLong();
+		private final long startNanos = System.nanoTime();
+		private volatile long endNanos;
+
+		private Task(String dataset, Phase phase, long total) {
+			this.dataset = dataset;
+			this.phase = phase;
+			this.total = Math.max(total, 1);
+		}
+
+		/**
+		 * Reports processed work.
+		 * @param units  bytes, rows or charts processed since the last call
+		 */
+		void add(long units) {
+			done.addAndGet(units);
+		}
+
+		/** Marks the task as complete. */
+		void finish() {
+			done.set(total);
+			endNanos = System.nanoTime();
+		}
+
+		/** @return the processed units */
+		long getDone() {
+			return Math.min(done.get(), total);
+		}
+
+		/** @return whether {@link #finish()} was called */
+		boolean isFinished() {
+			return endNanos != 0;
+		}
+
+		/** @return the time spent so far, or in total once finished */
+		long getElapsedMillis() {
+			return ((isFinished() ? endNanos : System.nanoTime()) - startNanos) / 1_000_000;
+		}
+
+		@Override
+		public String toString() {
+			return phase.name().toLowerCase() + " " + dataset + " (" + (100 * getDone() / total) + "%)";
+		}
+
+	}
+
+	/** All tasks in start order */
+	private static final List<Task> TASKS = new CopyOnWriteArrayList<>();
+	/** Keys of the tasks of the startup pipeline, see {@link #key(String, Phase)} */
+	private static final Set<String> EXPECTED = ConcurrentHashMap.newKeySet();
+	/** Start of the pipeline */
+	private static final long START = System.nanoTime();
+
+	private LoadProgress() {}
+
+	/**
+	 * Registers a new task.
+	 * @param dataset  the dataset name
+	 * @param phase  the phase
+	 * @param total  the work in the phase's unit
+	 * @return the task to report to
+	 */
+	static Task start(String dataset, Phase phase, long total) {
+		Task task = new Task(dataset, phase, total);
+		TASKS.add(task);
+		return task;
+	}
+
+	/**
+	 * Announces a task of the startup pipeline before its size is known, so {@link #fraction()} waits for it.
+	 * @param dataset  the dataset name
+	 * @param phase  the phase
+	 */
+	static void expect(String dataset, Phase phase) {
+		EXPECTED.add(key(dataset, phase));
+	}
+
+	/**
+	 * Withdraws an expected task that will not run, e.g. the aggregation of a dataset without countries.
+	 * @param dataset  the dataset name
+	 * @param phase  the phase
+	 */
+	static void skip(String dataset, Phase phase) {
+		EXPECTED.remove(key(dataset, phase));
+	}
+
+	private static String key(String dataset, Phase phase) {
+		return phase.name() + "/" + dataset;
+	}
+
+	/**
+	 * Each expected task counts the same within its phase, whatever its size, since the size of a task is only known
+	 * once it starts. Phases without expected tasks, like the charts built after startup, are left out.
+	 * @return the progress of the startup pipeline between 0 and 1, weighted by {@link Phase#weight}
+	 */
+	static double fraction() {
+		double fraction = 0;
+		double weights = 0;
+		for(Phase phase : Phase.values()) {
+			int tasks = 0;
+			double done = 0;
+			for(String key : EXPECTED) {
+				if(key.startsWith(phase.name() + "/")) {
+					tasks++;
+				}
+			}
+			if(tasks == 0) {
+				continue;
+			}
+			for(Task task : TASKS) {
+				if(task.phase == phase && EXPECTED.contains(key(task.dataset, phase))) {
+					done += (double) task.getDone() / task.total;
+				}
+			}
+			fraction += phase.weight * done / tasks;
+			weights += phase.weight;
+		}
+		return weights == 0 ? 0 : fraction / weights;
+	}
+
+	/** @return the estimated remaining time from the measured throughput, or -1 before enough work has been measured */
+	static long etaMillis() {
+		double fraction = fraction();
+		if(fraction < 0.02) {
+			return -1;
+		}
+		long elapsed = (System.nanoTime() - START) / 1_000_000;
+		return (long) (elapsed * (1 - fraction) / fraction);
+	}
+
+	/** @return the most recently started unfinished task, or <code>null</code> */
+	static Task current() {
+		for(int i = TASKS.size() - 1; i >= 0; i--) {
+			Task task = TASKS.get(i);
+			if(!task.isFinished()) {
+				return task;
+			}
+		}
+		return null;
+	}
+
+	/** @return one line per task with its work, time and throughput */
+	static String summary() {
+		StringBuilder sb = new StringBuilder("Startup took " + (System.nanoTime() - START) / 1_000_000 + " ms");
+		for(Task task : TASKS) {
+			long millis = Math.max(task.getElapsedMillis(), 1);
+			sb.append(String.format("%n  %-9s %-40s %,12d %-6s %,7d ms %,14d %s/s", task.phase.name().toLowerCase(), task.dataset, task.getDone(), task.phase.unit, millis, task.getDone() * 1000 / millis, task.phase.unit));
+		}
+		return sb.toString();
+	}
+
+}
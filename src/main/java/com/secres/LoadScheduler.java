@@ -0,0 +1,92 @@
+package com.secres;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the load pipeline as a graph of <code>CompletableFuture</code> stages on one thread pool.
+ * <P>
+ * Each stage starts as soon as the stages it depends on have completed, not in a fixed order:
+ * <pre>
+ * open CSV -&gt; read {@link ColumnStore} -&gt; build {@link CountryAggregates}
+ *                                  \--&gt; chart data ({@link AbstractGraph#prepareModel()}) -&gt; install on the EDT
+ * </pre>
+ * Datasets load in parallel, and a failed stage fails only the stages that depend on it. The pool is a
+ * {@link ForkJoinPool} so that {@link CsvScanner} can split a file into chunks on the same threads without starving
+ * them. Its size is set with <code>-Dsecres.threads</code> and defaults to the number of processors.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class LoadScheduler {
+
+	/** Threads of the pool selected at startup */
+	static final int THREADS = Integer.getInteger("secres.threads", Runtime.getRuntime().availableProcessors());
+	/** Runs a stage on the EDT */
+	static final Executor EDT = SwingUtilities::invokeLater;
+
+	/**
+	 * The work of a stage.
+	 *
+	 * @param <T>  the input
+	 * @param <R>  the result
+	 */
+	@FunctionalInterface
+	interface Stage<T, R> {
+		R apply(T input) throws Exception;
+	}
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param threads  the number of threads
+	 */
+	LoadScheduler(int threads) {
+		pool = new ForkJoinPool(Math.max(threads, 1), p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName("secres-loader-" + thread.getPoolIndex());
+			return thread;
+		}, null, false);
+	}
+
+	/** @return the pool, to split a stage into parallel tasks */
+	ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Starts a stage without inputs.
+	 * @param task  the work
+	 * @return the result
+	 */
+	<T> CompletableFuture<T> submit(Callable<T> task) {
+		return CompletableFuture.supplyAsync(() -> call(task), pool);
+	}
+
+	/**
+	 * Starts a stage once its input exists.
+	 * @param input  the input stage
+	 * @param stage  the work
+	 * @return the result, failed without running the work if the input failed
+	 */
+	<T, R> CompletableFuture<R> then(CompletableFuture<T> input, Stage<? super T, R> stage) {
+		return input.thenApplyAsync(value -> call(() -> stage.apply(value)), pool);
+	}
+
+	private static <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch(RuntimeException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+}
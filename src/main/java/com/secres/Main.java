@@ -4,6 +4,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.*;
 
@@ -14,6 +15,7 @@ import com.formdev.flatlaf.*;
  * <P>
  * This class serves as the Controller, first initializing the splash screen and then notifying
  * {@link GraphCharts} to update the <code>ChartPanel</code> of each <code>JFreeChart</code>.
+ * Datasets, aggregates and chart data are built by the stages of a {@link LoadScheduler}; chart data is installed on the EDT when ready.
  * <P>
  * The code also sets {@link System} and {@link UIManager} properties.<br>
  * As the Controller class, <code>Main</code> creates the {@link Model}s and {@link View}
@@ -25,13 +27,17 @@ public class Main {
 
 	/** Table names */
 	private static Model modelGlobal, modelCountry;
+	/** Out-of-core city data, <code>null</code> unless a rollup is selected with <code>-Dsecres.city</code> */
+	private static CityModel modelCity;
 	//private static View view;
 	/** Splash screen */
 	private static JWindow splash;
 	/** Progress bar in Splash screen */
 	private static JProgressBar pb;
-	/** Time for read/splash */
-	private int seconds = 3;
+	/** Polls {@link LoadProgress} for the splash screen */
+	private static Timer progressTimer;
+	/** Runs the load stages and builds chart data off the EDT */
+	private static final LoadScheduler scheduler = new LoadScheduler(LoadScheduler.THREADS);
 	
 	/** Default Constructor - reads images, creates {@link Model}s */
 	public Main() {
@@ -48,8 +54,20 @@ public class Main {
 			splash.setIconImage(image);
 		}
 		
-		modelGlobal = new Model("/GlobalTemperatures.csv");
-		modelCountry = new Model("/GlobalLandTemperaturesByCountry.csv");
+		// Both datasets load in parallel; each one is aggregated as soon as it is read
+		modelGlobal = new Model("/GlobalTemperatures.csv", scheduler);
+		modelCountry = new Model("/GlobalLandTemperaturesByCountry.csv", scheduler);
+		if(CityModel.ENABLED) {
+			if(Model.locate(CityModel.PATH) != null) {
+				modelCity = new CityModel(CityModel.PATH, scheduler);
+			}
+			else {
+				System.err.println("-Dsecres.city is set but " + CityModel.PATH + " was not found, the country charts read the country dataset");
+			}
+		}
+		createView();
+		CompletableFuture<Void> city = modelCity != null ? modelCity.getLoaded() : CompletableFuture.completedFuture(null);
+		CompletableFuture.allOf(modelGlobal.getLoaded(), modelCountry.getLoaded(), city).thenRunAsync(Main::verifyReadFinished, LoadScheduler.EDT);
 	}
 	
 	/** Initializes the splash screen with necessary Swing components */
@@ -65,24 +83,31 @@ public class Main {
 		JLabel img = new JLabel(icon);
 		splashPanel.add(img);
 		
-		JLabel estTime = new JLabel("Est. Time Remaining: " + seconds + " seconds...");
+		JLabel estTime = new JLabel("Est. Time Remaining: calculating...");
 		timePanel.add(estTime);
 		timePanel.setBackground(new Color(134, 169, 181)); // color of image "splashDotsPNG.png"
-		Timer estTimer = new Timer(1000, new ActionListener() {
+		
+		pb = new JProgressBar(JProgressBar.HORIZONTAL, 0, 1000);
+		pb.setStringPainted(true);
+		pb.setString("Starting...");
+		splashPanel.add(pb, BorderLayout.SOUTH);
+		
+		// Progress and ETA come from the work measured by the loaders, not from a fixed guess
+		progressTimer = new Timer(100, new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				seconds--;
-				estTime.setText("Est. Time Remaining: " + seconds + " seconds...");
-				if(seconds == 0) {
-					((Timer)e.getSource()).stop();
+				pb.setValue((int) (LoadProgress.fraction() * 1000));
+				LoadProgress.Task task = LoadProgress.current();
+				if(task != null) {
+					pb.setString(task.toString());
+				}
+				long eta = LoadProgress.etaMillis();
+				if(eta >= 0) {
+					estTime.setText("Est. Time Remaining: " + (eta + 999) / 1000 + " seconds...");
 				}
 			}
 		});
-		estTimer.start();
-		
-		pb = new JProgressBar(JProgressBar.HORIZONTAL);
-		pb.setIndeterminate(true);
-		splashPanel.add(pb, BorderLayout.SOUTH);
+		progressTimer.start();
 		
 		splash.setContentPane(splashPanel);
 		
@@ -92,12 +117,7 @@ public class Main {
 		splash.setVisible(true);
 	}
 	
-	/** Notifier method that last {@link Model} has started read. */
-	static void verifyStartRead() {
-		createView();
-	}
-	
-	/** Called inside <code>Main</code> to create {@link View} */
+	/** Called inside <code>Main</code> to create {@link View}, which only needs the table models */
 	private static void createView() {
 		//splash.dispose();
 		SwingUtilities.invokeLater(() -> {
@@ -116,28 +136,63 @@ public class Main {
 	}
 	
 	/**
-	 * 1. Notifier method that the last {@link Model} has finished read.
+	 * Replaces the datasets the charts read, to build chart data without the GUI (see the JMH benchmarks).
+	 * @param global  the Global data
+	 * @param country  the Country data
+	 */
+	static void setModels(Model global, Model country) {
+		modelGlobal = global;
+		modelCountry = country;
+	}
+	
+	/** @return {@link CountryAggregates} read by the country charts: of the Country data, or a rollup of the City data selected with <code>-Dsecres.city</code> */
+	static CountryAggregates getCountryAggregates() {
+		return modelCity != null ? modelCity.getAggregates() : modelCountry.getAggregates();
+	}
+	
+	/** @return the stage building the {@link CountryAggregates} read by the country charts */
+	static CompletableFuture<CountryAggregates> getCountryAggregatesFuture() {
+		return modelCity != null ? modelCity.getAggregatesFuture() : modelCountry.getAggregatesFuture();
+	}
+	
+	/**
+	 * 1. Notifier method that every {@link Model} has finished read.
 	 * <br>
-	 * 2. Initializes the model of all charts.
+	 * 2. Shows application and disposes splash screen. Charts are built by {@link View} when first selected.
 	 * <br>
-	 * 3. Shows application and disposes splash screen.
+	 * 3. Tells the user which datasets failed to load, e.g. over their memory budget (see {@link ColumnMemory}).
 	 */
 	static void verifyReadFinished() {
-		// Start placing data into graphs; all done on EDT. (Quick reads)
-		GraphCharts.getBasicLineChart().updateModel();
-		GraphCharts.getAvgChart().updateModel();
-		GraphCharts.getSeasonsCharts().updateModel(GraphCharts.getSeasonsCharts().getMarchSeries(), 2, "March", 2);
-		GraphCharts.getSeasonsCharts().updateModel(GraphCharts.getSeasonsCharts().getJuneSeries(), 5, "June", 1);
-		GraphCharts.getSeasonsCharts().updateModel(GraphCharts.getSeasonsCharts().getSeptemberSeries(), 8, "September", 3);
-		GraphCharts.getSeasonsCharts().updateModel(GraphCharts.getSeasonsCharts().getDecemberSeries(), 11, "December", 0);
-		GraphCharts.getBarChart().updateModel();
-		GraphCharts.getBarChartChange().updateModel();
-		GraphCharts.getEconomyChart().updateModel();
-		
+		progressTimer.stop();
+		if(LoadProgress.PRINT_SUMMARY) {
+			System.out.println(LoadProgress.summary());
+		}
 		Main.getSplash().dispose();
 		View.getFrame().setVisible(true);
+		StringBuilder errors = new StringBuilder();
+		for(Model model : new Model[] {modelGlobal, modelCountry}) {
+			if(model.getError() != null) {
+				errors.append(describe(model.getError())).append('\n');
+			}
+		}
+		if(modelCity != null && modelCity.getError() != null) {
+			errors.append(CityModel.PATH.substring(1)).append(": ").append(describe(modelCity.getError())).append('\n');
+		}
+		if(errors.length() > 0) {
+			JOptionPane.showMessageDialog(View.getFrame(), errors.toString().trim(), "Datasets not loaded", JOptionPane.ERROR_MESSAGE);
+		}
  	}
 	
+	/** @return the message of a load failure, or its class if it has none */
+	private static String describe(Throwable error) {
+		return error.getMessage() != null ? error.getMessage() : error.toString();
+	}
+	
+	/** @return {@link LoadScheduler} running the load stages */
+	static LoadScheduler getScheduler() {
+		return scheduler;
+	}
+	
 	/**
 	 * Returns splash screen
 	 * @return {@link JWindow} splash screen
@@ -169,6 +224,9 @@ public class Main {
 		System.setProperty("apple.awt.antialiasing", "true");
 		System.setProperty("apple.awt.textantialiasing", "true");
 		
+		// Times every event of the EDT from the start, see Diagnostics in the File menu
+		EdtWatchdog.install();
+		
 		if(System.getProperty("os.name").toString().contains("Mac")) {
 			try {				
 				SwingUtilities.invokeLater(() -> {
@@ -0,0 +1,435 @@
+package com.secres;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the counters, histograms, timers and hit ratios of the application.
+ * <P>
+ * Metrics are created on first use by name and registered as MBeans under <code>com.secres:type=...,name=...</code>,
+ * so JConsole or VisualVM show them while the application runs. With <code>-Dsecres.metrics.file=&lt;file&gt;</code> every
+ * metric is written to that file as JSON when the application exits. <code>-Dsecres.metrics=false</code> turns
+ * recording off.
+ * <P>
+ * Recording is cheap enough for hot paths: a {@link LongAdder} increment, and for histograms one bucket increment
+ * plus the count, sum and extremes. Histogram buckets are powers of two split into 8 linear steps, so percentiles
+ * are exact to 12.5%. Callers should keep the metric in a field or local variable rather than look it up per event.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class Metrics {
+
+	/** Whether metrics are recorded, selected at startup */
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("secres.metrics", "true"));
+	/** File the metrics are written to on exit, or <code>null</code> */
+	static final String FILE = System.getProperty("secres.metrics.file");
+
+	/** Metrics by name */
+	private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+
+	static {
+		if(ENABLED && FILE != null) {
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					Files.write(Paths.get(FILE), toJson().getBytes(StandardCharsets.UTF_8));
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			}, "secres-metrics-dump"));
+		}
+	}
+
+	private Metrics() {}
+
+	/** A named metric. */
+	private interface Metric {
+		/** Appends the values of the metric as a JSON object. */
+		void toJson(StringBuilder json);
+	}
+
+	/** JMX view of a {@link Counter} */
+	public interface CounterMBean {
+		long getCount();
+	}
+
+	/** JMX view of a {@link Histogram} */
+	public interface HistogramMBean {
+		long getCount();
+		long getMin();
+		long getMax();
+		double getMean();
+		long get50thPercentile();
+		long get95thPercentile();
+		long get99thPercentile();
+	}
+
+	/** JMX view of a {@link Timer} */
+	public interface TimerMBean {
+		long getCount();
+		double getTotalMillis();
+		double getMeanMillis();
+		double getMaxMillis();
+		double get50thPercentileMillis();
+		double get95thPercentileMillis();
+		double get99thPercentileMillis();
+	}
+
+	/** JMX view of a {@link Ratio} */
+	public interface RatioMBean {
+		long getHits();
+		long getMisses();
+		double getHitRate();
+	}
+
+	/**
+	 * A count of events or units, e.g. rows parsed.
+	 */
+	static final class Counter implements Metric, CounterMBean {
+
+		private final LongAdder count = new LongAdder();
+
+		/** Adds one. */
+		void increment() {
+			add(1);
+		}
+
+		/**
+		 * @param units  the units to add
+		 */
+		void add(long units) {
+			if(ENABLED) {
+				count.add(units);
+			}
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+
+		@Override
+		public void toJson(StringBuilder json) {
+			json.append("{\"type\": \"counter\", \"count\": ").append(getCount()).append('}');
+		}
+
+	}
+
+	/**
+	 * The distribution of non-negative values, e.g. rows per chunk.
+	 */
+	static final class Histogram implements Metric, HistogramMBean {
+
+		/** Linear steps per power of two */
+		private static final int SUB_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+		private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+		private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+		/**
+		 * @param value  the value to record, negative values count as 0
+		 */
+		void record(long value) {
+			if(ENABLED) {
+				value = Math.max(value, 0);
+				buckets.incrementAndGet(bucket(value));
+				count.increment();
+				sum.add(value);
+				min.accumulate(value);
+				max.accumulate(value);
+			}
+		}
+
+		private static int bucket(long value) {
+			if(value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+		}
+
+		/** @return the smallest value of a bucket */
+		private static long lowerBound(int bucket) {
+			if(bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+			return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+		}
+
+		/**
+		 * @param quantile  between 0 and 1
+		 * @return an estimate of the value at the quantile, 0 without values
+		 */
+		long percentile(double quantile) {
+			long total = getCount();
+			if(total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for(int i = 0; i < buckets.length(); i++) {
+				seen += buckets.get(i);
+				if(seen >= Math.max(rank, 1)) {
+					// Middle of the bucket, within the observed range
+					long low = lowerBound(i);
+					long high = i + 1 < buckets.length() ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+					return Math.max(getMin(), Math.min(getMax(), low + (high - low) / 2));
+				}
+			}
+			return getMax();
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+
+		@Override
+		public long getMin() {
+			return getCount() == 0 ? 0 : min.get();
+		}
+
+		@Override
+		public long getMax() {
+			return getCount() == 0 ? 0 : max.get();
+		}
+
+		@Override
+		public double getMean() {
+			long count = getCount();
+			return count == 0 ? 0 : (double) sum.sum() / count;
+		}
+
+		long getSum() {
+			return sum.sum();
+		}
+
+		@Override
+		public long get50thPercentile() {
+			return percentile(0.5);
+		}
+
+		@Override
+		public long get95thPercentile() {
+			return percentile(0.95);
+		}
+
+		@Override
+		public long get99thPercentile() {
+			return percentile(0.99);
+		}
+
+		@Override
+		public void toJson(StringBuilder json) {
+			json.append("{\"type\": \"histogram\", \"count\": ").append(getCount()).append(", \"min\": ").append(getMin()).append(", \"max\": ").append(getMax())
+				.append(", \"mean\": ").append(getMean()).append(", \"p50\": ").append(get50thPercentile()).append(", \"p95\": ").append(get95thPercentile())
+				.append(", \"p99\": ").append(get99thPercentile()).append('}');
+		}
+
+	}
+
+	/**
+	 * The durations of an operation, e.g. parsing a dataset or repainting a chart.
+	 */
+	static final class Timer implements Metric, TimerMBean {
+
+		/** Durations in nanoseconds */
+		private final Histogram nanos = new Histogram();
+
+		/** @return the start time to pass to {@link #stop(long)} */
+		long start() {
+			return System.nanoTime();
+		}
+
+		/**
+		 * Records the time since a start.
+		 * @param start  the value of {@link #start()}
+		 */
+		void stop(long start) {
+			nanos.record(System.nanoTime() - start);
+		}
+
+		@Override
+		public long getCount() {
+			return nanos.getCount();
+		}
+
+		@Override
+		public double getTotalMillis() {
+			return nanos.getSum() / 1e6;
+		}
+
+		@Override
+		public double getMeanMillis() {
+			return nanos.getMean() / 1e6;
+		}
+
+		@Override
+		public double getMaxMillis() {
+			return nanos.getMax() / 1e6;
+		}
+
+		@Override
+		public double get50thPercentileMillis() {
+			return nanos.get50thPercentile() / 1e6;
+		}
+
+		@Override
+		public double get95thPercentileMillis() {
+			return nanos.get95thPercentile() / 1e6;
+		}
+
+		@Override
+		public double get99thPercentileMillis() {
+			return nanos.get99thPercentile() / 1e6;
+		}
+
+		@Override
+		public void toJson(StringBuilder json) {
+			json.append("{\"type\": \"timer\", \"count\": ").append(getCount()).append(", \"totalMillis\": ").append(getTotalMillis())
+				.append(", \"meanMillis\": ").append(getMeanMillis()).append(", \"maxMillis\": ").append(getMaxMillis())
+				.append(", \"p50Millis\": ").append(get50thPercentileMillis()).append(", \"p95Millis\": ").append(get95thPercentileMillis())
+				.append(", \"p99Millis\": ").append(get99thPercentileMillis()).append('}');
+		}
+
+	}
+
+	/**
+	 * Hits and misses of a cache.
+	 */
+	static final class Ratio implements Metric, RatioMBean {
+
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		void hit() {
+			if(ENABLED) {
+				hits.increment();
+			}
+		}
+
+		void miss() {
+			if(ENABLED) {
+				misses.increment();
+			}
+		}
+
+		/**
+		 * @param hit  whether the lookup was a hit
+		 */
+		void record(boolean hit) {
+			if(hit) {
+				hit();
+			}
+			else {
+				miss();
+			}
+		}
+
+		@Override
+		public long getHits() {
+			return hits.sum();
+		}
+
+		@Override
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		@Override
+		public double getHitRate() {
+			long hits = getHits();
+			long total = hits + getMisses();
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		@Override
+		public void toJson(StringBuilder json) {
+			json.append("{\"type\": \"ratio\", \"hits\": ").append(getHits()).append(", \"misses\": ").append(getMisses())
+				.append(", \"hitRate\": ").append(getHitRate()).append('}');
+		}
+
+	}
+
+	/**
+	 * @param name  the metric name
+	 * @return the counter with that name, created on first use
+	 */
+	static Counter counter(String name) {
+		return get(name, Counter.class, n -> new Counter());
+	}
+
+	/**
+	 * @param name  the metric name
+	 * @return the histogram with that name, created on first use
+	 */
+	static Histogram histogram(String name) {
+		return get(name, Histogram.class, n -> new Histogram());
+	}
+
+	/**
+	 * @param name  the metric name
+	 * @return the timer with that name, created on first use
+	 */
+	static Timer timer(String name) {
+		return get(name, Timer.class, n -> new Timer());
+	}
+
+	/**
+	 * @param name  the metric name
+	 * @return the hit ratio with that name, created on first use
+	 */
+	static Ratio ratio(String name) {
+		return get(name, Ratio.class, n -> new Ratio());
+	}
+
+	private static <T extends Metric> T get(String name, Class<T> type, Function<String, T> factory) {
+		Metric metric = METRICS.computeIfAbsent(name, n -> register(n, type, factory.apply(n)));
+		if(!type.isInstance(metric)) {
+			throw new IllegalArgumentException("Metric " + name + " is a " + metric.getClass().getSimpleName() + ", not a " + type.getSimpleName());
+		}
+		return type.cast(metric);
+	}
+
+	private static Metric register(String name, Class<?> type, Metric metric) {
+		if(ENABLED) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metric, new ObjectName("com.secres:type=" + type.getSimpleName() + ",name=" + ObjectName.quote(name)));
+			} catch(JMException e) {
+				System.err.println("Cannot register metric " + name + " with JMX: " + e);
+			}
+		}
+		return metric;
+	}
+
+	/** @return every metric as one JSON object, by name */
+	static String toJson() {
+		StringBuilder json = new StringBuilder("{");
+		String separator = "\n";
+		for(Map.Entry<String, Metric> entry : new TreeMap<>(METRICS).entrySet()) {
+			json.append(separator).append("  \"").append(entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\": ");
+			entry.getValue().toJson(json);
+			separator = ",\n";
+		}
+		return json.append("\n}\n").toString();
+	}
+
+}
@@ -1,83 +1,361 @@
 package com.secres;
 
 import com.opencsv.*;
+import com.opencsv.exceptions.CsvValidationException;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import javax.swing.SwingWorker;
-import javax.swing.table.DefaultTableModel;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The <code>Model</code> class defines all I/O from the CSV files.
  * <P>
- * Each instance of <code>Model</code> spawns a new {@link SwingWorker} for adding each new row to the current <code>JTable</code>'s <code>TableModel</code>
+ * Each instance of <code>Model</code> schedules stages on a {@link LoadScheduler} that parse each row once into a typed {@link ColumnStore}.
+ * The <code>JTable</code>'s {@link ColumnTableModel} and every chart read from that store.
  * <P>
- * After starting and finishing ALL reads, the <code>Model</code> notifies {@link Main}.<br>
- * 1. After <i>starting</i> the last read, {@link Main} creates a new instance of {@link View}.<br>
- * 2. After <i>finishing</i> the last read, {@link Main} starts updating each <code>JFreeChart</code> for each <code>ChartPanel</code> that {@link View} created.
+ * Two loaders are available, selected at startup with the <code>secres.loader</code> system property:
+ * <ul>
+ * <li><code>mapped</code> (default) - files on disk are memory-mapped and scanned by {@link CsvScanner}</li>
+ * <li><code>stream</code> - every file is read through OpenCSV</li>
+ * </ul>
+ * Files are looked up in the <code>secres.data.dir</code> directory first, then on the classpath, then as a file path
+ * (e.g. a file written by {@link DatasetGenerator}).
+ * Classpath resources inside the application JAR cannot be mapped and always use the stream loader.
+ * <P>
+ * The first successful read of a dataset is saved by {@link SnapshotCache}; later launches load that snapshot instead of parsing the CSV.
+ * Columns are kept on or off the heap and checked against the memory budget of a dataset as set up by {@link ColumnMemory}.
+ * Datasets with country temperatures are also aggregated into a {@link CountryAggregates} cube, which is cached the same way.
+ * <P>
+ * {@link Main} waits for {@link #getLoaded()} of every <code>Model</code> before it shows the {@link View}, which builds each
+ * chart when it is first selected. Charts wait for {@link #getStoreFuture()} or {@link #getAggregatesFuture()} of the dataset they read.
  * 
  * @author Pranav Amarnath
  *
  */
 public class Model {
 
+	/** Loader selected at startup */
+	static final String LOADER = System.getProperty("secres.loader", "mapped");
+	/** Optional directory holding the datasets */
+	static final String DATA_DIR = System.getProperty("secres.data.dir");
+
 	/** Table model */
-	private DefaultTableModel model;
+	private ColumnTableModel model = new ColumnTableModel();
+	/** Columnar data, set once the read has finished */
+	private volatile ColumnStore store;
+	/** Country aggregates, set once the read has finished if the dataset supports them */
+	private volatile CountryAggregates aggregates;
 	/** Table header */
 	private Object[] header;
 	//private List<String[]> myEntries = new ArrayList<>();
-	/** OpenCSV parser */
-	private CSVReader reader;
-	/** Current line */
-	private String[] line;
-	/** Last dataset */
-	private final String LASTDATASET = "/GlobalLandTemperaturesByCountry.csv";
+	/** Stage reading the dataset */
+	private final CompletableFuture<ColumnStore> storeFuture;
+	/** Stage aggregating the dataset, completes with <code>null</code> if the dataset has no country temperatures */
+	private final CompletableFuture<CountryAggregates> aggregatesFuture;
+	/** Completes once every stage of this dataset has finished, successfully or not */
+	private final CompletableFuture<Void> loaded;
+	/** Why a stage failed, <code>null</code> if none has */
+	private volatile Throwable error;
 	
 	/**
-	 * Model constructor
+	 * Model constructor, schedules the read of the dataset
 	 * @param path  Path to file
+	 * @param scheduler  runs the stages
 	 */
-	public Model(String path) {
-		new SwingWorker<Void, Object[]>() {
-			protected Void doInBackground() {
-				reader = new CSVReader(new InputStreamReader(getClass().getResourceAsStream(path)));
-				try {
-					header = (String[]) reader.readNext();
-					//SwingUtilities.invokeAndWait(() -> model = new DefaultTableModel(header, 0)); // NOT invokeLater() because model HAS to be initialized immediately on EDT
-					model = new DefaultTableModel(header, 0);
-					if(path.equals(LASTDATASET)) { // Start read on final dataset so that there's only one View instance
-						Main.verifyStartRead();
-					}
-					while((line = reader.readNext()) != null) {
-						model.addRow(line);
-				    }
-				} catch(Exception e) {
-					e.printStackTrace();
-				}
+	public Model(String path, LoadScheduler scheduler) {
+		String dataset = path.substring(path.lastIndexOf('/') + 1);
+		LoadProgress.expect(dataset, LoadProgress.Phase.PARSE);
+		LoadProgress.expect(dataset, LoadProgress.Phase.AGGREGATE);
+		CompletableFuture<ByteBuffer> opened = scheduler.submit(() -> open(path));
+		// Read once and shared by the snapshot and cube lookups
+		CompletableFuture<SnapshotCache.Source> source = scheduler.then(opened, data -> SnapshotCache.source(path, data));
+		storeFuture = scheduler.then(source, key -> {
+			ColumnStore store = read(key, opened.join(), scheduler.getPool());
+			header = store.getHeader();
+			this.store = store;
+			return store;
+		});
+		// Starts as soon as this dataset is read, whatever the other datasets are doing
+		aggregatesFuture = scheduler.then(storeFuture, store -> {
+			if(!CountryAggregates.supports(store)) {
+				LoadProgress.skip(dataset, LoadProgress.Phase.AGGREGATE);
 				return null;
 			}
-			protected void done() {
-				try {
-					//Main.getPB().setValue(Main.getPB().getValue() + 15);
-					reader.close();
-					if(path.equals(LASTDATASET)) { // final dataset
-						Main.verifyReadFinished();
+			aggregates = aggregate(source.join(), store);
+			return aggregates;
+		});
+		CompletableFuture<Void> table = storeFuture.thenAcceptAsync(model::setStore, LoadScheduler.EDT);
+		loaded = CompletableFuture.allOf(table, aggregatesFuture).handle((v, e) -> {
+			if(e != null) {
+				error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+				e.printStackTrace();
+			}
+			return null;
+		});
+	}
+	
+	/**
+	 * Reads a dataset from its {@link SnapshotCache} snapshot, or with the loader selected at startup on a cache miss.
+	 * @param path  Path to file
+	 * @return the parsed columns
+	 * @throws IOException  if the file cannot be read
+	 */
+	static ColumnStore read(String path) throws IOException {
+		return read(path, open(path));
+	}
+	
+	/**
+	 * Maps a dataset on disk, or reads it from the JAR.
+	 * @param path  Path to file
+	 * @return the CSV bytes, a {@link MappedByteBuffer} if the file is on disk
+	 * @throws IOException  if the file cannot be read
+	 */
+	static ByteBuffer open(String path) throws IOException {
+		Path file = locate(path);
+		if(file != null) {
+			return CsvScanner.map(file);
+		}
+		try(InputStream in = Model.class.getResourceAsStream(path)) {
+			if(in == null) {
+				throw new IOException("Dataset not found: " + path);
+			}
+			return ByteBuffer.wrap(in.readAllBytes());
+		}
+	}
+	
+	/**
+	 * Reads a dataset from its {@link SnapshotCache} snapshot, or with the loader selected at startup on a cache miss.
+	 * @param path  Path to file
+	 * @param data  the CSV bytes from {@link #open(String)}
+	 * @return the parsed columns
+	 * @throws IOException  if the file cannot be read
+	 */
+	static ColumnStore read(String path, ByteBuffer data) throws IOException {
+		return read(path, data, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Reads a dataset from its {@link SnapshotCache} snapshot, or with the loader selected at startup on a cache miss.
+	 * @param path  Path to file
+	 * @param data  the CSV bytes from {@link #open(String)}
+	 * @param pool  parses chunks of a mapped file in parallel
+	 * @return the parsed columns
+	 * @throws IOException  if the file cannot be read, or its columns do not fit in the memory budget
+	 */
+	static ColumnStore read(String path, ByteBuffer data, ForkJoinPool pool) throws IOException {
+		return read(SnapshotCache.source(path, data), data, pool);
+	}
+	
+	/**
+	 * Reads a dataset like {@link #read(String, ByteBuffer, ForkJoinPool)}, with its checksum already computed.
+	 * @param source  the dataset from {@link SnapshotCache#source(String, ByteBuffer)}
+	 * @param data  the CSV bytes from {@link #open(String)}
+	 * @param pool  parses chunks of a mapped file in parallel
+	 * @return the parsed columns
+	 * @throws IOException  if the file cannot be read, or its columns do not fit in the memory budget
+	 */
+	static ColumnStore read(SnapshotCache.Source source, ByteBuffer data, ForkJoinPool pool) throws IOException {
+		String dataset = source.path.substring(source.path.lastIndexOf('/') + 1);
+		try {
+			return read(dataset, source, data, pool);
+		} catch(ColumnMemory.BudgetExceededException e) {
+			throw new IOException(dataset + " " + e.getMessage(), e);
+		}
+	}
+	
+	private static ColumnStore read(String dataset, SnapshotCache.Source source, ByteBuffer data, ForkJoinPool pool) throws IOException {
+		LoadProgress.Task progress = LoadProgress.start(dataset, LoadProgress.Phase.PARSE, data.limit());
+		Metrics.Timer timer = Metrics.timer("parse/" + dataset);
+		long start = timer.start();
+		ColumnStore store = SnapshotCache.load(source);
+		if(store == null) {
+			// Fails before the parse fills the heap
+			ColumnMemory.check(CsvScanner.estimateColumnBytes(data), true);
+			if(data instanceof MappedByteBuffer && !LOADER.equals("stream")) {
+				store = CsvScanner.scan(data, pool, progress);
+			}
+			else {
+				store = readStream(new ByteArrayInputStream(toArray(data)) {
+					@Override
+					public synchronized int read(byte[] b, int off, int len) {
+						int n = super.read(b, off, len);
+						progress.add(Math.max(n, 0));
+						return n;
 					}
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				});
+			}
+			if(ColumnStore.COMPRESS) {
+				store = store.compress();
+			}
+			ColumnMemory.check(store.columnBytes(), false);
+			SnapshotCache.store(source, store);
+			if(ColumnMemory.OFF_HEAP) {
+				store = store.offHeap();
 			}
-		}.execute();
+		}
+		timer.stop(start);
+		Metrics.counter("parse.bytes/" + dataset).add(data.limit());
+		Metrics.counter("parse.rows/" + dataset).add(store.getRowCount());
+		progress.finish();
+		return store;
+	}
+	
+	/**
+	 * Loads the {@link CountryAggregates} cube of a dataset from the {@link SnapshotCache}, or builds it on a cache miss.
+	 * @param source  the dataset from {@link SnapshotCache#source(String, ByteBuffer)}
+	 * @param store  the parsed columns
+	 * @return the cube
+	 */
+	static CountryAggregates aggregate(SnapshotCache.Source source, ColumnStore store) {
+		String dataset = source.path.substring(source.path.lastIndexOf('/') + 1);
+		LoadProgress.Task progress = LoadProgress.start(dataset, LoadProgress.Phase.AGGREGATE, store.getRowCount());
+		Metrics.Timer timer = Metrics.timer("aggregate/" + dataset);
+		long start = timer.start();
+		CountryAggregates aggregates = SnapshotCache.loadAggregates(source);
+		if(aggregates == null) {
+			aggregates = CountryAggregates.build(store, progress);
+			SnapshotCache.storeAggregates(source, aggregates);
+		}
+		timer.stop(start);
+		progress.finish();
+		return aggregates;
+	}
+	
+	private static byte[] toArray(ByteBuffer data) {
+		if(data.hasArray()) {
+			return data.array();
+		}
+		byte[] bytes = new byte[data.limit()];
+		data.duplicate().get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Finds a dataset on disk.
+	 * @param path  Path to file
+	 * @return the file, or <code>null</code> if it is only available as a JAR resource
+	 */
+	static Path locate(String path) {
+		if(DATA_DIR != null) {
+			Path file = Paths.get(DATA_DIR, path);
+			if(Files.isRegularFile(file)) {
+				return file;
+			}
+		}
+		URL url = Model.class.getResource(path);
+		if(url != null && url.getProtocol().equals("file")) {
+			try {
+				return Paths.get(url.toURI());
+			} catch (URISyntaxException e) {
+				e.printStackTrace();
+			}
+		}
+		if(url == null && Files.isRegularFile(Paths.get(path))) {
+			return Paths.get(path);
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads a dataset through OpenCSV.
+	 * @param in  the CSV data, closed when done
+	 * @return the parsed columns
+	 * @throws IOException  if the data cannot be read
+	 */
+	static ColumnStore readStream(InputStream in) throws IOException {
+		try(CSVReader reader = new CSVReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String[] header = reader.readNext();
+			if(header[0].startsWith("\uFEFF")) { // UTF-8 byte order mark
+				header[0] = header[0].substring(1);
+			}
+			List<String[]> sample = new ArrayList<>();
+			String[] line;
+			while(sample.size() < CsvScanner.SAMPLE_ROWS && (line = reader.readNext()) != null) {
+				sample.add(line);
+			}
+			ColumnStore.Builder builder = new ColumnStore.Builder(header, ColumnStore.inferTypes(header, sample));
+			for(String[] row : sample) {
+				builder.addRow(row);
+			}
+			while((line = reader.readNext()) != null) {
+				builder.addRow(line);
+		    }
+			return builder.build();
+		} catch(CsvValidationException e) {
+			throw new IOException(e);
+		}
 	}
 	
 	/**
 	 * Returns table model
-	 * @return <code>DefaultTableModel</code> - table model
+	 * @return <code>ColumnTableModel</code> - table model
 	 */
-	public DefaultTableModel getModel() {
+	public ColumnTableModel getModel() {
 		return model;
 	}
 	
+	/**
+	 * Returns the parsed columns
+	 * @return <code>ColumnStore</code> - the data, or <code>null</code> before the read has finished
+	 */
+	public ColumnStore getStore() {
+		return store;
+	}
+	
+	/**
+	 * Returns the country aggregates
+	 * @return <code>CountryAggregates</code> - the cube, or <code>null</code> if the dataset has no country temperatures or the read has not finished
+	 */
+	public CountryAggregates getAggregates() {
+		return aggregates;
+	}
+	
+	/**
+	 * Returns the read stage, for stages that need the data
+	 * @return <code>CompletableFuture</code> - completes with the parsed columns
+	 */
+	CompletableFuture<ColumnStore> getStoreFuture() {
+		return storeFuture;
+	}
+	
+	/**
+	 * Returns the aggregation stage, for stages that need the aggregates
+	 * @return <code>CompletableFuture</code> - completes with the cube, or <code>null</code> if the dataset has no country temperatures
+	 */
+	CompletableFuture<CountryAggregates> getAggregatesFuture() {
+		return aggregatesFuture;
+	}
+	
+	/**
+	 * Returns the stage completing once the dataset is read, aggregated and in its table
+	 * @return <code>CompletableFuture</code> - completes normally even if a stage failed
+	 */
+	CompletableFuture<Void> getLoaded() {
+		return loaded;
+	}
+	
+	/**
+	 * Returns why the dataset failed to load
+	 * @return <code>Throwable</code> - the failure of the first failed stage, or <code>null</code>
+	 */
+	Throwable getError() {
+		return error;
+	}
+	
 	/**
 	 * Returns table header
 	 * @return <code>Object[]</code> - header
@@ -0,0 +1,131 @@
+package com.secres;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Unsigned values of a fixed number of bits, packed back to back into <code>long</code> words.
+ * <P>
+ * A value may straddle two words; a padding word after the last value lets {@link #get(int)} always read two
+ * words without a branch. Used by {@link IntColumn} and {@link DoubleColumn} for values stored as offsets from a base.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class PackedBits {
+
+	/** Bits per value, 0 - 63 */
+	private final int bits;
+	/** Mask of the low {@link #bits} bits */
+	private final long mask;
+	/** Packed values and one padding word */
+	private final LongBuffer words;
+
+	private PackedBits(int bits, LongBuffer words) {
+		this.bits = bits;
+		this.mask = (1L << bits) - 1;
+		this.words = words;
+	}
+
+	/**
+	 * @param range  the largest value
+	 * @return the bits needed for values from 0 to <code>range</code>
+	 */
+	static int bitsFor(long range) {
+		return 64 - Long.numberOfLeadingZeros(range);
+	}
+
+	/**
+	 * @param length  the number of values
+	 * @param bits  the bits per value
+	 * @return the bytes of the words
+	 */
+	static long bytes(long length, int bits) {
+		// The word of the last value and the word after it, even when values take no bits
+		return 8 * (length * bits / 64 + 2);
+	}
+
+	/**
+	 * @param length  the number of values
+	 * @param bits  the bits per value, 0 - 63
+	 * @return zeroed values on the heap, to fill with {@link #set(int, long)}
+	 */
+	static PackedBits allocate(int length, int bits) {
+		return new PackedBits(bits, LongBuffer.allocate((int) (bytes(length, bits) / 8)));
+	}
+
+	/**
+	 * @param index  the index of a zero value
+	 * @param value  the value, below <code>2^bits</code>
+	 */
+	void set(int index, long value) {
+		long bit = (long) index * bits;
+		int word = (int) (bit >>> 6);
+		int shift = (int) bit & 63;
+		words.put(word, words.get(word) | value << shift);
+		if(shift + bits > 64) {
+			words.put(word + 1, words.get(word + 1) | value >>> (64 - shift));
+		}
+	}
+
+	/**
+	 * @param index  the index
+	 * @return the value
+	 */
+	long get(int index) {
+		long bit = (long) index * bits;
+		int word = (int) (bit >>> 6);
+		int shift = (int) bit & 63;
+		// Shifting twice keeps the high word out when shift is 0
+		return (words.get(word) >>> shift | (words.get(word + 1) << 1) << (63 - shift)) & mask;
+	}
+
+	/** @return the bits per value */
+	int getBits() {
+		return bits;
+	}
+
+	/** @return the bytes of the words */
+	long bytes() {
+		return 8L * words.limit();
+	}
+
+	/** @return a copy in a direct buffer, see {@link ColumnMemory} */
+	PackedBits offHeap() {
+		LongBuffer copy = ColumnMemory.allocateLongs(words.limit(), true);
+		copy.put(words.duplicate()).flip();
+		return new PackedBits(bits, copy);
+	}
+
+	/** @return the number of bytes {@link #writeTo(ByteBuffer)} needs */
+	long encodedSize() {
+		return 5 + bytes();
+	}
+
+	/**
+	 * @param out  the destination
+	 */
+	void writeTo(ByteBuffer out) {
+		out.put((byte) bits);
+		out.putInt(words.limit());
+		out.asLongBuffer().put(words.duplicate());
+		out.position(out.position() + 8 * words.limit());
+	}
+
+	/**
+	 * @param in  the source, positioned at the values
+	 * @param direct  whether to read the words outside the heap
+	 * @return the values
+	 */
+	static PackedBits readFrom(ByteBuffer in, boolean direct) {
+		int bits = in.get();
+		int length = in.getInt();
+		LongBuffer words = ColumnMemory.allocateLongs(length, direct);
+		LongBuffer source = in.asLongBuffer();
+		source.limit(length);
+		words.put(source).flip();
+		in.position(in.position() + 8 * length);
+		return new PackedBits(bits, words);
+	}
+
+}
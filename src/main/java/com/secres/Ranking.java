@@ -0,0 +1,136 @@
+package com.secres;
+
+/**
+ * The top or bottom <i>K</i> ids by a metric, selected with a bounded heap.
+ * <P>
+ * Values are given in an array indexed by id, e.g. country ids of {@link CountryAggregates}; <code>NaN</code> values are skipped.
+ * Selecting <i>K</i> of <i>N</i> ids takes <i>O(N log K)</i> time. The result is ordered from best to worst, and equal values
+ * keep the order of their ids, so the ranking is stable from run to run. Ranks are addressed by index, as the bar charts
+ * and their <code>SlidingCategoryDataset</code> windows need.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class Ranking {
+
+	/** Ranked ids, best first */
+	private final int[] ids;
+	/** Values of the ranked ids */
+	private final double[] values;
+
+	private Ranking(int[] ids, double[] values) {
+		this.ids = ids;
+		this.values = values;
+	}
+
+	/**
+	 * @param values  the metric, indexed by id
+	 * @param k  the maximum number of ids to keep
+	 * @return the ids with the highest values, highest first
+	 */
+	static Ranking top(double[] values, int k) {
+		return select(values, k, true);
+	}
+
+	/**
+	 * @param values  the metric, indexed by id
+	 * @param k  the maximum number of ids to keep
+	 * @return the ids with the lowest values, lowest first
+	 */
+	static Ranking bottom(double[] values, int k) {
+		return select(values, k, false);
+	}
+
+	private static Ranking select(double[] values, int k, boolean highest) {
+		// The root of the heap is the worst id kept so far
+		int[] heap = new int[Math.max(0, Math.min(k, values.length))];
+		int size = 0;
+		for(int id = 0; id < values.length; id++) {
+			if(Double.isNaN(values[id])) {
+				continue;
+			}
+			if(size < heap.length) {
+				heap[size] = id;
+				siftUp(heap, size++, values, highest);
+			}
+			else if(size > 0 && better(id, heap[0], values, highest)) {
+				heap[0] = id;
+				siftDown(heap, size, values, highest);
+			}
+		}
+		// Removing the worst id repeatedly fills the ranking from the back
+		int[] ids = new int[size];
+		double[] ranked = new double[size];
+		for(int rank = size - 1; rank >= 0; rank--) {
+			ids[rank] = heap[0];
+			ranked[rank] = values[heap[0]];
+			heap[0] = heap[--size];
+			siftDown(heap, size, values, highest);
+		}
+		return new Ranking(ids, ranked);
+	}
+
+	/** @return whether id <code>a</code> ranks before id <code>b</code> */
+	private static boolean better(int a, int b, double[] values, boolean highest) {
+		int order = Double.compare(values[a], values[b]);
+		if(order == 0) {
+			return a < b;
+		}
+		return highest ? order > 0 : order < 0;
+	}
+
+	private static void siftUp(int[] heap, int index, double[] values, boolean highest) {
+		int id = heap[index];
+		while(index > 0) {
+			int parent = (index - 1) >>> 1;
+			if(!better(heap[parent], id, values, highest)) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = id;
+	}
+
+	private static void siftDown(int[] heap, int size, double[] values, boolean highest) {
+		if(size == 0) {
+			return;
+		}
+		int id = heap[0];
+		int index = 0;
+		int child;
+		while((child = 2 * index + 1) < size) {
+			if(child + 1 < size && better(heap[child], heap[child + 1], values, highest)) {
+				child++;
+			}
+			if(!better(id, heap[child], values, highest)) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = id;
+	}
+
+	/** @return the number of ranked ids */
+	int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @param rank  the rank, 0 being the best
+	 * @return the id at that rank
+	 */
+	int getId(int rank) {
+		return ids[rank];
+	}
+
+	/**
+	 * @param rank  the rank, 0 being the best
+	 * @return the value of the id at that rank
+	 */
+	double getValue(int rank) {
+		return values[rank];
+	}
+
+}
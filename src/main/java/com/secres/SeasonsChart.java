@@ -6,6 +6,7 @@ import java.awt.CardLayout;
 import java.awt.Color;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.util.Arrays;
 
 import javax.swing.JButton;
 import javax.swing.JPanel;
@@ -17,8 +18,6 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.statistics.Regression;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
 /**
  * A class containing an interactive panel with buttons to choose for different charts with one month representing each season.
@@ -29,7 +28,8 @@ import org.jfree.data.xy.XYSeriesCollection;
 public class SeasonsChart extends AbstractGraph {
 
 	private JPanel seasonsPanel = new JPanel(new CardLayout());
-	private XYSeriesCollection datasetMar, datasetJun, datasetSep, datasetDec;
+	/** Datasets indexed like <code>charts</code> */
+	private ArrayXYDataset[] datasets = new ArrayXYDataset[4];
 	private JFreeChart[] charts = new JFreeChart[4];
 	private ChartPanel[] chartPanels = new ChartPanel[4];
 	
@@ -89,22 +89,8 @@ public class SeasonsChart extends AbstractGraph {
 	 * @return the <code>JPanel</code>
 	 */
 	private JPanel basicScatterPlotCoolingSeason(String month, int index) {
-		if(index == 0) {
-			datasetDec = new XYSeriesCollection();
-			charts[index] = ChartFactory.createScatterPlot(month + " Temperature 1750-2015", "Year", "Temperature \u00B0C", datasetDec, PlotOrientation.VERTICAL, true, true, false);
-		}
-		else if(index == 1) {
-			datasetJun = new XYSeriesCollection();
-			charts[index] = ChartFactory.createScatterPlot(month + " Temperature 1750-2015", "Year", "Temperature \u00B0C", datasetJun, PlotOrientation.VERTICAL, true, true, false);
-		}
-		else if(index == 2) {
-			datasetMar = new XYSeriesCollection();
-			charts[index] = ChartFactory.createScatterPlot(month + " Temperature 1750-2015", "Year", "Temperature \u00B0C", datasetMar, PlotOrientation.VERTICAL, true, true, false);
-		}
-		else if(index == 3) {
-			datasetSep = new XYSeriesCollection();
-			charts[index] = ChartFactory.createScatterPlot(month + " Temperature 1750-2015", "Year", "Temperature \u00B0C", datasetSep, PlotOrientation.VERTICAL, true, true, false);
-		}
+		datasets[index] = new ArrayXYDataset();
+		charts[index] = ChartFactory.createScatterPlot(month + " Temperature 1750-2015", "Year", "Temperature \u00B0C", datasets[index], PlotOrientation.VERTICAL, true, true, false);
 
 		charts[index].setNotify(false);
 		/** Reference: @see https://stackoverflow.com/a/61398612/13772184 */
@@ -148,67 +134,84 @@ public class SeasonsChart extends AbstractGraph {
 		return mainPanel;
 	}
 	
-	/** @return <code>XYSeriesCollection</code> */
-	public XYSeriesCollection getMarchSeries() {
-		return datasetMar;
+	/** @return <code>ArrayXYDataset</code> */
+	public ArrayXYDataset getMarchSeries() {
+		return datasets[2];
 	}
 	
-	/** @return <code>XYSeriesCollection</code> */
-	public XYSeriesCollection getJuneSeries() {
-		return datasetJun;
+	/** @return <code>ArrayXYDataset</code> */
+	public ArrayXYDataset getJuneSeries() {
+		return datasets[1];
 	}
 	
-	/** @return <code>XYSeriesCollection</code> */
-	public XYSeriesCollection getSeptemberSeries() {
-		return datasetSep;
+	/** @return <code>ArrayXYDataset</code> */
+	public ArrayXYDataset getSeptemberSeries() {
+		return datasets[3];
 	}
 	
-	/** @return <code>XYSeriesCollection</code> */
-	public XYSeriesCollection getDecemberSeries() {
-		return datasetDec;
+	/** @return <code>ArrayXYDataset</code> */
+	public ArrayXYDataset getDecemberSeries() {
+		return datasets[0];
+	}
+	
+	/** Builds the data of all four scatter plots */
+	@Override
+	Runnable prepareModel() {
+		Runnable march = prepareModel(2, "March", 2);
+		Runnable june = prepareModel(5, "June", 1);
+		Runnable september = prepareModel(8, "September", 3);
+		Runnable december = prepareModel(11, "December", 0);
+		return () -> {
+			march.run();
+			june.run();
+			september.run();
+			december.run();
+		};
 	}
 	
 	/**
-	 * Adds data to scatter plot for a month
-	 * @param dataset  the dataset
+	 * Builds the data of the scatter plot for a month
 	 * @param startIndex  the month index (0 - 11)
 	 * @param month  the name of the month
 	 * @param index  the index in the <code>charts</code> array and <code>chartPanels</code> array
+	 * @return the step installing the data, to run on the EDT
 	 */
-	void updateModel(XYSeriesCollection dataset, int startIndex, String month, int index) {
-		// Start Scatter Plot
-		XYSeries series = new XYSeries("Temperature in " + month + " per year"); // Init series
-		XYPlot plot = charts[index].getXYPlot();
-		XYLineAndShapeRenderer r = (XYLineAndShapeRenderer) plot.getRenderer();
-		// End Scatter Plot
-
-		for(int i = startIndex; i < View.getGlobalTable().getModel().getRowCount(); i+=12) {
-			if((String)View.getGlobalTable().getModel().getValueAt(i, 1) != null && !((String)View.getGlobalTable().getModel().getValueAt(i, 1)).trim().isEmpty()) {
-				series.add(Double.parseDouble(((String) View.getGlobalTable().getModel().getValueAt(i, 0)).substring(0,4)), Double.parseDouble((String)View.getGlobalTable().getModel().getValueAt(i, 1))); // add elements
+	Runnable prepareModel(int startIndex, String month, int index) {
+		ColumnStore store = Main.getGlobalModel().getStore();
+		double[] x = new double[(store.getRowCount() + 11) / 12];
+		double[] y = new double[x.length];
+		int n = 0;
+		for(int i = startIndex; i < store.getRowCount(); i+=12) {
+			if(!store.isNull(i, 1)) {
+				x[n] = store.getYear(i, 0);
+				y[n++] = store.getDouble(i, 1); // add elements
 			}
 		}
 
 		// Start Scatter Plot
-		((XYSeriesCollection) dataset).addSeries(series); // add series to dataset
+		ArrayXYDataset dataset = ArrayXYDataset.of("Temperature in " + month + " per year", Arrays.copyOf(x, n), Arrays.copyOf(y, n));
 
 		// Begin trend display/
 		/** Reference: @see https://stackoverflow.com/a/61398612/13772184 */
 		double[] coefficients = Regression.getOLSRegression(dataset, 0);
 		double b = coefficients[0]; // intercept
 		double m = coefficients[1]; // slope
-		XYSeries trend = new XYSeries("Trend");
-		double x = series.getDataItem(0).getXValue();
-		trend.add(x, m * x + b);
-		x = series.getDataItem(series.getItemCount() - 1).getXValue();
-		trend.add(x, m * x + b);
-		r.setSeriesStroke(1, new BasicStroke(1.5f));
-		r.setSeriesPaint(1, Color.BLACK);
-		r.setSeriesVisibleInLegend(1, false, true);
-		//System.out.println(SwingUtilities.isEventDispatchThread()); // prints true
-		dataset.addSeries(trend);
+		double[] trendX = {x[0], x[n - 1]};
+		double[] trendY = {m * trendX[0] + b, m * trendX[1] + b};
+		ArrayXYDataset withTrend = dataset.withSeries("Trend", trendX, trendY);
 		// End trend display
 		// End Scatter Plot
-		charts[index].setNotify(true);
+		
+		return () -> {
+			XYPlot plot = charts[index].getXYPlot();
+			XYLineAndShapeRenderer r = (XYLineAndShapeRenderer) plot.getRenderer();
+			r.setSeriesStroke(1, new BasicStroke(1.5f));
+			r.setSeriesPaint(1, Color.BLACK);
+			r.setSeriesVisibleInLegend(1, false, true);
+			datasets[index] = withTrend;
+			plot.setDataset(datasets[index]);
+			charts[index].setNotify(true);
+		};
 	}
 	
 	/**
@@ -0,0 +1,601 @@
+package com.secres;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32C;
+
+/**
+ * An out-of-core, column-oriented store for datasets that do not fit in the heap, e.g. the Berkeley Earth city file
+ * (8.6 million rows, over 500 MB).
+ * <P>
+ * The CSV is memory-mapped {@link #WINDOW_SIZE} bytes at a time, so files of any size, over 2 GB included, can be read.
+ * Each window is split into chunks that {@link CsvScanner} parses in parallel into small {@link ColumnStore}s, and
+ * every chunk is written to disk as one {@link Segment} before the next window is read. Heap use during the read
+ * depends on the window size, not on the file size.
+ * <P>
+ * Segments hold the same columns as a {@link ColumnStore} - packed dates, dictionary ids, <code>double</code> values
+ * and null bitmaps - in one data file that is memory-mapped when the store is opened. The column values stay in the
+ * page cache and only the dictionaries, shared by every segment, are on the heap. Readers stream over the segments,
+ * like the rollups of {@link CityModel}.
+ * <P>
+ * The segments are kept in the {@link SnapshotCache} directory and keyed by the length and CRC-32C of the CSV like
+ * snapshots: a data file (<code>.cols</code>) and a manifest (<code>.segs</code>) with the header, dictionaries and
+ * segment offsets, which is written last. Stale or corrupt segments are rebuilt. With <code>-Dsecres.cache=false</code>
+ * the segments are written to a temporary directory that is deleted on exit.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class SegmentStore {
+
+	/** Version of the segment layout; bump whenever it changes */
+	static final int FORMAT_VERSION = 1;
+	/** Bytes of the CSV mapped and parsed at a time */
+	static final int WINDOW_SIZE = 32 << 20;
+
+	/** "SECRESSG" */
+	private static final long MAGIC = 0x534543524553_5347L;
+	private static final int HEADER_SIZE = 8 + 4 + 8 + 4 + 8 + 4;
+	/** Directory of the segments while the cache is disabled */
+	private static Path tempDirectory;
+
+	/** Table header */
+	private final String[] header;
+	/** Column types, see {@link ColumnStore#getType(int)} */
+	private final byte[] types;
+	/** Dictionaries of the text columns, shared by all segments */
+	private final String[][] dictionaries;
+	private final Segment[] segments;
+	private final long rowCount;
+
+	private SegmentStore(String[] header, byte[] types, String[][] dictionaries, Segment[] segments) {
+		this.header = header;
+		this.types = types;
+		this.dictionaries = dictionaries;
+		this.segments = segments;
+		long rowCount = 0;
+		for(Segment segment : segments) {
+			rowCount += segment.rowCount;
+		}
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * The rows of one chunk of the CSV, read from memory-mapped columns.
+	 *
+	 * @author Pranav Amarnath
+	 *
+	 */
+	static final class Segment {
+
+		private final int rowCount;
+		/** Null bitmaps - a set bit means the cell is missing */
+		private final LongBuffer[] nulls;
+		/** Packed dates or dictionary ids, <code>null</code> for numeric columns */
+		private final IntBuffer[] ints;
+		/** Numeric values, <code>null</code> for date and text columns */
+		private final DoubleBuffer[] doubles;
+
+		/**
+		 * @param data  the mapped segment
+		 * @param types  the column types
+		 * @param rowCount  the number of rows
+		 */
+		private Segment(ByteBuffer data, byte[] types, int rowCount) {
+			this.rowCount = rowCount;
+			nulls = new LongBuffer[types.length];
+			ints = new IntBuffer[types.length];
+			doubles = new DoubleBuffer[types.length];
+			int position = 0;
+			for(int i = 0; i < types.length; i++) {
+				nulls[i] = view(data, position).asLongBuffer();
+				position += 8 * nullWords(rowCount);
+				if(types[i] == ColumnStore.NUMERIC) {
+					doubles[i] = view(data, position).asDoubleBuffer();
+				}
+				else {
+					ints[i] = view(data, position).asIntBuffer();
+				}
+				position += valueBytes(types[i], rowCount);
+			}
+		}
+
+		private static ByteBuffer view(ByteBuffer data, int position) {
+			ByteBuffer view = data.duplicate();
+			view.position(position);
+			return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		/** @return the number of rows */
+		int getRowCount() {
+			return rowCount;
+		}
+
+		/**
+		 * @param row  the row index within the segment
+		 * @param column  the column index
+		 * @return <code>true</code> if the cell is missing
+		 */
+		boolean isNull(int row, int column) {
+			return (nulls[column].get(row >>> 6) & (1L << row)) != 0;
+		}
+
+		/**
+		 * @param row  the row index within the segment
+		 * @param column  a numeric column
+		 * @return the value, or <code>NaN</code> if missing
+		 */
+		double getDouble(int row, int column) {
+			return doubles[column].get(row);
+		}
+
+		/**
+		 * @param row  the row index within the segment
+		 * @param column  a date or text column
+		 * @return the packed date or dictionary id
+		 */
+		int getInt(int row, int column) {
+			return ints[column].get(row);
+		}
+
+		/**
+		 * @param row  the row index within the segment
+		 * @param column  a date column
+		 * @return the year
+		 */
+		int getYear(int row, int column) {
+			return ColumnStore.yearOf(ints[column].get(row));
+		}
+
+		/**
+		 * @param row  the row index within the segment
+		 * @param column  a date column
+		 * @return the month (1 - 12)
+		 */
+		int getMonth(int row, int column) {
+			return ColumnStore.monthOf(ints[column].get(row));
+		}
+
+	}
+
+	private static int nullWords(int rowCount) {
+		return (rowCount + 63) >>> 6;
+	}
+
+	/** @return the bytes of the values of a column, a multiple of 8 so that every column is aligned */
+	private static long valueBytes(byte type, int rowCount) {
+		return type == ColumnStore.NUMERIC ? 8L * rowCount : (4L * rowCount + 7) & ~7L;
+	}
+
+	private static long segmentBytes(byte[] types, int rowCount) {
+		long size = 0;
+		for(byte type : types) {
+			size += 8L * nullWords(rowCount) + valueBytes(type, rowCount);
+		}
+		return size;
+	}
+
+	/**
+	 * Opens the segments of a CSV file, reading the CSV into new segments on a cache miss.
+	 * @param source  the CSV file
+	 * @param pool  parses the chunks of each window in parallel
+	 * @param progress  receives the number of bytes parsed, may be <code>null</code>
+	 * @return the store
+	 * @throws IOException  if the CSV cannot be read or the segments cannot be written
+	 */
+	static SegmentStore open(Path source, ForkJoinPool pool, LoadProgress.Task progress) throws IOException {
+		long length;
+		int checksum;
+		try(FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+			length = channel.size();
+			checksum = checksum(channel, length);
+		}
+		String base = baseName(source);
+		Path directory = directory();
+		Path manifest = directory.resolve(base + "-" + String.format("%08x", checksum) + ".segs");
+		Path data = directory.resolve(base + "-" + String.format("%08x", checksum) + ".cols");
+		if(Files.isRegularFile(manifest)) {
+			try {
+				SegmentStore store = read(manifest, data, length, checksum);
+				if(store != null) {
+					Metrics.ratio("cache.snapshot/segments").hit();
+					if(progress != null) {
+						progress.finish();
+					}
+					return store;
+				}
+				System.err.println("Discarding stale segments " + manifest);
+			} catch(IOException | RuntimeException e) {
+				System.err.println("Discarding corrupt segments " + manifest + ": " + e);
+			}
+			Files.deleteIfExists(manifest);
+		}
+		if(SnapshotCache.ENABLED) {
+			Metrics.ratio("cache.snapshot/segments").miss();
+		}
+		write(source, length, checksum, data, manifest, pool, progress);
+		prune(directory, base, manifest, data);
+		SegmentStore store = read(manifest, data, length, checksum);
+		if(store == null) {
+			throw new IOException("Cannot read the segments just written to " + manifest);
+		}
+		return store;
+	}
+
+	/** @return the directory of the segments, see the class documentation */
+	private static synchronized Path directory() throws IOException {
+		if(SnapshotCache.ENABLED) {
+			Files.createDirectories(SnapshotCache.DIRECTORY);
+			return SnapshotCache.DIRECTORY;
+		}
+		if(tempDirectory == null) {
+			tempDirectory = Files.createTempDirectory("secres-segments");
+			tempDirectory.toFile().deleteOnExit();
+		}
+		return tempDirectory;
+	}
+
+	private static String baseName(Path source) {
+		String name = source.getFileName().toString();
+		return name.endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+	}
+
+	/** @return the CRC-32C of a whole file, read one window at a time */
+	private static int checksum(FileChannel channel, long length) throws IOException {
+		CRC32C crc = new CRC32C();
+		for(long position = 0; position < length; position += WINDOW_SIZE) {
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, length - position)));
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Reads the CSV one window at a time into the data file, then writes the manifest.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static void write(Path source, long length, int checksum, Path data, Path manifest, ForkJoinPool pool, LoadProgress.Task progress) throws IOException {
+		Path directory = data.getParent();
+		String[] header;
+		byte[] types;
+		Map<String, Integer>[] lookups;
+		List<String>[] values;
+		List<long[]> segments = new ArrayList<>();
+		long dataLength = 0;
+		Path tempData = Files.createTempFile(directory, baseName(source), ".tmp");
+		try {
+			try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ); FileChannel out = FileChannel.open(tempData, StandardOpenOption.WRITE)) {
+				long position = 0;
+				MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW_SIZE, length));
+				int start = CsvScanner.dataStart(window);
+				int from = CsvScanner.nextRow(window, start, window.limit());
+				header = CsvScanner.parseHeader(window, start, from);
+				types = CsvScanner.inferTypes(window, header, from);
+				lookups = new Map[types.length];
+				values = new List[types.length];
+				for(int i = 0; i < types.length; i++) {
+					if(types[i] == ColumnStore.CATEGORY) {
+						lookups[i] = new HashMap<>();
+						values[i] = new ArrayList<>();
+					}
+				}
+				if(progress != null) {
+					progress.add(from);
+				}
+				while(true) {
+					boolean last = position + window.limit() == length;
+					int to = last ? window.limit() : lastRowEnd(window, from);
+					if(to <= from && !last) {
+						throw new IOException("A row of " + source + " at byte " + (position + from) + " is longer than " + WINDOW_SIZE + " bytes");
+					}
+					int[] bounds = CsvScanner.split(window, from, to, pool);
+					for(ColumnStore part : CsvScanner.scanChunks(window, header, types, bounds, pool, progress)) {
+						if(part.getRowCount() > 0) {
+							segments.add(new long[] {dataLength, part.getRowCount()});
+							dataLength += writeSegment(out, part, types, remap(part, lookups, values));
+						}
+					}
+					if(last) {
+						break;
+					}
+					position += to;
+					window = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, length - position));
+					from = 0;
+				}
+			}
+			Files.move(tempData, data, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempData);
+		}
+		if(!SnapshotCache.ENABLED) {
+			data.toFile().deleteOnExit();
+			manifest.toFile().deleteOnExit();
+		}
+		writeManifest(manifest, length, checksum, header, types, values, dataLength, segments);
+	}
+
+	/**
+	 * Finds the end of the last complete row of a window.
+	 * @param window  the mapped bytes
+	 * @param from  the start of a row
+	 * @return the position after the last line break outside of quotes, or <code>from</code>
+	 */
+	private static int lastRowEnd(ByteBuffer window, int from) {
+		int end = from;
+		boolean quoted = false;
+		for(int pos = from; pos < window.limit(); pos++) {
+			byte b = window.get(pos);
+			if(b == '"') {
+				quoted = !quoted;
+			}
+			else if(b == '\n' && !quoted) {
+				end = pos + 1;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Adds the dictionary values of a chunk to the shared dictionaries.
+	 * @return the shared id of every id of the chunk, per text column
+	 */
+	private static int[][] remap(ColumnStore part, Map<String, Integer>[] lookups, List<String>[] values) {
+		int[][] remaps = new int[lookups.length][];
+		for(int i = 0; i < lookups.length; i++) {
+			if(lookups[i] == null) {
+				continue;
+			}
+			remaps[i] = new int[part.getDictionarySize(i)];
+			for(int id = 0; id < remaps[i].length; id++) {
+				String value = part.getDictionaryValue(i, id);
+				Integer shared = lookups[i].get(value);
+				if(shared == null) {
+					shared = values[i].size();
+					lookups[i].put(value, shared);
+					values[i].add(value);
+				}
+				remaps[i][id] = shared;
+			}
+		}
+		return remaps;
+	}
+
+	/**
+	 * Appends one chunk to the data file.
+	 * @return the number of bytes written
+	 */
+	private static long writeSegment(FileChannel out, ColumnStore part, byte[] types, int[][] remaps) throws IOException {
+		int rowCount = part.getRowCount();
+		long size = segmentBytes(types, rowCount);
+		if(size > Integer.MAX_VALUE) {
+			throw new IOException("Segment of " + rowCount + " rows is too large");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < types.length; i++) {
+			for(int word = 0; word < nullWords(rowCount); word++) {
+				long bits = 0;
+				for(int row = word << 6; row < Math.min((word + 1) << 6, rowCount); row++) {
+					if(part.isNull(row, i)) {
+						bits |= 1L << row;
+					}
+				}
+				buffer.putLong(bits);
+			}
+			int valuesStart = buffer.position();
+			for(int row = 0; row < rowCount; row++) {
+				if(types[i] == ColumnStore.NUMERIC) {
+					buffer.putDouble(part.getDouble(row, i));
+				}
+				else if(remaps[i] != null) {
+					buffer.putInt(part.isNull(row, i) ? 0 : remaps[i][part.getInt(row, i)]);
+				}
+				else {
+					buffer.putInt(part.getInt(row, i));
+				}
+			}
+			buffer.position((int) (valuesStart + valueBytes(types[i], rowCount)));
+		}
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the manifest, laid out like a {@link SnapshotCache} snapshot:
+	 * <pre>
+	 * magic | format version | source length | source CRC | payload length | payload CRC | payload
+	 * </pre>
+	 * where the payload holds the columns, the dictionaries, the data file length and the offset and rows of every segment.
+	 */
+	private static void writeManifest(Path manifest, long sourceLength, int sourceChecksum, String[] header, byte[] types, List<String>[] values, long dataLength, List<long[]> segments) throws IOException {
+		long size = 4 + 8 + 4 + 12L * segments.size();
+		for(int i = 0; i < header.length; i++) {
+			size += 5 + ColumnStore.utf8(header[i]).length;
+			if(values[i] != null) {
+				size += 4;
+				for(String value : values[i]) {
+					size += 4 + ColumnStore.utf8(value).length;
+				}
+			}
+		}
+		ByteBuffer payload = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		payload.putInt(header.length);
+		for(int i = 0; i < header.length; i++) {
+			ColumnStore.putString(payload, header[i]);
+			payload.put(types[i]);
+			if(values[i] != null) {
+				payload.putInt(values[i].size());
+				for(String value : values[i]) {
+					ColumnStore.putString(payload, value);
+				}
+			}
+		}
+		payload.putLong(dataLength);
+		payload.putInt(segments.size());
+		for(long[] segment : segments) {
+			payload.putLong(segment[0]);
+			payload.putInt((int) segment[1]);
+		}
+		payload.flip();
+		ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + payload.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+		out.putLong(MAGIC).putInt(FORMAT_VERSION).putLong(sourceLength).putInt(sourceChecksum);
+		out.putLong(payload.remaining()).putInt(SnapshotCache.checksum(payload));
+		out.put(payload);
+		Path temp = Files.createTempFile(manifest.getParent(), manifest.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, out.array());
+			Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Reads a manifest and maps the segments it lists.
+	 * @return the store, or <code>null</code> if the segments do not belong to the source
+	 */
+	private static SegmentStore read(Path manifest, Path data, long sourceLength, int sourceChecksum) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(manifest)).order(ByteOrder.LITTLE_ENDIAN);
+		if(in.remaining() < HEADER_SIZE) {
+			throw new IOException("Bad manifest size " + in.remaining());
+		}
+		if(in.getLong() != MAGIC || in.getInt() != FORMAT_VERSION || in.getLong() != sourceLength || in.getInt() != sourceChecksum) {
+			return null;
+		}
+		long payloadLength = in.getLong();
+		int payloadChecksum = in.getInt();
+		if(payloadLength != in.remaining()) {
+			throw new IOException("Truncated manifest");
+		}
+		if(SnapshotCache.checksum(in.slice()) != payloadChecksum) {
+			throw new IOException("Manifest checksum mismatch");
+		}
+		int columns = in.getInt();
+		String[] header = new String[columns];
+		byte[] types = new byte[columns];
+		String[][] dictionaries = new String[columns][];
+		for(int i = 0; i < columns; i++) {
+			header[i] = ColumnStore.getString(in);
+			types[i] = in.get();
+			if(types[i] == ColumnStore.CATEGORY) {
+				dictionaries[i] = new String[in.getInt()];
+				for(int id = 0; id < dictionaries[i].length; id++) {
+					dictionaries[i][id] = ColumnStore.getString(in);
+				}
+			}
+		}
+		long dataLength = in.getLong();
+		Segment[] segments = new Segment[in.getInt()];
+		try(FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+			if(channel.size() != dataLength) {
+				throw new IOException("Segment data has " + channel.size() + " bytes instead of " + dataLength);
+			}
+			for(int i = 0; i < segments.length; i++) {
+				long offset = in.getLong();
+				int rows = in.getInt();
+				ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, segmentBytes(types, rows));
+				segments[i] = new Segment(mapped, types, rows);
+			}
+		}
+		return new SegmentStore(header, types, dictionaries, segments);
+	}
+
+	/** Deletes the segments of older versions of the same CSV. */
+	private static void prune(Path directory, String base, Path manifest, Path data) throws IOException {
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, base + "-*.{segs,cols}")) {
+			for(Path file : files) {
+				if(!file.equals(manifest) && !file.equals(data)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	/** @return the number of rows */
+	long getRowCount() {
+		return rowCount;
+	}
+
+	/** @return the number of columns */
+	int getColumnCount() {
+		return header.length;
+	}
+
+	/**
+	 * @param column  the column index
+	 * @return the column name
+	 */
+	String getColumnName(int column) {
+		return header[column];
+	}
+
+	/**
+	 * @param column  the column index
+	 * @return the column type
+	 */
+	byte getType(int column) {
+		return types[column];
+	}
+
+	/**
+	 * Returns the index of the first column with the given name.
+	 * @param name  the column name
+	 * @return the column index or -1 if not found
+	 */
+	int indexOf(String name) {
+		for(int i = 0; i < header.length; i++) {
+			if(header[i].trim().equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param column  a text column
+	 * @return the number of distinct values
+	 */
+	int getDictionarySize(int column) {
+		return dictionaries[column].length;
+	}
+
+	/**
+	 * @param column  a text column
+	 * @param id  the dictionary id
+	 * @return the String for the id
+	 */
+	String getDictionaryValue(int column, int id) {
+		return dictionaries[column][id];
+	}
+
+	/** @return the number of segments */
+	int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * @param segment  the segment index
+	 * @return the segment
+	 */
+	Segment getSegment(int segment) {
+		return segments[segment];
+	}
+
+}
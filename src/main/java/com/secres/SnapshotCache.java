@@ -0,0 +1,273 @@
+package com.secres;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * A local cache of binary {@link ColumnStore} snapshots, so that later launches skip CSV parsing entirely.
+ * The {@link CountryAggregates} cube of a dataset is cached the same way, in a <code>.cube</code> file next to its snapshot.
+ * <P>
+ * A snapshot is keyed by the length and CRC-32C of the source CSV and by {@link #FORMAT_VERSION}.
+ * Its layout is:
+ * <pre>
+ * magic | format version | source length | source CRC | payload length | payload CRC | payload
+ * </pre>
+ * where the magic is "SECRESNP" and the payload is written by {@link ColumnStore#writeTo(ByteBuffer)} with the columns
+ * as compressed in memory, or
+ * "SECRESCB" and {@link CountryAggregates#writeTo(ByteBuffer)} for a cube.
+ * <P>
+ * Snapshots are memory-mapped when read. A snapshot whose header or payload checksum does not match is treated as
+ * stale or corrupt: it is deleted and rebuilt from the CSV. Writes go to a temporary file that is atomically moved
+ * into place, so a crash never leaves a half-written snapshot behind.
+ * <P>
+ * The cache lives in <code>~/.secres/cache</code> unless the <code>secres.cache.dir</code> system property is set,
+ * and can be turned off with <code>-Dsecres.cache=false</code>.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class SnapshotCache {
+
+	/** Version of the snapshot layout; bump whenever {@link ColumnStore#writeTo(ByteBuffer)} or {@link CountryAggregates#writeTo(ByteBuffer)} changes */
+	static final int FORMAT_VERSION = 3;
+	/** Whether snapshots are read and written */
+	static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("secres.cache", "true"));
+	/** Cache directory */
+	static final Path DIRECTORY = Paths.get(System.getProperty("secres.cache.dir", Paths.get(System.getProperty("user.home"), ".secres", "cache").toString()));
+
+	private static final int HEADER_SIZE = 8 + 4 + 8 + 4 + 8 + 4;
+
+	/** Kinds of cached files */
+	private enum Kind {
+		/** {@link ColumnStore} snapshot */
+		STORE(0x534543524553_4E50L, ".snap"), // "SECRESNP"
+		/** {@link CountryAggregates} cube */
+		AGGREGATES(0x534543524553_4342L, ".cube"); // "SECRESCB"
+
+		final long magic;
+		final String extension;
+
+		Kind(long magic, String extension) {
+			this.magic = magic;
+			this.extension = extension;
+		}
+	}
+
+	/**
+	 * The version of a dataset a snapshot belongs to, computed once per read and shared by every lookup and write.
+	 */
+	static final class Source {
+
+		/** The dataset path, e.g. <code>/GlobalTemperatures.csv</code> */
+		final String path;
+		/** Bytes of the CSV */
+		final long length;
+		/** CRC-32C of the CSV, 0 if the cache is off */
+		final int checksum;
+
+		private Source(String path, long length, int checksum) {
+			this.path = path;
+			this.length = length;
+			this.checksum = checksum;
+		}
+	}
+
+	private SnapshotCache() {}
+
+	/**
+	 * Identifies a dataset for the cache, reading the whole CSV once unless the cache is off.
+	 * @param path  the dataset path
+	 * @param data  the CSV bytes
+	 * @return the key of the snapshots of this version of the CSV
+	 */
+	static Source source(String path, ByteBuffer data) {
+		return new Source(path, data.limit(), ENABLED ? checksum(data) : 0);
+	}
+
+	/**
+	 * Computes the CRC-32C of a dataset.
+	 * @param data  the CSV bytes
+	 * @return the checksum
+	 */
+	static int checksum(ByteBuffer data) {
+		CRC32C crc = new CRC32C();
+		crc.update(data.duplicate());
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * @param path  the dataset path, e.g. <code>/GlobalTemperatures.csv</code>
+	 * @param sourceChecksum  the CRC-32C of the CSV
+	 * @return the snapshot file for this version of the CSV
+	 */
+	static Path snapshotFile(String path, int sourceChecksum) {
+		return cacheFile(path, sourceChecksum, Kind.STORE);
+	}
+
+	private static Path cacheFile(String path, int sourceChecksum, Kind kind) {
+		return DIRECTORY.resolve(baseName(path) + "-" + String.format("%08x", sourceChecksum) + kind.extension);
+	}
+
+	private static String baseName(String path) {
+		String name = Paths.get(path).getFileName().toString();
+		return name.endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+	}
+
+	/**
+	 * Loads the snapshot of a dataset if a valid one exists.
+	 * @param source  the dataset from {@link #source(String, ByteBuffer)}
+	 * @return the snapshot, or <code>null</code> on a cache miss
+	 */
+	static ColumnStore load(Source source) {
+		return count(Kind.STORE, load(source, Kind.STORE, ColumnStore::readFrom));
+	}
+
+	/**
+	 * Loads the aggregate cube of a dataset if a valid one exists.
+	 * @param source  the dataset from {@link #source(String, ByteBuffer)}
+	 * @return the cube, or <code>null</code> on a cache miss
+	 */
+	static CountryAggregates loadAggregates(Source source) {
+		return count(Kind.AGGREGATES, load(source, Kind.AGGREGATES, CountryAggregates::readFrom));
+	}
+
+	/** Records a lookup in the hit rate of its kind of snapshot */
+	private static <T> T count(Kind kind, T snapshot) {
+		if(ENABLED) {
+			Metrics.ratio("cache.snapshot/" + kind.name().toLowerCase()).record(snapshot != null);
+		}
+		return snapshot;
+	}
+
+	private static <T> T load(Source source, Kind kind, Function<ByteBuffer, T> reader) {
+		if(!ENABLED) {
+			return null;
+		}
+		Path file = cacheFile(source.path, source.checksum, kind);
+		if(!Files.isRegularFile(file)) {
+			return null;
+		}
+		try {
+			ByteBuffer payload = read(file, kind, source.length, source.checksum);
+			if(payload != null) {
+				return reader.apply(payload);
+			}
+			System.err.println("Discarding stale snapshot " + file);
+		} catch(ColumnMemory.BudgetExceededException e) {
+			// The snapshot is fine, the dataset is too large
+			throw e;
+		} catch(IOException | RuntimeException e) {
+			System.err.println("Discarding corrupt snapshot " + file + ": " + e);
+		}
+		try {
+			Files.deleteIfExists(file);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Maps and validates a snapshot.
+	 * @return the payload, or <code>null</code> if the snapshot does not belong to the source
+	 */
+	private static ByteBuffer read(Path file, Kind kind, long sourceLength, int sourceChecksum) throws IOException {
+		MappedByteBuffer mapped;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Bad snapshot size " + channel.size());
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer in = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		if(in.getLong() != kind.magic || in.getInt() != FORMAT_VERSION || in.getLong() != sourceLength || in.getInt() != sourceChecksum) {
+			return null;
+		}
+		long payloadLength = in.getLong();
+		int payloadChecksum = in.getInt();
+		if(payloadLength != in.remaining()) {
+			throw new IOException("Truncated snapshot");
+		}
+		if(checksum(in.slice()) != payloadChecksum) {
+			throw new IOException("Snapshot checksum mismatch");
+		}
+		return in.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes the snapshot of a dataset and removes snapshots of older versions of the same CSV.
+	 * Failures are reported but never fatal, since the cache is only an optimization.
+	 * @param source  the dataset from {@link #source(String, ByteBuffer)}
+	 * @param store  the parsed columns
+	 */
+	static void store(Source source, ColumnStore store) {
+		store(source, Kind.STORE, store.encodedSize(), store::writeTo);
+	}
+
+	/**
+	 * Writes the aggregate cube of a dataset, like {@link #store(Source, ColumnStore)}.
+	 * @param source  the dataset from {@link #source(String, ByteBuffer)}
+	 * @param aggregates  the cube
+	 */
+	static void storeAggregates(Source source, CountryAggregates aggregates) {
+		store(source, Kind.AGGREGATES, aggregates.encodedSize(), aggregates::writeTo);
+	}
+
+	private static void store(Source source, Kind kind, long size, Consumer<ByteBuffer> writer) {
+		if(!ENABLED) {
+			return;
+		}
+		Path file = cacheFile(source.path, source.checksum, kind);
+		try {
+			Files.createDirectories(DIRECTORY);
+			if(HEADER_SIZE + size > Integer.MAX_VALUE) {
+				return;
+			}
+			ByteBuffer payload = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+			writer.accept(payload);
+			payload.flip();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(kind.magic).putInt(FORMAT_VERSION).putLong(source.length).putInt(source.checksum);
+			header.putLong(payload.remaining()).putInt(checksum(payload));
+			header.flip();
+			Path temp = Files.createTempFile(DIRECTORY, baseName(source.path), ".tmp");
+			try {
+				try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+					while(header.hasRemaining() || payload.hasRemaining()) {
+						channel.write(new ByteBuffer[] {header, payload});
+					}
+				}
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			prune(source.path, kind, file);
+		} catch(IOException e) {
+			System.err.println("Could not write snapshot " + file + ": " + e);
+		}
+	}
+
+	/** Deletes every other cached file of the same kind of the dataset. */
+	private static void prune(String path, Kind kind, Path keep) throws IOException {
+		try(DirectoryStream<Path> snapshots = Files.newDirectoryStream(DIRECTORY, baseName(path) + "-*" + kind.extension)) {
+			for(Path snapshot : snapshots) {
+				if(!snapshot.equals(keep)) {
+					Files.deleteIfExists(snapshot);
+				}
+			}
+		}
+	}
+
+}
@@ -15,6 +15,9 @@ import org.jfree.data.general.DefaultValueDataset;
 
 /**
  * A class creating the thermometer chart's view with the "AverageYearTempChart" scatter plot model.
+ * <P>
+ * The yearly averages are built by {@link AverageYearTempChart#averagesByYear(ColumnStore)} for this chart alone, so it
+ * can be shown without building the scatter plot.
  * 
  * @author Pranav Amarnath
  *
@@ -24,6 +27,9 @@ public class ThermometerAvgChart extends AbstractGraph {
 	DefaultValueDataset dataset = new DefaultValueDataset();
 	JFreeChart chart;
 	ChartPanel panel;
+	JSlider slider;
+	/** Average temperature per year, indexed from 1750 */
+	private ArrayXYDataset averages = new ArrayXYDataset();
 	
 	/**
 	 * View for thermometer chart; model retrieved from yearly average temp.
@@ -52,19 +58,30 @@ public class ThermometerAvgChart extends AbstractGraph {
         panel = new ChartPanel(chart);
         mainPanel.add(panel);
 
-        JSlider slider = new JSlider(1750, 2015, 1750);
+        slider = new JSlider(1750, 2015, 1750);
         slider.setPaintLabels(true);
         slider.setPaintTicks(true);
         slider.setMajorTickSpacing(25);
-        dataset.setValue(8.719); // avg. temp. in datasetBasicScatterPlotByYear at year 1750
         slider.addChangeListener(e -> {
-        	dataset.setValue(GraphCharts.getAvgChart().getDatasetScatter().getYValue(0, slider.getValue()-1750));
+        	if(averages.getSeriesCount() > 0) {
+        		dataset.setValue(averages.getYValue(0, slider.getValue()-1750));
+        	}
         });
         mainPanel.add(slider, BorderLayout.SOUTH);
         
         return mainPanel;
 	}
 	
+	/** Builds the average temperature per year */
+	@Override
+	Runnable prepareModel() {
+		ArrayXYDataset averages = AverageYearTempChart.averagesByYear(Main.getGlobalModel().getStore());
+		return () -> {
+			this.averages = averages;
+			dataset.setValue(averages.getYValue(0, slider.getValue()-1750));
+		};
+	}
+	
 	/**
 	 * Returns the dataset
 	 * @return DefaultValueDataset
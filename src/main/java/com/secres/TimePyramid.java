@@ -0,0 +1,156 @@
+package com.secres;
+
+import java.util.Arrays;
+
+import org.jfree.data.Range;
+
+/**
+ * A precomputed pyramid of a monthly time series at monthly, yearly and decadal resolution.
+ * <P>
+ * Each level is an {@link ArrayXYDataset} whose x values are the first millisecond of a month, year or decade and
+ * whose y values are the average of the months in it. The interval of each item is the average uncertainty around the
+ * average when an uncertainty column is given, otherwise the lowest and highest month. All levels are built once,
+ * so {@link LevelOfDetail} can switch levels on zoom with a lookup instead of going back to the rows.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+final class TimePyramid {
+
+	/** Levels of the pyramid, finest first */
+	enum Resolution {
+		MONTH(1, "monthly"),
+		YEAR(12, "yearly"),
+		DECADE(120, "decadal");
+
+		/** Months per item */
+		final int months;
+		/** Added to the series key */
+		final String label;
+
+		Resolution(int months, String label) {
+			this.months = months;
+			this.label = label;
+		}
+	}
+
+	/** Minimum screen pixels per item when choosing a level */
+	private static final int PIXELS_PER_ITEM = 2;
+
+	/** Levels indexed by {@link Resolution#ordinal()} */
+	private final ArrayXYDataset[] levels = new ArrayXYDataset[Resolution.values().length];
+
+	/**
+	 * Builds all levels of a series.
+	 * @param key  the series key, suffixed with the resolution
+	 * @param store  the dataset
+	 * @param dateColumn  the date column
+	 * @param valueColumn  the value column
+	 * @param uncertaintyColumn  the uncertainty column, or -1 to use the range of the months as the interval
+	 * @param boundSeries  whether to add the lower and upper bound of the interval as series of their own, to draw them as lines
+	 */
+	TimePyramid(String key, ColumnStore store, int dateColumn, int valueColumn, int uncertaintyColumn, boolean boundSeries) {
+		int firstDate = Integer.MAX_VALUE;
+		int lastDate = Integer.MIN_VALUE;
+		for(int row = 0; row < store.getRowCount(); row++) {
+			if(!store.isNull(row, dateColumn) && !store.isNull(row, valueColumn)) {
+				int date = store.getInt(row, dateColumn);
+				firstDate = Math.min(firstDate, date);
+				lastDate = Math.max(lastDate, date);
+			}
+		}
+		for(Resolution resolution : Resolution.values()) {
+			levels[resolution.ordinal()] = firstDate > lastDate ? new ArrayXYDataset() : buildLevel(key, store, dateColumn, valueColumn, uncertaintyColumn, boundSeries, resolution, firstDate, lastDate);
+		}
+	}
+
+	private static ArrayXYDataset buildLevel(String key, ColumnStore store, int dateColumn, int valueColumn, int uncertaintyColumn, boolean boundSeries, Resolution resolution, int firstDate, int lastDate) {
+		int firstBucket = Math.floorDiv(firstDate, resolution.months);
+		int buckets = Math.floorDiv(lastDate, resolution.months) - firstBucket + 1;
+		int[] counts = new int[buckets];
+		double[] sums = new double[buckets];
+		double[] uncertaintySums = new double[buckets];
+		double[] mins = new double[buckets];
+		double[] maxs = new double[buckets];
+		Arrays.fill(mins, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+		for(int row = 0; row < store.getRowCount(); row++) {
+			if(store.isNull(row, dateColumn) || store.isNull(row, valueColumn)) {
+				continue;
+			}
+			int bucket = Math.floorDiv(store.getInt(row, dateColumn), resolution.months) - firstBucket;
+			double value = store.getDouble(row, valueColumn);
+			counts[bucket]++;
+			sums[bucket] += value;
+			mins[bucket] = Math.min(mins[bucket], value);
+			maxs[bucket] = Math.max(maxs[bucket], value);
+			if(uncertaintyColumn >= 0 && !store.isNull(row, uncertaintyColumn)) {
+				uncertaintySums[bucket] += store.getDouble(row, uncertaintyColumn);
+			}
+		}
+		int n = 0;
+		for(int bucket = 0; bucket < buckets; bucket++) {
+			if(counts[bucket] > 0) {
+				n++;
+			}
+		}
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] low = new double[n];
+		double[] high = new double[n];
+		for(int bucket = 0, i = 0; bucket < buckets; bucket++) {
+			if(counts[bucket] == 0) {
+				continue;
+			}
+			int date = (firstBucket + bucket) * resolution.months;
+			x[i] = ColumnStore.toMillis(ColumnStore.yearOf(date), ColumnStore.monthOf(date));
+			y[i] = sums[bucket] / counts[bucket];
+			if(uncertaintyColumn >= 0) {
+				double uncertainty = uncertaintySums[bucket] / counts[bucket];
+				low[i] = y[i] - uncertainty;
+				high[i] = y[i] + uncertainty;
+			}
+			else {
+				low[i] = mins[bucket];
+				high[i] = maxs[bucket];
+			}
+			i++;
+		}
+		String levelKey = key + " (" + resolution.label + ")";
+		ArrayXYDataset level = new ArrayXYDataset().withSeries(levelKey, x, y, low, high);
+		if(boundSeries) {
+			level = level.withSeries(levelKey + " (+)", x, high).withSeries(levelKey + " (-)", x, low);
+		}
+		return level;
+	}
+
+	/**
+	 * @param resolution  the resolution
+	 * @return the level at that resolution
+	 */
+	ArrayXYDataset getLevel(Resolution resolution) {
+		return levels[resolution.ordinal()];
+	}
+
+	/**
+	 * Chooses the finest level that leaves at least {@link #PIXELS_PER_ITEM} pixels per visible item.
+	 * @param visible  the visible domain range, or <code>null</code> for all data
+	 * @param pixels  the width of the data area
+	 * @return the resolution
+	 */
+	Resolution choose(Range visible, int pixels) {
+		Resolution[] resolutions = Resolution.values();
+		for(Resolution resolution : resolutions) {
+			ArrayXYDataset level = levels[resolution.ordinal()];
+			int items = level.getSeriesCount() == 0 ? 0 : level.getItemCount(0);
+			if(visible != null && items > 0) {
+				items = level.indexOf(0, visible.getUpperBound()) - level.indexOf(0, visible.getLowerBound());
+			}
+			if(items * PIXELS_PER_ITEM <= pixels) {
+				return resolution;
+			}
+		}
+		return resolutions[resolutions.length - 1];
+	}
+
+}
@@ -11,9 +11,14 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.*;
 import javax.swing.UIManager.LookAndFeelInfo;
+import javax.swing.event.TableModelEvent;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.text.BadLocationException;
@@ -31,8 +36,10 @@ import com.formdev.flatlaf.FlatLightLaf;
  * The GUI uses standard Swing components with nested {@link JPanel}s.
  * 
  * The main layout used is {@link CardLayout} for an MDI with easy visualization.
+ * Chart cards are created by a {@link LazyChart} the first time their node is selected, so the window opens without
+ * building any chart; the charts next to the selected one are prefetched in the background.
  * <P>
- * There are two {@link JTable}s each with their own dataset. {@link GraphCharts} reads from the tables for the visualization.
+ * There are two {@link JTable}s each with their own dataset. Both the tables and {@link GraphCharts} read from the {@link ColumnStore} of each {@link Model}.
  * <P>
  * All of <code>View</code>'s components are accessed on the EDT per Swing's threading rules.
  * 
@@ -71,6 +78,13 @@ public class View {
 	private final String DOUBLEBARLEASTPANEL = "Card with Least Difference in a century Bar Chart";
 	private final String MULTILINEECONOMYPANEL = "Card with Top 5 Economies Line Chart";
 	
+	/** Card shown for each tree node */
+	private final Map<DefaultMutableTreeNode, String> nodeCards = new HashMap<>();
+	/** Chart creating each chart card */
+	private final Map<String, LazyChart<?>> charts = new HashMap<>();
+	/** Whether selecting a chart also builds the data of the charts next to it, <code>-Dsecres.prefetch=false</code> disables it */
+	static final boolean PREFETCH = Boolean.parseBoolean(System.getProperty("secres.prefetch", "true"));
+	
 	private JSplitPane splitPane;
 	private JScrollPane treeScroll;
 	private JScrollPane tableGlobalScroll, tableCountryScroll;
@@ -87,7 +101,7 @@ public class View {
 	private JMenuBar menuBar;
 	private JMenu file, view;
 	private ButtonGroup viewGroup;
-	private JMenuItem about, preferences, close;
+	private JMenuItem about, preferences, diagnostics, close;
 	private JMenuItem light;
 	private static JMenuItem nimbus;
 	private static boolean nimbusEnabled = false;
@@ -217,6 +231,14 @@ public class View {
 				createPreferences(frame);
 			}
 		});
+		diagnostics = new JMenuItem("Diagnostics");
+		file.add(diagnostics);
+		diagnostics.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				createDiagnostics(frame);
+			}
+		});
 		close = new JMenuItem("Close");
 		file.add(close);
 		close.setAccelerator(KeyStroke.getKeyStroke('W', Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()));
@@ -241,54 +263,16 @@ public class View {
 			public void valueChanged(TreeSelectionEvent e) {
 				DefaultMutableTreeNode node = (DefaultMutableTreeNode) componentTree.getLastSelectedPathComponent();
 				componentTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
-				if(node == globalTableNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, TABLEGLOBALPANEL);
-				}
-				else if(node == countryTableNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, TABLECOUNTRYPANEL);
-				}
-				else if(node == basicLineNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, ALLLINEPANEL);
-				}
-				else if(node == basicLineByYearNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, AVGLINEPANEL);
-				}
-				else if(node == basicScatterByYearNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, AVGSCATTERPANEL);
-				}
-				else if(node == basicScatterCoolingNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, SEASONPANEL);
-				}
-				else if(node == thermometerSlideNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, THERMOMETERPANEL);
-				}
-				else if(node == basicBarNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, AVGBARPANEL);
-				}
-				else if(node == doubleBarGreatestNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, DOUBLEBARGREATESTPANEL);
-				}
-				else if(node == doubleBarLeastNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-					cl.show(cardsPanel, DOUBLEBARLEASTPANEL);
-				}
-				else if(node == multiLineEconomyNode) {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-					cl.show(cardsPanel, MULTILINEECONOMYPANEL);
-				}
-				else {
-					CardLayout cl = (CardLayout)(cardsPanel.getLayout());
-				    cl.show(cardsPanel, EMPTYPANEL);
+				String card = nodeCards.getOrDefault(node, EMPTYPANEL);
+				LazyChart<?> chart = charts.get(card);
+				if(chart != null) {
+					chart.show(cardsPanel); // Builds the chart on first selection
 				}
+				CardLayout cl = (CardLayout)(cardsPanel.getLayout());
+			    cl.show(cardsPanel, card);
+			    if(PREFETCH && chart != null) {
+			    	prefetchSiblings(node);
+			    }
 				//treePanel.repaint(); // removes Nimbus Laf paint artifacts
 			}
 		});
@@ -334,19 +318,25 @@ public class View {
 		    }
 		});
 		
+		// Sorting and filtering read cached indexes of the column store instead of comparing formatted cells
+		ColumnRowSorter globalSorter = new ColumnRowSorter(Main.getGlobalModel().getModel());
+		ColumnRowSorter countrySorter = new ColumnRowSorter(Main.getCountryModel().getModel());
+		tableGlobalData.setRowSorter(globalSorter);
+		tableCountryData.setRowSorter(countrySorter);
+		
 		tableGlobalScroll = new JScrollPane(tableGlobalData);
 		//tableGlobalScroll.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_ALWAYS);
 		tableCountryScroll = new JScrollPane(tableCountryData);
 		
-		//tableGlobalData.setAutoCreateRowSorter(true);
 		tableGlobalData.setAutoResizeMode(0);
 		tableGlobalData.getTableHeader().setReorderingAllowed(false);
 		
-		//tableCountryData.setAutoCreateRowSorter(true);
 		tableCountryData.setAutoResizeMode(0);
 		tableCountryData.getTableHeader().setReorderingAllowed(false);
 		
+		tableGlobalPanel.add(createFilterPanel(globalSorter), BorderLayout.NORTH);
 		tableGlobalPanel.add(tableGlobalScroll);
+		tableCountryPanel.add(createFilterPanel(countrySorter), BorderLayout.NORTH);
 		tableCountryPanel.add(tableCountryScroll);
 		
 		emptyPanel = new JPanel(new BorderLayout());
@@ -362,15 +352,16 @@ public class View {
 		//System.out.println(SwingUtilities.isEventDispatchThread());
 	    cl.show(cardsPanel, EMPTYPANEL);
 		
-	    cardsPanel.add(GraphCharts.getBasicLineChart().updateView(), ALLLINEPANEL);
-	    cardsPanel.add(GraphCharts.getAvgChart().updateViewLine(), AVGLINEPANEL);
-	    cardsPanel.add(GraphCharts.getAvgChart().updateViewScatter(), AVGSCATTERPANEL);
-	    cardsPanel.add(GraphCharts.getSeasonsCharts().updateView(), SEASONPANEL);
-	    cardsPanel.add(GraphCharts.getBarChart().updateView(), AVGBARPANEL);
-	    cardsPanel.add(GraphCharts.getBarChartChange().updateViewGreatest(), DOUBLEBARGREATESTPANEL);
-	    cardsPanel.add(GraphCharts.getBarChartChange().updateViewLeast(), DOUBLEBARLEASTPANEL);
-	    cardsPanel.add(GraphCharts.getEconomyChart().updateView(), MULTILINEECONOMYPANEL);
-	    cardsPanel.add(GraphCharts.getThermometerChart().updateView(), THERMOMETERPANEL);
+	    // Chart cards are only created when their node is first selected, and their data once the dataset they read is loaded
+	    CompletableFuture<?> global = Main.getGlobalModel().getStoreFuture();
+	    CompletableFuture<?> country = Main.getCountryAggregatesFuture();
+	    addChart(new LazyChart<>(GraphCharts::getBasicLineChart, global).card(ALLLINEPANEL, BasicLineChart::updateView));
+	    addChart(new LazyChart<>(GraphCharts::getAvgChart, global).card(AVGLINEPANEL, AverageYearTempChart::updateViewLine).card(AVGSCATTERPANEL, AverageYearTempChart::updateViewScatter));
+	    addChart(new LazyChart<>(GraphCharts::getSeasonsCharts, global).card(SEASONPANEL, SeasonsChart::updateView));
+	    addChart(new LazyChart<>(GraphCharts::getBarChart, country).card(AVGBARPANEL, AvgTempBarCountry::updateView));
+	    addChart(new LazyChart<>(GraphCharts::getBarChartChange, country).card(DOUBLEBARGREATESTPANEL, AvgTempBarCountryChange::updateViewGreatest).card(DOUBLEBARLEASTPANEL, AvgTempBarCountryChange::updateViewLeast));
+	    addChart(new LazyChart<>(GraphCharts::getEconomyChart, country).card(MULTILINEECONOMYPANEL, EconomyAvgLineChart::updateView));
+	    addChart(new LazyChart<>(GraphCharts::getThermometerChart, global).card(THERMOMETERPANEL, ThermometerAvgChart::updateView));
 		
 		graphPanel.add(cardsPanel);
 		
@@ -421,10 +412,173 @@ public class View {
 		
 		graphRootNode.add(globalNode);
 		graphRootNode.add(countryNode);
+		
+		nodeCards.put(globalTableNode, TABLEGLOBALPANEL);
+		nodeCards.put(countryTableNode, TABLECOUNTRYPANEL);
+		nodeCards.put(basicLineNode, ALLLINEPANEL);
+		nodeCards.put(basicLineByYearNode, AVGLINEPANEL);
+		nodeCards.put(basicScatterByYearNode, AVGSCATTERPANEL);
+		nodeCards.put(basicScatterCoolingNode, SEASONPANEL);
+		nodeCards.put(thermometerSlideNode, THERMOMETERPANEL);
+		nodeCards.put(basicBarNode, AVGBARPANEL);
+		nodeCards.put(doubleBarGreatestNode, DOUBLEBARGREATESTPANEL);
+		nodeCards.put(doubleBarLeastNode, DOUBLEBARLEASTPANEL);
+		nodeCards.put(multiLineEconomyNode, MULTILINEECONOMYPANEL);
         
         return root;
 	}
 	
+	/**
+	 * Creates the filter bar of a table: a country, a range of years and a range of values.
+	 * The bar is filled in from the dataset once it is loaded; conditions without a matching column are disabled.
+	 * 
+	 * @param sorter  the row sorter of the table
+	 * @return the filter bar
+	 */
+	private JPanel createFilterPanel(ColumnRowSorter sorter) {
+		ColumnTableModel model = sorter.getModel();
+		JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		JComboBox<String> countryBox = new JComboBox<>();
+		JSpinner fromSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 0, 1));
+		JSpinner toSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 0, 1));
+		fromSpinner.setEditor(new JSpinner.NumberEditor(fromSpinner, "#"));
+		toSpinner.setEditor(new JSpinner.NumberEditor(toSpinner, "#"));
+		JLabel valueLabel = new JLabel("Value");
+		JTextField minField = new JTextField(5);
+		JTextField maxField = new JTextField(5);
+		minField.setToolTipText("Lowest value, empty for no limit");
+		maxField.setToolTipText("Highest value, empty for no limit");
+		JButton filterButton = new JButton("Filter");
+		JButton clearButton = new JButton("Clear");
+		JLabel rowsLabel = new JLabel();
+		filterPanel.add(new JLabel("Country"));
+		filterPanel.add(countryBox);
+		filterPanel.add(new JLabel("Years"));
+		filterPanel.add(fromSpinner);
+		filterPanel.add(new JLabel("to"));
+		filterPanel.add(toSpinner);
+		filterPanel.add(valueLabel);
+		filterPanel.add(minField);
+		filterPanel.add(new JLabel("to"));
+		filterPanel.add(maxField);
+		filterPanel.add(filterButton);
+		filterPanel.add(clearButton);
+		filterPanel.add(rowsLabel);
+		
+		// Columns the conditions apply to: Country, the first date and the first numeric column
+		int[] columns = {-1, -1, -1};
+		Runnable reset = () -> {
+			ColumnStore store = model.getStore();
+			columns[0] = columns[1] = columns[2] = -1;
+			countryBox.removeAllItems();
+			countryBox.addItem("All");
+			minField.setText("");
+			maxField.setText("");
+			if(store != null) {
+				for(int column = 0; column < store.getColumnCount(); column++) {
+					if(store.getType(column) == ColumnStore.DATE && columns[1] < 0) {
+						columns[1] = column;
+					}
+					else if(store.getType(column) == ColumnStore.NUMERIC && columns[2] < 0) {
+						columns[2] = column;
+					}
+				}
+				int country = store.indexOf("Country");
+				if(country >= 0 && store.getType(country) == ColumnStore.CATEGORY) {
+					columns[0] = country;
+					String[] names = new String[store.getDictionarySize(country)];
+					for(int id = 0; id < names.length; id++) {
+						names[id] = store.getDictionaryValue(country, id);
+					}
+					Arrays.sort(names);
+					for(String name : names) {
+						countryBox.addItem(name);
+					}
+				}
+				if(columns[1] >= 0) {
+					int[] dates = model.getIndex().dateRange(columns[1]);
+					if(dates != null) {
+						int first = ColumnStore.yearOf(dates[0]);
+						int last = ColumnStore.yearOf(dates[1]);
+						fromSpinner.setModel(new SpinnerNumberModel(first, first, last, 1));
+						toSpinner.setModel(new SpinnerNumberModel(last, first, last, 1));
+						fromSpinner.setEditor(new JSpinner.NumberEditor(fromSpinner, "#"));
+						toSpinner.setEditor(new JSpinner.NumberEditor(toSpinner, "#"));
+					}
+				}
+				if(columns[2] >= 0) {
+					valueLabel.setText(store.getColumnName(columns[2]));
+				}
+			}
+			countryBox.setEnabled(columns[0] >= 0);
+			fromSpinner.setEnabled(columns[1] >= 0);
+			toSpinner.setEnabled(columns[1] >= 0);
+			minField.setEnabled(columns[2] >= 0);
+			maxField.setEnabled(columns[2] >= 0);
+			rowsLabel.setText(String.format("%,d rows", model.getRowCount()));
+		};
+		reset.run();
+		model.addTableModelListener(e -> {
+			if(e.getFirstRow() == TableModelEvent.HEADER_ROW) {
+				reset.run();
+			}
+		});
+		sorter.addRowSorterListener(e -> rowsLabel.setText(String.format("%,d of %,d rows", sorter.getViewRowCount(), sorter.getModelRowCount())));
+		
+		filterButton.addActionListener(e -> {
+			ColumnStore store = model.getStore();
+			if(store == null) {
+				return;
+			}
+			double min, max;
+			try {
+				min = minField.getText().trim().isEmpty() ? Double.NEGATIVE_INFINITY : Double.parseDouble(minField.getText().trim());
+				max = maxField.getText().trim().isEmpty() ? Double.POSITIVE_INFINITY : Double.parseDouble(maxField.getText().trim());
+			} catch(NumberFormatException ex) {
+				JOptionPane.showMessageDialog(frame, "The value range must be numbers.", "Filter", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			int countryId = countryBox.getSelectedIndex() > 0 ? store.getDictionaryId(columns[0], (String) countryBox.getSelectedItem()) : -1;
+			SpinnerNumberModel from = (SpinnerNumberModel) fromSpinner.getModel();
+			SpinnerNumberModel to = (SpinnerNumberModel) toSpinner.getModel();
+			// A range over every year needs no date condition
+			int fromDate = from.getNumber().equals(from.getMinimum()) ? Integer.MIN_VALUE : ColumnStore.packDate(from.getNumber().intValue(), 1);
+			int toDate = to.getNumber().equals(to.getMaximum()) ? Integer.MAX_VALUE : ColumnStore.packDate(to.getNumber().intValue(), 12);
+			sorter.setFilter(new ColumnRowSorter.Filter(columns[0], countryId, columns[1], fromDate, toDate, columns[2], min, max));
+		});
+		clearButton.addActionListener(e -> {
+			reset.run();
+			sorter.setFilter(ColumnRowSorter.Filter.NONE);
+		});
+		return filterPanel;
+	}
+	
+	/**
+	 * Registers a chart under each of its cards.
+	 * @param chart  the chart
+	 */
+	private void addChart(LazyChart<?> chart) {
+		for(String card : chart.getCards()) {
+			charts.put(card, chart);
+		}
+	}
+	
+	/**
+	 * Starts building the data of the charts next to a node in the tree, the likely next selections.
+	 * @param node  the selected node
+	 */
+	private void prefetchSiblings(DefaultMutableTreeNode node) {
+		if(node.getParent() == null) {
+			return;
+		}
+		for(int i = 0; i < node.getParent().getChildCount(); i++) {
+			LazyChart<?> chart = charts.get(nodeCards.get(node.getParent().getChildAt(i)));
+			if(chart != null) {
+				chart.prefetch();
+			}
+		}
+	}
+	
 	/** @return The main <code>JFrame</code> */
 	public static JFrame getFrame() {
 		return frame;
@@ -608,6 +762,32 @@ public class View {
         JOptionPane.showMessageDialog(frame, mainPanel, "Preferences", JOptionPane.INFORMATION_MESSAGE);
 	}
 	
+	/**
+	 * Instantiates Diagnostics dialog with the EDT stalls found by the {@link EdtWatchdog}
+	 * @param frame
+	 */
+	static void createDiagnostics(JFrame frame) {
+		EdtWatchdog watchdog = EdtWatchdog.get();
+		if(watchdog == null) {
+			JOptionPane.showMessageDialog(frame, "The EDT watchdog is disabled (-Dsecres.watchdog=false).", "Diagnostics", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		DiagnosticsPanel panel = new DiagnosticsPanel(watchdog);
+		JDialog dialog = new JDialog(frame, "Diagnostics", false);
+		dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+		dialog.setContentPane(panel);
+		dialog.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				panel.stop();
+			}
+		});
+		dialog.setSize(800, 500);
+		dialog.setLocationRelativeTo(frame);
+		panel.start();
+		dialog.setVisible(true);
+	}
+	
 	/** Instantiates Quit dialog. */
 	static void createQuit() {
 		int input = JOptionPane.showConfirmDialog(null, "Do you want to quit?", "Quit", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
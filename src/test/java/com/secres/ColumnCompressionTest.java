@@ -0,0 +1,101 @@
+package com.secres;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Round trips of {@link ColumnStore#compress()} through memory and snapshots, for columns every encoding must handle.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public class ColumnCompressionTest {
+
+	@Test
+	public void constantIntColumn() {
+		int[] values = new int[100];
+		Arrays.fill(values, 7);
+		IntColumn column = IntColumn.of(IntBuffer.wrap(values)).encode(values.length, null);
+		for(int row = 0; row < values.length; row++) {
+			assertEquals(7, column.get(row));
+		}
+	}
+
+	@Test
+	public void allNullIntColumn() {
+		LongBuffer nulls = LongBuffer.wrap(new long[] {-1L, -1L});
+		IntColumn column = IntColumn.of(IntBuffer.wrap(new int[100])).encode(100, nulls);
+		int[] decoded = new int[100];
+		column.copyTo(0, decoded, 0, decoded.length);
+		for(int row = 0; row < decoded.length; row++) {
+			assertEquals(column.get(row), decoded[row]);
+		}
+	}
+
+	@Test
+	public void singleCountryStore() {
+		ColumnStore store = build(1, false);
+		assertSameCells(store, roundTrip(store.compress()));
+	}
+
+	@Test
+	public void missingColumns() {
+		ColumnStore store = build(3, true);
+		ColumnStore read = roundTrip(store.compress());
+		assertSameCells(store, read);
+		for(int row = 0; row < read.getRowCount(); row++) {
+			assertTrue(read.isNull(row, 1));
+			assertTrue(Double.isNaN(read.getDouble(row, 1)));
+			assertTrue(read.isNull(row, 3));
+		}
+	}
+
+	/** @return monthly rows of <code>countries</code> countries, with missing temperatures and cities if <code>missing</code> */
+	private static ColumnStore build(int countries, boolean missing) {
+		ColumnStore.Builder builder = new ColumnStore.Builder(new String[] {"dt", "AverageTemperature", "Country", "City"},
+				new byte[] {ColumnStore.DATE, ColumnStore.NUMERIC, ColumnStore.CATEGORY, ColumnStore.CATEGORY});
+		for(int country = 0; country < countries; country++) {
+			int id = builder.intern(2, "Country" + country);
+			for(int month = 0; month < 300; month++) {
+				int row = builder.newRow();
+				builder.setInt(row, 0, ColumnStore.packDate(1900, 1) + month);
+				builder.setInt(row, 2, id);
+				if(!missing) {
+					builder.setDouble(row, 1, (month % 40 - 20) / 8.0 + 0.001);
+					builder.setInt(row, 3, builder.intern(3, "City"));
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static ColumnStore roundTrip(ColumnStore store) {
+		ByteBuffer snapshot = ByteBuffer.allocate((int) store.encodedSize()).order(ByteOrder.LITTLE_ENDIAN);
+		store.writeTo(snapshot);
+		assertEquals(0, snapshot.remaining());
+		snapshot.flip();
+		return ColumnStore.readFrom(snapshot);
+	}
+
+	private static void assertSameCells(ColumnStore expected, ColumnStore actual) {
+		assertEquals(expected.getRowCount(), actual.getRowCount());
+		for(int column = 0; column < expected.getColumnCount(); column++) {
+			for(int row = 0; row < expected.getRowCount(); row++) {
+				assertEquals(expected.isNull(row, column), actual.isNull(row, column));
+				assertEquals(expected.getValueAsString(row, column), actual.getValueAsString(row, column));
+				if(expected.getType(column) == ColumnStore.NUMERIC) {
+					assertEquals(Double.doubleToRawLongBits(expected.getDouble(row, column)), Double.doubleToRawLongBits(actual.getDouble(row, column)));
+				}
+			}
+		}
+	}
+
+}
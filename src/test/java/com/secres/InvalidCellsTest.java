@@ -0,0 +1,71 @@
+package com.secres;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Cells that do not fit the type inferred from the first rows are read as missing by both loaders, instead of
+ * failing the load.
+ *
+ * @author Pranav Amarnath
+ *
+ */
+public class InvalidCellsTest {
+
+	/** Rows after the sample used to infer the column types */
+	private static final int BAD_ROW = CsvScanner.SAMPLE_ROWS + 10;
+
+	@Test
+	public void mappedLoader() throws IOException {
+		byte[] csv = csv();
+		check(CsvScanner.scan(ByteBuffer.wrap(csv), ForkJoinPool.commonPool(), null));
+	}
+
+	@Test
+	public void streamLoader() throws IOException {
+		check(Model.readStream(new ByteArrayInputStream(csv())));
+	}
+
+	/** @return monthly rows with a malformed temperature, a malformed date and a month out of range after the sample */
+	private static byte[] csv() {
+		StringBuilder csv = new StringBuilder("dt,LandAverageTemperature,LandAverageTemperatureUncertainty\n");
+		for(int row = 0; row < BAD_ROW + 10; row++) {
+			String date = String.format("%d-%02d-01", 1750 + row / 12, row % 12 + 1);
+			String temperature = Double.toString(row % 20 / 4.0);
+			if(row == BAD_ROW) {
+				temperature = "oops";
+			}
+			else if(row == BAD_ROW + 1) {
+				date = "unknown";
+			}
+			else if(row == BAD_ROW + 2) {
+				date = "1760-13-01";
+			}
+			csv.append(date).append(',').append(temperature).append(",0.5\n");
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void check(ColumnStore store) {
+		assertEquals(BAD_ROW + 10, store.getRowCount());
+		assertEquals(ColumnStore.DATE, store.getType(0));
+		assertEquals(ColumnStore.NUMERIC, store.getType(1));
+		assertTrue(store.isNull(BAD_ROW, 1));
+		assertFalse(store.isNull(BAD_ROW, 0));
+		assertTrue(store.isNull(BAD_ROW + 1, 0));
+		assertTrue(store.isNull(BAD_ROW + 2, 0));
+		assertFalse(store.isNull(BAD_ROW + 1, 1));
+		assertEquals(1750 + (BAD_ROW + 3) / 12, store.getYear(BAD_ROW + 3, 0));
+		assertEquals((BAD_ROW + 3) % 12 + 1, store.getMonth(BAD_ROW + 3, 0));
+	}
+
+}